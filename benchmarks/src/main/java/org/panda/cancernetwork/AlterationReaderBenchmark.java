@@ -0,0 +1,141 @@
+package org.panda.cancernetwork;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks each alteration loader on generated data files. Genes are drawn with a skew, so that some genes are
+ * altered in many rows, as in the real data.
+ *
+ * @author Ozgun Babur
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AlterationReaderBenchmark
+{
+	@Param({"CNVkit", "Mutect", "Mutect2", "GeneTrailsMutations", "GeneTrailsCNV"})
+	String loader;
+
+	@Param({"10000", "1000000"})
+	int rows;
+
+	@Param({"20000"})
+	int geneCount;
+
+	File dir;
+	String paramValue;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		dir = Files.createTempDirectory("alterations").toFile();
+		File file = new File(dir, loader + ".txt");
+		AlterationReader reader = AlterationReader.valueOf(loader);
+		Random r = new Random(1);
+
+		try (BufferedWriter writer = Files.newBufferedWriter(file.toPath()))
+		{
+			writer.write(header(reader));
+			for (int i = 0; i < rows; i++)
+			{
+				writer.write("\n");
+				writer.write(row(reader, r, i));
+			}
+		}
+
+		switch (reader)
+		{
+			case CNVkit: paramValue = "CNVkit " + file.getName() + " 0.5 2"; break;
+			case GeneTrailsCNV: paramValue = "GeneTrailsCNV " + file.getName() + " 2"; break;
+			default: paramValue = loader + " " + file.getName();
+		}
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		for (File file : dir.listFiles()) file.delete();
+		dir.delete();
+	}
+
+	@Benchmark
+	public GeneAlterationSet load() throws IOException
+	{
+		GeneAlterationSet gas = new GeneAlterationSet();
+		AlterationReader.loadAlterations(paramValue, gas, dir.getPath());
+		return gas;
+	}
+
+	private String gene(Random r)
+	{
+		return "G" + (int) (geneCount * Math.pow(r.nextDouble(), 3));
+	}
+
+	private String header(AlterationReader reader)
+	{
+		switch (reader)
+		{
+			case CNVkit: return "chromosome\tstart\tend\tgene\tlog2\tdepth\tweight";
+			case Mutect: return "chr\tpos\tref\talt\tfreq\tgene\tchange";
+			case Mutect2: return "gene\tchr\tpos\tref\talt\tfreq\tdepth\ttype\tchange";
+			case GeneTrailsMutations: return columns(17, "col");
+			default: return columns(8, "col");
+		}
+	}
+
+	private String row(AlterationReader reader, Random r, int i)
+	{
+		switch (reader)
+		{
+			case CNVkit:
+			{
+				String genes = r.nextInt(10) == 0 ? "-" : gene(r) + "," + gene(r) + "," + gene(r);
+				return "chr1\t" + i * 1000 + "\t" + (i * 1000 + 999) + "\t" + genes + "\t" +
+					(r.nextGaussian() * 1.5) + "\t" + r.nextInt(500) + "\t" + r.nextDouble();
+			}
+			case Mutect:
+				return "chr1\t" + i + "\tA\tT\t0.2\t" + gene(r) + "\t" + change(r, i);
+			case Mutect2:
+				return gene(r) + "\tchr1\t" + i + "\tA\tT\t0.2\t120\tSNV\t" + change(r, i);
+			case GeneTrailsMutations:
+			{
+				String[] t = columns(17, "v").split("\t");
+				t[7] = change(r, i);
+				t[8] = gene(r);
+				t[16] = r.nextInt(20) == 0 ? "splice site variant" : "missense variant";
+				return String.join("\t", t);
+			}
+			default:
+			{
+				String[] t = columns(8, "v").split("\t");
+				t[4] = gene(r);
+				t[7] = String.valueOf(0.1 + r.nextDouble() * 8);
+				return String.join("\t", t);
+			}
+		}
+	}
+
+	private String change(Random r, int i)
+	{
+		return r.nextInt(20) == 0 ? "Splice_Site" : "p.X" + i + "Y";
+	}
+
+	private static String columns(int count, String prefix)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++)
+		{
+			if (i > 0) sb.append('\t');
+			sb.append(prefix).append(i);
+		}
+		return sb.toString();
+	}
+}
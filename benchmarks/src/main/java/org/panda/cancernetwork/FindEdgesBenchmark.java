@@ -0,0 +1,67 @@
+package org.panda.cancernetwork;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the edge search between the altered genes and the cancer genes on generated networks.
+ *
+ * @author Ozgun Babur
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FindEdgesBenchmark
+{
+	@Param({"5000", "20000"})
+	int geneCount;
+
+	/**
+	 * Average number of relations per gene, for each relation type.
+	 */
+	@Param({"5", "20"})
+	int degree;
+
+	/**
+	 * Exponent of the source distribution of relations, 1 for uniform.
+	 */
+	@Param({"1", "3"})
+	double skew;
+
+	@Param({"1", "4"})
+	int threads;
+
+	@Param({"1000"})
+	int alteredCount;
+
+	@Param({"700"})
+	int cancerGeneCount;
+
+	SyntheticNetwork network;
+	Set<String> altered;
+	Set<String> cancerGenes;
+	Main main;
+
+	@Setup
+	public void setup()
+	{
+		network = new SyntheticNetwork(1, geneCount, geneCount * degree, SyntheticNetwork.MIXED_TIERS, skew);
+		altered = network.randomGenes(2, alteredCount);
+		cancerGenes = network.randomGenes(3, cancerGeneCount);
+
+		main = new Main(".");
+		main.threads = threads;
+	}
+
+	@Benchmark
+	public void findEdges(Blackhole bh)
+	{
+		bh.consume(main.searchEdges(altered, cancerGenes, network));
+	}
+}
@@ -0,0 +1,107 @@
+package org.panda.cancernetwork;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks reading a generated tree of Mutex results, and computing the best scores of gene pairs from the groups.
+ *
+ * @author Ozgun Babur
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MutexReaderBenchmark
+{
+	/**
+	 * Number of result directories, spread over cancer type directories.
+	 */
+	@Param({"100", "1000"})
+	int dirCount;
+
+	@Param({"500"})
+	int groupsPerDir;
+
+	@Param({"20000"})
+	int geneCount;
+
+	File root;
+	Set<MutexReader.Group> groups;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		root = Files.createTempDirectory("mutex").toFile();
+		Random r = new Random(1);
+
+		for (int i = 0; i < dirCount; i++)
+		{
+			File dir = new File(root, "cancer" + (i % 30) + File.separator + "run" + i);
+			dir.mkdirs();
+
+			try (BufferedWriter writer = Files.newBufferedWriter(new File(dir, "ranked-groups.txt").toPath()))
+			{
+				writer.write("Score\tQ-val\tMembers");
+
+				double score = 0;
+				for (int j = 0; j < groupsPerDir; j++)
+				{
+					score += r.nextDouble() / groupsPerDir;
+					writer.write("\n" + score + "\t" + score * 2);
+
+					int size = 2 + r.nextInt(5);
+					for (int k = 0; k < size; k++)
+					{
+						writer.write("\tG" + (int) (geneCount * Math.pow(r.nextDouble(), 3)));
+					}
+				}
+			}
+		}
+
+		groups = MutexReader.readMutexResultsRecursive(root.getPath(), new HashSet<>());
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		delete(root);
+	}
+
+	private void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null) for (File child : children) delete(child);
+		file.delete();
+	}
+
+	@Benchmark
+	public Map<String, Double> readBestScoresRecursive()
+	{
+		return MutexReader.readBestScoresRecursive(root.getPath());
+	}
+
+	@Benchmark
+	public Map<String, Double> convertGroupsToPairBestScores()
+	{
+		return MutexReader.convertGroupsToPairBestScores(groups);
+	}
+
+	@Benchmark
+	public PairScoreMap getPairBestScores()
+	{
+		return MutexReader.getPairBestScores(groups);
+	}
+
+	@Benchmark
+	public List<PairScoreMap.Pair> getTopPairs()
+	{
+		return MutexReader.getTopPairs(groups, 1000);
+	}
+}
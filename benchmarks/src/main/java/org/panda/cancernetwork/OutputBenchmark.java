@@ -0,0 +1,86 @@
+package org.panda.cancernetwork;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmarks writing a found network as sif and format content, and as JSON. The content is discarded, so that only
+ * the work of the writers is measured.
+ *
+ * @author Ozgun Babur
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OutputBenchmark
+{
+	@Param({"20000"})
+	int geneCount;
+
+	@Param({"5", "20"})
+	int degree;
+
+	@Param({"3000"})
+	int alteredCount;
+
+	Main main;
+	Set<String> altered;
+	Main.EdgeBuffer found;
+
+	@Setup
+	public void setup()
+	{
+		SyntheticNetwork network = new SyntheticNetwork(1, geneCount, geneCount * degree,
+			SyntheticNetwork.MIXED_TIERS, 3);
+		altered = network.randomGenes(2, alteredCount);
+
+		main = new Main(".");
+		main.cancerGenes = network.randomGenes(3, 700);
+		main.tooltips = main.cancerGenes.stream().collect(Collectors.toMap(g -> g, g -> "Tooltip of " + g));
+
+		Random r = new Random(4);
+		for (String gene : altered)
+		{
+			int count = 1 + r.nextInt(3);
+			for (int i = 0; i < count; i++)
+			{
+				main.gas.addGeneAlteration(gene, "m", "p.X" + r.nextInt(1000) + "Y", null, null);
+			}
+		}
+
+		found = main.searchEdges(altered, main.cancerGenes, network);
+	}
+
+	/**
+	 * Writing releases the lists of the search result, and sorts the edges in place, so each invocation gets a copy.
+	 */
+	private Main.EdgeBuffer copy()
+	{
+		Main.EdgeBuffer buffer = new Main.EdgeBuffer();
+		buffer.edges = new ArrayList<>(found.edges);
+		buffer.genes = new ArrayList<>(found.genes);
+		return buffer;
+	}
+
+	@Benchmark
+	public void writeSifAndFormat() throws IOException
+	{
+		NetworkWriter writer = new NetworkWriter(new NetworkServer.NullWriter(), new NetworkServer.NullWriter());
+		main.writeNetwork(altered, copy(), writer);
+	}
+
+	@Benchmark
+	public void writeJson() throws IOException
+	{
+		main.writeNetwork(altered, copy(), new JsonNetworkWriter(new NetworkServer.NullWriter()));
+	}
+}
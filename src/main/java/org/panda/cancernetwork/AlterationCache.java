@@ -0,0 +1,288 @@
+package org.panda.cancernetwork;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * A directory of parsed gene alteration files. Each cache file keeps the gene features that an {@link AlterationReader}
+ * loaded from a data file, and it is used instead of the data file as long as the data file and the loader parameters
+ * stay the same.
+ * <p>
+ * File layout, where all integers are big-endian:
+ * <pre>
+ * magic, version
+ * key: data file path, size (long), modification time (long), CRC32 of content (long), parameter count, parameters
+ * string count, strings
+ * gene count, and for each gene: gene string ID, feature count, and for each feature:
+ *     letter, tooltip, background color, border color string IDs
+ * </pre>
+ * Strings are written as their UTF-8 byte count followed by the bytes.
+ *
+ * @author Ozgun Babur
+ */
+public class AlterationCache
+{
+	/**
+	 * First four bytes of a cache file.
+	 */
+	static final int MAGIC = 0x434E4143;
+
+	/**
+	 * Version of the file layout. Cache files of a different version are ignored.
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * The cache directory.
+	 */
+	File dir;
+
+	/**
+	 * Constructor with the cache directory.
+	 * @param dir the cache directory, which is created when needed
+	 */
+	public AlterationCache(String dir)
+	{
+		this.dir = new File(dir);
+	}
+
+	/**
+	 * Loads the alterations that the given parameters specify, from the cache if the data file did not change, and
+	 * from the data file otherwise. The cache is updated after loading from the data file.
+	 * @param param the loader name, followed by its parameters where the file path is absolute
+	 * @param gas gene alteration set to load into
+	 * @throws IOException
+	 */
+	public void load(String[] param, GeneAlterationSet gas) throws IOException
+	{
+		File data = new File(param[1]).getCanonicalFile();
+		File cache = getCacheFile(param, data);
+
+		Key key = new Key(param, data);
+
+		if (cache.exists() && read(cache, key, gas)) return;
+
+		// loaded into a separate set so that only the alterations of this file are cached
+		GeneAlterationSet loaded = new GeneAlterationSet();
+		AlterationReader.valueOf(param[0]).loader.load(loaded, param);
+
+		write(cache, key, loaded);
+		gas.addAll(loaded);
+	}
+
+	/**
+	 * The cache file for the given parameters, named by a hash of the data file path and the other parameters.
+	 */
+	private File getCacheFile(String[] param, File data)
+	{
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < param.length; i++)
+		{
+			String s = i == 1 ? data.getPath() : param[i];
+			for (byte b : s.getBytes(StandardCharsets.UTF_8))
+			{
+				h ^= b & 0xff;
+				h *= 0x100000001b3L;
+			}
+			h *= 0x100000001b3L;
+		}
+		return new File(dir, data.getName() + "-" + Long.toHexString(h) + ".alt");
+	}
+
+	/**
+	 * Reads the cache file if its key matches.
+	 * @return true if the alterations are read from the cache
+	 */
+	private boolean read(File cache, Key key, GeneAlterationSet gas)
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cache))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) return false;
+			if (!key.matches(in)) return false;
+
+			String[] strings = new String[in.readInt()];
+			for (int i = 0; i < strings.length; i++)
+			{
+				strings[i] = readString(in);
+			}
+
+			GeneAlterationSet cached = new GeneAlterationSet();
+			int geneCount = in.readInt();
+			for (int i = 0; i < geneCount; i++)
+			{
+				String gene = strings[in.readInt()];
+				int featureCount = in.readInt();
+				for (int j = 0; j < featureCount; j++)
+				{
+					cached.addGeneAlteration(gene, GeneFeature.get(strings[in.readInt()], strings[in.readInt()],
+						strings[in.readInt()], strings[in.readInt()]));
+				}
+			}
+
+			gas.addAll(cached);
+			return true;
+		}
+		catch (IOException | ArrayIndexOutOfBoundsException e)
+		{
+			System.err.println("Cannot read alteration cache " + cache + ": " + e + ", reloading.");
+			return false;
+		}
+	}
+
+	private void write(File cache, Key key, GeneAlterationSet gas) throws IOException
+	{
+		Files.createDirectories(dir.toPath());
+
+		// strings repeat a lot, especially the colors, so they are kept once
+		Map<String, Integer> ids = new LinkedHashMap<>();
+		for (String gene : gas.getGenes())
+		{
+			ids.putIfAbsent(gene, ids.size());
+			for (GeneFeature f : gas.getGeneFeatures(gene))
+			{
+				for (String s : new String[]{f.letter, f.tooltip, f.bgColor, f.borderColor})
+				{
+					ids.putIfAbsent(s, ids.size());
+				}
+			}
+		}
+
+		// other runs may be writing the same cache, so each writes its own temporary file
+		File temp = File.createTempFile(cache.getName(), ".tmp", dir);
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			key.write(out);
+
+			out.writeInt(ids.size());
+			for (String s : ids.keySet())
+			{
+				writeString(s, out);
+			}
+
+			out.writeInt(gas.getGenes().size());
+			for (String gene : gas.getGenes())
+			{
+				Set<GeneFeature> features = gas.getGeneFeatures(gene);
+				out.writeInt(ids.get(gene));
+				out.writeInt(features.size());
+				for (GeneFeature f : features)
+				{
+					out.writeInt(ids.get(f.letter));
+					out.writeInt(ids.get(f.tooltip));
+					out.writeInt(ids.get(f.bgColor));
+					out.writeInt(ids.get(f.borderColor));
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			temp.delete();
+			throw e;
+		}
+
+		Files.move(temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static void writeString(String s, DataOutputStream out) throws IOException
+	{
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException
+	{
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Identifies the content of a data file, and how it is loaded.
+	 */
+	static class Key
+	{
+		File data;
+		String[] param;
+		long size;
+		long modified;
+
+		/**
+		 * Content hash, computed only when the cheaper fields match or when writing.
+		 */
+		Long hash;
+
+		/**
+		 * Reads the size and the modification time of the data file, before it is loaded.
+		 */
+		Key(String[] param, File data) throws IOException
+		{
+			this.param = param;
+			this.data = data;
+			this.size = Files.size(data.toPath());
+			this.modified = Files.getLastModifiedTime(data.toPath()).toMillis();
+		}
+
+		long getHash() throws IOException
+		{
+			if (hash == null)
+			{
+				CRC32 crc = new CRC32();
+				try (FileChannel channel = FileChannel.open(data.toPath(), StandardOpenOption.READ))
+				{
+					for (long pos = 0; pos < size; pos += Integer.MAX_VALUE)
+					{
+						MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos,
+							Math.min(Integer.MAX_VALUE, size - pos));
+						crc.update(buf);
+					}
+				}
+				hash = crc.getValue();
+			}
+			return hash;
+		}
+
+		void write(DataOutputStream out) throws IOException
+		{
+			writeString(data.getPath(), out);
+			out.writeLong(size);
+			out.writeLong(modified);
+			out.writeLong(getHash());
+			out.writeInt(param.length);
+			for (int i = 0; i < param.length; i++)
+			{
+				writeString(i == 1 ? data.getPath() : param[i], out);
+			}
+		}
+
+		/**
+		 * Reads a key and checks if it is the same with this key.
+		 */
+		boolean matches(DataInputStream in) throws IOException
+		{
+			if (!readString(in).equals(data.getPath())) return false;
+			if (in.readLong() != size || in.readLong() != modified) return false;
+
+			long cachedHash = in.readLong();
+
+			int count = in.readInt();
+			if (count != param.length) return false;
+			for (int i = 0; i < count; i++)
+			{
+				if (!readString(in).equals(i == 1 ? data.getPath() : param[i])) return false;
+			}
+
+			return cachedHash == getHash();
+		}
+	}
+}
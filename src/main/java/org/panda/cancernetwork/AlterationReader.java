@@ -1,12 +1,7 @@
 package org.panda.cancernetwork;
 
-import org.panda.utility.ValToColor;
-
-import java.awt.*;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 
 /**
  * Loaders for gene alteration data files.
@@ -24,18 +19,18 @@ public enum AlterationReader
 		double thrLog2 = Double.valueOf(param[2]);
 		double saturationVal = Double.valueOf(param[3]);
 
-		ValToColor vtc = new ValToColor(new double[]{-saturationVal, 0, saturationVal},
-			new Color[]{new Color(100, 100, 255), Color.WHITE, new Color(255, 100, 100)});
+		ColorTable colors = ColorTable.get(saturationVal);
 
-		Files.lines(Paths.get(filename)).skip(1).map(l -> l.split("\t"))
-			.filter(t -> Math.abs(Double.valueOf(t[4])) >= thrLog2).filter(t -> !t[3].equals("-")).forEach(t ->
+		TsvScanner.scan(filename, 1, gas, (row, set) ->
 		{
-			Double log2 = Double.valueOf(t[4]);
-			String color = vtc.getColorInString(log2);
+			double log2 = row.getDouble(4);
+			if (Math.abs(log2) < thrLog2 || row.equals(3, "-")) return;
+
+			String color = colors.getColorInString(log2);
 
-			for (String gene : t[3].split(","))
+			for (String gene : row.get(3).split(","))
 			{
-				gas.addGeneAlteration(gene, "c", "log2 = " + log2, color, null);
+				set.addGeneAlteration(gene, "c", "log2 = " + log2, color, null);
 			}
 		});
 	}),
@@ -43,23 +38,23 @@ public enum AlterationReader
 	/**
 	 * Loader for Mutect results.
 	 */
-	Mutect((gas, param) -> Files.lines(Paths.get(param[1])).skip(1).map(l -> l.split("\t")).
-		forEach(t -> gas.addGeneAlteration(t[5], "m", t[6], GeneFeature.DEFAULT_BACKGROUND_COLOR,
-			t[6].startsWith("Splice") ? "255 0 0" : GeneFeature.DEFAULT_BORDER_COLOR))),
+	Mutect((gas, param) -> TsvScanner.scan(param[1], 1, gas, (row, set) ->
+		set.addGeneAlteration(row.get(5), "m", row.get(6), GeneFeature.DEFAULT_BACKGROUND_COLOR,
+			row.startsWith(6, "Splice") ? "255 0 0" : GeneFeature.DEFAULT_BORDER_COLOR))),
 
 	/**
-          * Loader for Mutect2 results.
-          */
-         Mutect2((gas, param) -> Files.lines(Paths.get(param[1])).skip(1).map(l -> l.split("\t")).
-         	forEach(t -> gas.addGeneAlteration(t[0], "m", t[8], GeneFeature.DEFAULT_BACKGROUND_COLOR,
-             	t[8].startsWith("Splice") ? "255 0 0" : GeneFeature.DEFAULT_BORDER_COLOR))), 
+	 * Loader for Mutect2 results.
+	 */
+	Mutect2((gas, param) -> TsvScanner.scan(param[1], 1, gas, (row, set) ->
+		set.addGeneAlteration(row.get(0), "m", row.get(8), GeneFeature.DEFAULT_BACKGROUND_COLOR,
+			row.startsWith(8, "Splice") ? "255 0 0" : GeneFeature.DEFAULT_BORDER_COLOR))),
 
 	/**
 	 * Loader for GeneTrails mutations.
 	 */
-	GeneTrailsMutations((gas, param) -> Files.lines(Paths.get(param[1])).skip(1).map(l -> l.split("\t")).
-		forEach(t -> gas.addGeneAlteration(t[8], "m", t[7], GeneFeature.DEFAULT_BACKGROUND_COLOR,
-			t[16].toLowerCase().contains("splice") ? "255 0 0" : GeneFeature.DEFAULT_BORDER_COLOR))),
+	GeneTrailsMutations((gas, param) -> TsvScanner.scan(param[1], 1, gas, (row, set) ->
+		set.addGeneAlteration(row.get(8), "m", row.get(7), GeneFeature.DEFAULT_BACKGROUND_COLOR,
+			row.get(16).toLowerCase().contains("splice") ? "255 0 0" : GeneFeature.DEFAULT_BORDER_COLOR))),
 
 	/**
 	 * Loader for GeneTrails CNV data.
@@ -69,17 +64,15 @@ public enum AlterationReader
 		String filename = param[1];
 		double saturationVal = Double.valueOf(param[2]);
 
-		ValToColor vtc = new ValToColor(new double[]{-saturationVal, 0, saturationVal},
-			new Color[]{new Color(100, 100, 255), Color.WHITE, new Color(255, 100, 100)});
+		ColorTable colors = ColorTable.get(saturationVal);
 
-		Files.lines(Paths.get(filename)).skip(1).map(l -> l.split("\t"))
-			.forEach(t ->
-			{
-				Double log2 = Math.log(Double.valueOf(t[7])) / Math.log(2);
-				String color = vtc.getColorInString(log2);
+		TsvScanner.scan(filename, 1, gas, (row, set) ->
+		{
+			Double log2 = Math.log(row.getDouble(7)) / Math.log(2);
+			String color = colors.getColorInString(log2);
 
-				gas.addGeneAlteration(t[4], "c", "log2 = " + log2, color, null);
-			});
+			set.addGeneAlteration(row.get(4), "c", "log2 = " + log2, color, null);
+		});
 	});
 
 	Loader loader;
@@ -106,6 +99,20 @@ public enum AlterationReader
 	 */
 	public static void loadAlterations(String paramValue, GeneAlterationSet gas, String workingDirectory)
 		throws IOException
+	{
+		loadAlterations(paramValue, gas, workingDirectory, null);
+	}
+
+	/**
+	 * Populates the given gene alteration set with gene alterations, using the given cache.
+	 * @param paramValue parameters in a string
+	 * @param gas gene alteration set
+	 * @param workingDirectory base directory for files
+	 * @param cache cache of parsed data files, or null to always parse the data file
+	 * @throws IOException
+	 */
+	public static void loadAlterations(String paramValue, GeneAlterationSet gas, String workingDirectory,
+		AlterationCache cache) throws IOException
 	{
 		paramValue = paramValue.trim();
 		String[] param = paramValue.split("\\s+");
@@ -115,7 +122,11 @@ public enum AlterationReader
 			param[1] = workingDirectory + File.separator + param[1];
 		}
 
-		AlterationReader reader = valueOf(param[0]);
-		reader.loader.load(gas, param);
+		if (cache != null) cache.load(param, gas);
+		else
+		{
+			AlterationReader reader = valueOf(param[0]);
+			reader.loader.load(gas, param);
+		}
 	}
 }
@@ -0,0 +1,238 @@
+package org.panda.cancernetwork;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Generates networks for a cohort of patient directories in a single JVM. Networks and cancer gene resources are
+ * loaded once per distinct parameters and shared among patients, which are processed by a bounded pool of workers. A
+ * failing patient, including a given directory without a parameters file, is reported without aborting the batch.
+ *
+ * @author Ozgun Babur
+ */
+public class BatchRunner
+{
+	/**
+	 * The first argument of {@link Main} that switches to the batch mode.
+	 */
+	public static final String BATCH_FLAG = "--batch";
+
+	/**
+	 * Option for the number of patients to process concurrently.
+	 */
+	public static final String WORKERS_FLAG = "--workers";
+
+	/**
+	 * Option for the file to write the percentiles of the run metrics.
+	 */
+	public static final String REPORT_FLAG = "--report";
+
+	/**
+	 * Option for the capacity of the neighborhood cache, in number of relations. 0 disables the cache.
+	 */
+	public static final String NEIGHBORHOOD_CACHE_FLAG = "--neighborhood-cache";
+
+	/**
+	 * Number of patients to process concurrently.
+	 */
+	int workers;
+
+	/**
+	 * Resources shared among patients.
+	 */
+	SharedResources resources;
+
+	/**
+	 * Metrics of the succeeded runs.
+	 */
+	Queue<RunMetrics> metrics;
+
+	/**
+	 * Constructor with the worker count.
+	 * @param workers number of patients to process concurrently
+	 */
+	public BatchRunner(int workers)
+	{
+		this(workers, NeighborhoodCache.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor with the worker count and the capacity of the neighborhood cache.
+	 * @param workers number of patients to process concurrently
+	 * @param neighborhoodCacheCapacity maximum number of cached relations, or 0 to not cache them
+	 */
+	public BatchRunner(int workers, long neighborhoodCacheCapacity)
+	{
+		this.workers = workers;
+		this.resources = new SharedResources(neighborhoodCacheCapacity);
+		this.metrics = new ConcurrentLinkedQueue<>();
+	}
+
+	/**
+	 * Generates the network of each directory.
+	 * @param dirs patient directories
+	 * @return failed directories, mapped to their errors
+	 * @throws InterruptedException
+	 */
+	public Map<String, Throwable> run(List<String> dirs) throws InterruptedException
+	{
+		Map<String, Throwable> failures = new ConcurrentSkipListMap<>();
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+
+		for (String dir : dirs)
+		{
+			executor.execute(() ->
+			{
+				try
+				{
+					if (!new File(dir, Main.PARAMETERS_FILENAME).exists())
+					{
+						throw new FileNotFoundException("No " + Main.PARAMETERS_FILENAME + " in " + dir);
+					}
+
+					Main main = new Main(dir, resources);
+					main.generateNetwork();
+					metrics.add(main.metrics);
+				}
+				catch (Throwable e)
+				{
+					System.err.println("Failed: " + dir + ": " + e);
+					failures.put(dir, e);
+
+					// the JVM may not be usable after these, hence the worker does not go on
+					if (e instanceof VirtualMachineError) throw (VirtualMachineError) e;
+				}
+			});
+		}
+
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		return failures;
+	}
+
+	/**
+	 * Expands the arguments into patient directories. An argument can be a directory, a glob pattern of directories,
+	 * or a file of directories, one per line, when prefixed with "@". Of the directories that match a glob pattern,
+	 * only the ones that contain a parameters file are kept. The directories that are named explicitly are all kept,
+	 * so that the missing parameters files are reported as failures.
+	 * @param args the arguments
+	 * @return patient directories in sorted order
+	 * @throws IOException
+	 */
+	public static List<String> expand(List<String> args) throws IOException
+	{
+		Set<String> dirs = new TreeSet<>();
+
+		for (String arg : args)
+		{
+			if (arg.startsWith("@"))
+			{
+				try (Stream<String> lines = Files.lines(Paths.get(arg.substring(1))))
+				{
+					lines.map(String::trim).filter(l -> !l.isEmpty() && !l.startsWith("#")).forEach(dirs::add);
+				}
+			}
+			else if (isGlob(arg))
+			{
+				glob(arg).stream().filter(d -> new File(d, Main.PARAMETERS_FILENAME).exists()).forEach(dirs::add);
+			}
+			else
+			{
+				dirs.add(arg);
+			}
+		}
+
+		return new ArrayList<>(dirs);
+	}
+
+	private static boolean isGlob(String arg)
+	{
+		return arg.contains("*") || arg.contains("?") || arg.contains("[") || arg.contains("{");
+	}
+
+	/**
+	 * Finds the directories that match the glob pattern, walking from the deepest directory without wildcards.
+	 */
+	private static List<String> glob(String pattern) throws IOException
+	{
+		Path path = Paths.get(pattern).toAbsolutePath();
+
+		int fixed = 0;
+		while (fixed < path.getNameCount() && !isGlob(path.getName(fixed).toString())) fixed++;
+
+		Path base = fixed == 0 ? path.getRoot() : path.getRoot().resolve(path.subpath(0, fixed));
+		int depth = path.getNameCount() - fixed;
+
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + path);
+
+		try (Stream<Path> stream = Files.walk(base, depth))
+		{
+			return stream.filter(Files::isDirectory).filter(matcher::matches).map(Path::toString)
+				.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Runs the batch. Usage: [--workers N] [--report file] [--neighborhood-cache N] (dir | glob | @dirs-file)...
+	 * @param args optional worker count, report file and cache capacity, followed by patient directories
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		List<String> argList = new ArrayList<>(Arrays.asList(args));
+
+		int workers = Runtime.getRuntime().availableProcessors();
+		String report = null;
+		long cacheCapacity = NeighborhoodCache.DEFAULT_CAPACITY;
+		while (argList.size() > 1 && (argList.get(0).equals(WORKERS_FLAG) || argList.get(0).equals(REPORT_FLAG) ||
+			argList.get(0).equals(NEIGHBORHOOD_CACHE_FLAG)))
+		{
+			if (argList.get(0).equals(WORKERS_FLAG)) workers = Integer.valueOf(argList.get(1));
+			else if (argList.get(0).equals(REPORT_FLAG)) report = argList.get(1);
+			else cacheCapacity = Long.valueOf(argList.get(1));
+			argList = argList.subList(2, argList.size());
+		}
+
+		List<String> dirs = expand(argList);
+
+		long start = System.currentTimeMillis();
+		BatchRunner runner = new BatchRunner(workers, cacheCapacity);
+		Map<String, Throwable> failures;
+		try
+		{
+			failures = runner.run(dirs);
+		}
+		catch (InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		}
+
+		System.out.println("Processed " + dirs.size() + " directories in " +
+			(System.currentTimeMillis() - start) / 1000 + " seconds, " + failures.size() + " failed.");
+		failures.keySet().forEach(dir -> System.out.println("Failed: " + dir + "\t" + failures.get(dir)));
+
+		NeighborhoodCache cache = runner.resources.getNeighborhoodCache();
+		if (cache != null) System.out.println(cache);
+
+		if (!runner.metrics.isEmpty())
+		{
+			System.out.println(RunMetrics.formatPercentiles(runner.metrics));
+			if (report != null)
+			{
+				try (Writer writer = Files.newBufferedWriter(Paths.get(report)))
+				{
+					RunMetrics.writePercentiles(runner.metrics, writer);
+				}
+			}
+		}
+
+		if (!failures.isEmpty()) System.exit(1);
+	}
+}
@@ -5,11 +5,10 @@ import org.panda.resource.CancerGeneCensus;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.Map;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Enum for cancer genes.
@@ -38,16 +37,24 @@ public enum CancerGeneResource
 	 */
 	Mutex(param ->
 	{
-		Map<String, Double> scoreMap = MutexReader.readBestScoresRecursive(param[1]);
 		double thr = Double.valueOf(param[2]);
-		return scoreMap.keySet().stream().filter(g -> scoreMap.get(g) <= thr).collect(Collectors.toSet());
+
+		// an index file can be given as the fourth parameter, after the resource name, directory and threshold
+		if (param.length > 3) return MutexIndex.load(param[1], param[3]).getGenes(thr);
+
+		return new HashSet<>(MutexReader.readBestScoresRecursive(param[1], thr).keySet());
 	}),
 
 	/**
 	 * Custom set of cancer genes given in a file.
 	 */
-	Custom(param -> Files.lines(Paths.get(param[1])).filter(l -> !l.startsWith("#")).map(l -> l.split("\t")[0])
-		.collect(Collectors.toSet()));
+	Custom(param ->
+	{
+		try (Stream<String> lines = CompressedInput.lines(param[1]))
+		{
+			return lines.filter(l -> !l.startsWith("#")).map(l -> l.split("\t")[0]).collect(Collectors.toSet());
+		}
+	});
 
 	CancerGeneResource(Loader loader)
 	{
@@ -72,13 +79,42 @@ public enum CancerGeneResource
 	 * @throws IOException
 	 */
 	public static Set<String> getCancerGenes(String paramValue, String workingDirectory) throws IOException
+	{
+		return getCancerGenes(resolveParameters(paramValue, workingDirectory));
+	}
+
+	/**
+	 * Gets the set of cancer genes using the already resolved parameters.
+	 * @param param the resource name, followed by its parameters where the file path is absolute
+	 * @return set of cancer genes
+	 * @throws IOException
+	 */
+	public static Set<String> getCancerGenes(String[] param) throws IOException
+	{
+		CancerGeneResource resource = valueOf(param[0]);
+		return resource.loader.load(param);
+	}
+
+	/**
+	 * Splits the parameter value into parameters, and resolves the file path against the working directory. The
+	 * resolved parameters identify the same resource when used from different directories.
+	 * @param paramValue parameters cannot contain spaces and treated as multi parameters when they do
+	 * @param workingDirectory the base directory for anything
+	 * @return the resource name, followed by its parameters
+	 */
+	public static String[] resolveParameters(String paramValue, String workingDirectory)
 	{
 		paramValue = paramValue.trim();
 		String[] param = paramValue.split("\\s+");
-		CancerGeneResource resource = valueOf(param[0]);
 
 		if (param.length > 1 && !param[1].startsWith("/")) param[1] = workingDirectory + File.separator + param[1];
 
-		return resource.loader.load(param);
+		// the Mutex index file
+		if (param[0].equals(Mutex.name()) && param.length > 3 && !param[3].startsWith("/"))
+		{
+			param[3] = workingDirectory + File.separator + param[3];
+		}
+
+		return param;
 	}
 }
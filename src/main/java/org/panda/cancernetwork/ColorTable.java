@@ -0,0 +1,76 @@
+package org.panda.cancernetwork;
+
+import org.panda.utility.ValToColor;
+
+import java.awt.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed color strings of the blue-white-red scale that copy number loaders use. The scale between the negative
+ * and positive saturation values is quantized into a fixed number of steps, and each step has its color string
+ * computed once. A step is finer than the change that one unit of a color channel needs, so the quantized colors are
+ * practically the same with the exact ones. Loaders with the same saturation value share the same table.
+ *
+ * @author Ozgun Babur
+ */
+public class ColorTable
+{
+	/**
+	 * Number of steps on each side of zero.
+	 */
+	static final int STEPS = 1024;
+
+	/**
+	 * Tables of saturation values.
+	 */
+	private static final Map<Double, ColorTable> TABLES = new ConcurrentHashMap<>();
+
+	/**
+	 * The exact color scale.
+	 */
+	ValToColor vtc;
+
+	double saturation;
+
+	/**
+	 * Color strings from the negative saturation value to the positive one.
+	 */
+	String[] colors;
+
+	private ColorTable(double saturation)
+	{
+		this.saturation = saturation;
+		vtc = new ValToColor(new double[]{-saturation, 0, saturation},
+			new Color[]{new Color(100, 100, 255), Color.WHITE, new Color(255, 100, 100)});
+
+		colors = new String[2 * STEPS + 1];
+		for (int i = 0; i < colors.length; i++)
+		{
+			colors[i] = vtc.getColorInString(saturation * (i - STEPS) / STEPS);
+		}
+	}
+
+	/**
+	 * Gets the table of the given saturation value.
+	 * @param saturation the absolute value where the colors saturate
+	 * @return the shared table
+	 */
+	public static ColorTable get(double saturation)
+	{
+		return TABLES.computeIfAbsent(saturation, ColorTable::new);
+	}
+
+	/**
+	 * Gets the color string of the value.
+	 * @param value the value
+	 * @return the color in "R G B" format
+	 */
+	public String getColorInString(double value)
+	{
+		if (Double.isNaN(value) || saturation <= 0) return vtc.getColorInString(value);
+
+		double clamped = Math.max(-saturation, Math.min(saturation, value));
+		return colors[(int) Math.round(clamped / saturation * STEPS) + STEPS];
+	}
+}
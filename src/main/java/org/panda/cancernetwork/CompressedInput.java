@@ -0,0 +1,333 @@
+package org.panda.cancernetwork;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.*;
+
+/**
+ * Opens input files that may be gzip or BGZF (blocked gzip) compressed. The compression is detected from the first
+ * bytes of the file, not from its name. BGZF files are decompressed in batches of blocks, where the blocks of a batch
+ * are inflated in parallel.
+ *
+ * @author Ozgun Babur
+ */
+public class CompressedInput
+{
+	/**
+	 * Size of the gzip member header with the BGZF extra field.
+	 */
+	static final int BGZF_HEADER_SIZE = 18;
+
+	/**
+	 * Compression of a file.
+	 */
+	enum Format
+	{
+		PLAIN,
+		GZIP,
+		BGZF
+	}
+
+	/**
+	 * Detects the compression of the file from its first bytes.
+	 * @param path the file
+	 * @return the compression format
+	 * @throws IOException
+	 */
+	static Format detect(Path path) throws IOException
+	{
+		byte[] header = new byte[BGZF_HEADER_SIZE];
+		int n = 0;
+		try (InputStream in = Files.newInputStream(path))
+		{
+			int r;
+			while (n < header.length && (r = in.read(header, n, header.length - n)) > 0) n += r;
+		}
+
+		if (n < 2 || (header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b) return Format.PLAIN;
+		return n == BGZF_HEADER_SIZE && isBgzfHeader(header) ? Format.BGZF : Format.GZIP;
+	}
+
+	/**
+	 * Checks if the file is gzip or BGZF compressed.
+	 * @param path the file
+	 * @return true if the file is compressed
+	 * @throws IOException
+	 */
+	public static boolean isCompressed(Path path) throws IOException
+	{
+		return detect(path) != Format.PLAIN;
+	}
+
+	/**
+	 * Opens the file, decompressing it if it is compressed.
+	 * @param path the file
+	 * @return the content of the file
+	 * @throws IOException
+	 */
+	public static InputStream open(Path path) throws IOException
+	{
+		Format format = detect(path);
+		InputStream in = new BufferedInputStream(Files.newInputStream(path), 1 << 16);
+
+		switch (format)
+		{
+			case GZIP: return new GZIPInputStream(in, 1 << 16);
+			case BGZF: return new BgzfInputStream(in);
+			default: return in;
+		}
+	}
+
+	/**
+	 * Opens the file as UTF-8 text, decompressing it if it is compressed.
+	 * @param path the file
+	 * @return the reader
+	 * @throws IOException
+	 */
+	public static BufferedReader newReader(String path) throws IOException
+	{
+		return new BufferedReader(new InputStreamReader(open(Paths.get(path)), StandardCharsets.UTF_8), 1 << 16);
+	}
+
+	/**
+	 * Reads the lines of the file, decompressing it if it is compressed. The stream has to be closed.
+	 * @param path the file
+	 * @return lines of the file
+	 * @throws IOException
+	 */
+	public static Stream<String> lines(String path) throws IOException
+	{
+		BufferedReader reader = newReader(path);
+		return reader.lines().onClose(() ->
+		{
+			try
+			{
+				reader.close();
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * Checks for the gzip header with the extra subfield "BC" of BGZF.
+	 */
+	private static boolean isBgzfHeader(byte[] h)
+	{
+		return (h[0] & 0xff) == 0x1f && (h[1] & 0xff) == 0x8b && h[2] == 8 && (h[3] & 4) != 0 &&
+			h[10] == 6 && h[11] == 0 && h[12] == 'B' && h[13] == 'C' && h[14] == 2 && h[15] == 0;
+	}
+
+	/**
+	 * Reads a little-endian unsigned integer of the given number of bytes.
+	 */
+	private static int readLE(byte[] b, int offset, int bytes)
+	{
+		int v = 0;
+		for (int i = bytes - 1; i >= 0; i--)
+		{
+			v = (v << 8) | (b[offset + i] & 0xff);
+		}
+		return v;
+	}
+
+	/**
+	 * Decompresses BGZF blocks. Blocks are read in batches, and the blocks of a batch are inflated in parallel.
+	 */
+	static class BgzfInputStream extends InputStream
+	{
+		InputStream in;
+
+		/**
+		 * Number of blocks to read for parallel inflation.
+		 */
+		int batchSize;
+
+		/**
+		 * Inflated blocks of the current batch.
+		 */
+		List<byte[]> blocks = new ArrayList<>();
+		int blockIndex;
+
+		byte[] block = new byte[0];
+		int pos;
+
+		boolean eof;
+
+		BgzfInputStream(InputStream in)
+		{
+			this.in = in;
+			this.batchSize = ForkJoinPool.getCommonPoolParallelism() * 4;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			if (pos == block.length && !nextBlock()) return -1;
+			return block[pos++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if (len == 0) return 0;
+			if (pos == block.length && !nextBlock()) return -1;
+
+			int n = Math.min(len, block.length - pos);
+			System.arraycopy(block, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			in.close();
+		}
+
+		/**
+		 * Moves to the next non-empty block, reading the next batch when needed.
+		 * @return false at the end of the stream
+		 */
+		private boolean nextBlock() throws IOException
+		{
+			do
+			{
+				if (blockIndex == blocks.size())
+				{
+					readBatch();
+					if (blocks.isEmpty()) return false;
+				}
+				block = blocks.get(blockIndex++);
+				pos = 0;
+			}
+			while (block.length == 0);
+
+			return true;
+		}
+
+		private void readBatch() throws IOException
+		{
+			blocks.clear();
+			blockIndex = 0;
+			if (eof) return;
+
+			List<byte[]> compressed = new ArrayList<>();
+			while (compressed.size() < batchSize)
+			{
+				byte[] raw = readRawBlock();
+				if (raw == null)
+				{
+					eof = true;
+					break;
+				}
+				compressed.add(raw);
+			}
+
+			byte[][] inflated = new byte[compressed.size()][];
+			try
+			{
+				IntStream.range(0, compressed.size()).parallel().forEach(i ->
+					inflated[i] = inflate(compressed.get(i)));
+			}
+			catch (UncheckedIOException e)
+			{
+				throw e.getCause();
+			}
+
+			for (byte[] b : inflated)
+			{
+				blocks.add(b);
+			}
+		}
+
+		/**
+		 * Reads the next whole compressed block.
+		 * @return the block, or null at the end of the stream
+		 */
+		private byte[] readRawBlock() throws IOException
+		{
+			byte[] header = new byte[BGZF_HEADER_SIZE];
+			int n = readFully(header, 0, header.length);
+			if (n == 0) return null;
+			if (n < header.length || !isBgzfHeader(header)) throw new ZipException("Not a BGZF block.");
+
+			int size = readLE(header, 16, 2) + 1;
+			byte[] raw = new byte[size];
+			System.arraycopy(header, 0, raw, 0, header.length);
+
+			if (readFully(raw, header.length, size - header.length) < size - header.length)
+			{
+				throw new EOFException("Truncated BGZF block.");
+			}
+			return raw;
+		}
+
+		private int readFully(byte[] b, int off, int len) throws IOException
+		{
+			int n = 0;
+			while (n < len)
+			{
+				int r = in.read(b, off + n, len - n);
+				if (r < 0) break;
+				n += r;
+			}
+			return n;
+		}
+
+		/**
+		 * Inflates a block and checks it against its CRC.
+		 */
+		private static byte[] inflate(byte[] raw)
+		{
+			int size = readLE(raw, raw.length - 4, 4);
+			byte[] out = new byte[size];
+
+			Inflater inflater = new Inflater(true);
+			try
+			{
+				inflater.setInput(raw, BGZF_HEADER_SIZE, raw.length - BGZF_HEADER_SIZE - 8);
+				int n = 0;
+				while (n < size)
+				{
+					int r = inflater.inflate(out, n, size - n);
+					if (r == 0 && (inflater.finished() || inflater.needsInput()))
+					{
+						throw new ZipException("Corrupt BGZF block.");
+					}
+					n += r;
+				}
+
+				CRC32 crc = new CRC32();
+				crc.update(out, 0, size);
+				if ((int) crc.getValue() != readLE(raw, raw.length - 8, 4))
+				{
+					throw new ZipException("BGZF block fails CRC check.");
+				}
+				return out;
+			}
+			catch (ZipException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+			catch (DataFormatException e)
+			{
+				throw new UncheckedIOException(new ZipException("Corrupt BGZF block: " + e.getMessage()));
+			}
+			finally
+			{
+				inflater.end();
+			}
+		}
+	}
+}
@@ -4,9 +4,11 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 
 /**
- * Mapping from altered genes to their sets of gene features (alterations).
+ * Mapping from altered genes to their sets of gene features (alterations). Adding alterations is thread-safe, so that
+ * loaders can fill the same set concurrently.
  *
  * @author Ozgun Babur
  */
@@ -17,18 +19,43 @@ public class GeneAlterationSet
 	 */
 	Map<String, Set<GeneFeature>> altered;
 
+	/**
+	 * Genes that can be added to the set. Null if all genes are accepted.
+	 */
+	Predicate<String> geneFilter;
+
 	public GeneAlterationSet()
 	{
 		altered = new HashMap<>();
 	}
 
+	/**
+	 * Sets the filter for the genes to add. Alterations of other genes are ignored.
+	 * @param geneFilter accepted genes, or null to accept all genes
+	 */
+	public void setGeneFilter(Predicate<String> geneFilter)
+	{
+		this.geneFilter = geneFilter;
+	}
+
+	/**
+	 * Checks if alterations of the gene can be added to the set.
+	 * @param gene the gene
+	 * @return true if the gene is accepted
+	 */
+	public boolean accepts(String gene)
+	{
+		return geneFilter == null || geneFilter.test(gene);
+	}
+
 	/**
 	 * Adds a new gene alteration.
 	 * @param gene the altered gene
 	 * @param feature the alteration
 	 */
-	public void addGeneAlteration(String gene, GeneFeature feature)
+	public synchronized void addGeneAlteration(String gene, GeneFeature feature)
 	{
+		if (!accepts(gene)) return;
 		if (!altered.containsKey(gene)) altered.put(gene, new HashSet<>());
 		altered.get(gene).add(feature);
 	}
@@ -44,7 +71,43 @@ public class GeneAlterationSet
 	 */
 	public void addGeneAlteration(String gene, String letter, String tooltip, String bgColor, String borderColor)
 	{
-		this.addGeneAlteration(gene, new GeneFeature(letter, tooltip, bgColor, borderColor));
+		// filtered out before the feature is created
+		if (!accepts(gene)) return;
+		this.addGeneAlteration(gene, GeneFeature.get(letter, tooltip, bgColor, borderColor));
+	}
+
+	/**
+	 * Adds all alterations of the other set.
+	 * @param other the other gene alteration set
+	 */
+	public synchronized void addAll(GeneAlterationSet other)
+	{
+		for (String gene : other.altered.keySet())
+		{
+			if (!accepts(gene)) continue;
+			if (!altered.containsKey(gene)) altered.put(gene, new HashSet<>());
+			altered.get(gene).addAll(other.altered.get(gene));
+		}
+	}
+
+	/**
+	 * Gets the genes whose alterations differ in the other set. These are the genes that are altered in only one of
+	 * the sets, and the genes with different alterations in each.
+	 * @param other the other gene alteration set
+	 * @return the changed genes
+	 */
+	public synchronized Set<String> diff(GeneAlterationSet other)
+	{
+		Set<String> changed = new HashSet<>();
+		for (String gene : altered.keySet())
+		{
+			if (!altered.get(gene).equals(other.altered.get(gene))) changed.add(gene);
+		}
+		for (String gene : other.altered.keySet())
+		{
+			if (!altered.containsKey(gene)) changed.add(gene);
+		}
+		return changed;
 	}
 
 	/**
@@ -0,0 +1,73 @@
+package org.panda.cancernetwork;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns dense int IDs to gene symbols, so that groups and gene pairs can be kept as primitive values. IDs are given
+ * in the order genes are first seen, and they are never reused. Gene symbols are a bounded vocabulary, so the shared
+ * dictionary lives as long as the process.
+ *
+ * @author Ozgun Babur
+ */
+public class GeneDictionary
+{
+	/**
+	 * The dictionary that is shared by the Mutex readers.
+	 */
+	public static final GeneDictionary SHARED = new GeneDictionary();
+
+	/**
+	 * IDs of genes. Lookups of known genes do not lock.
+	 */
+	private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+	/**
+	 * Genes, indexed by their IDs. Guarded by this object.
+	 */
+	private final List<String> genes = new ArrayList<>();
+
+	/**
+	 * Gets the ID of the gene, assigning a new one if the gene is not known.
+	 * @param gene the gene symbol
+	 * @return the ID of the gene
+	 */
+	public int getID(String gene)
+	{
+		Integer id = ids.get(gene);
+		if (id != null) return id;
+
+		synchronized (this)
+		{
+			id = ids.get(gene);
+			if (id == null)
+			{
+				id = genes.size();
+				genes.add(gene);
+				ids.put(gene, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * Gets the gene with the ID.
+	 * @param id the gene ID
+	 * @return the gene symbol
+	 */
+	public synchronized String getGene(int id)
+	{
+		return genes.get(id);
+	}
+
+	/**
+	 * Number of known genes.
+	 * @return size
+	 */
+	public synchronized int size()
+	{
+		return genes.size();
+	}
+}
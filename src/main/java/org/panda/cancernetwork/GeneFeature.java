@@ -2,8 +2,16 @@ package org.panda.cancernetwork;
 
 import org.panda.utility.ArrayUtil;
 
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
 /**
- * A gene feature is something that needs to be represented using small circles (info box) over the gene nodes.
+ * A gene feature is something that needs to be represented using small circles (info box) over the gene nodes. Gene
+ * features are immutable values, since the shared instances are used by every patient and thread. Loaders get them
+ * through {@link #get(String, String, String, String)}, which returns a shared instance for equal features.
  *
  * @author Ozgun Babur
  */
@@ -14,25 +22,31 @@ public class GeneFeature
 	public static final String DEFAULT_BORDER_COLOR = "0 0 0";
 	public static final String DEFAULT_TOOLTIP = "";
 
+	/**
+	 * Shared instances of gene features. Features that are no longer used anywhere are removed from the pool.
+	 */
+	private static final Map<GeneFeature, WeakReference<GeneFeature>> POOL =
+		Collections.synchronizedMap(new WeakHashMap<>());
+
 	/**
 	 * The letter displayed in info box.
 	 */
-	String letter;
+	final String letter;
 
 	/**
 	 * The tooltip text that is displayed on mouse over.
 	 */
-	String bgColor;
+	final String bgColor;
 
 	/**
 	 * Background color of the info box.
 	 */
-	String borderColor;
+	final String borderColor;
 
 	/**
 	 * The border color of the info box.
 	 */
-	String tooltip;
+	final String tooltip;
 
 	/**
 	 * Constructor with all necessary information
@@ -44,13 +58,49 @@ public class GeneFeature
 	public GeneFeature(String letter, String tooltip, String bgColor, String borderColor)
 	{
 		this.letter = letter;
-		this.tooltip = tooltip;
-		this.bgColor = bgColor;
-		this.borderColor = borderColor;
+		this.tooltip = tooltip == null ? DEFAULT_TOOLTIP : tooltip;
+		this.bgColor = bgColor == null ? DEFAULT_BACKGROUND_COLOR : bgColor;
+		this.borderColor = borderColor == null ? DEFAULT_BORDER_COLOR : borderColor;
+	}
 
-		if (tooltip == null) this.tooltip = DEFAULT_TOOLTIP;
-		if (bgColor == null) this.bgColor = DEFAULT_BACKGROUND_COLOR;
-		if (borderColor == null) this.borderColor = DEFAULT_BORDER_COLOR;
+	/**
+	 * Gets the shared instance of the gene feature with the given properties.
+	 * @param letter the letter displayed in info box
+	 * @param tooltip the tooltip text that is displayed on mouse over
+	 * @param bgColor background color of the info box
+	 * @param borderColor the border color of the info box
+	 * @return the shared gene feature
+	 */
+	public static GeneFeature get(String letter, String tooltip, String bgColor, String borderColor)
+	{
+		GeneFeature feature = new GeneFeature(letter, tooltip, bgColor, borderColor);
+
+		synchronized (POOL)
+		{
+			WeakReference<GeneFeature> ref = POOL.get(feature);
+			GeneFeature shared = ref == null ? null : ref.get();
+			if (shared != null) return shared;
+
+			POOL.put(feature, new WeakReference<>(feature));
+			return feature;
+		}
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o) return true;
+		if (!(o instanceof GeneFeature)) return false;
+
+		GeneFeature f = (GeneFeature) o;
+		return Objects.equals(letter, f.letter) && Objects.equals(tooltip, f.tooltip) &&
+			Objects.equals(bgColor, f.bgColor) && Objects.equals(borderColor, f.borderColor);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(letter, tooltip, bgColor, borderColor);
 	}
 
 	@Override
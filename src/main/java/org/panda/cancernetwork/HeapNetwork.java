@@ -0,0 +1,114 @@
+package org.panda.cancernetwork;
+
+import org.panda.utility.graph.DirectedGraph;
+import org.panda.utility.graph.Graph;
+
+import java.nio.IntBuffer;
+import java.util.*;
+
+/**
+ * An indexed network built in memory from the graphs that the {@link NetworkLoader} provides. Mediators are not
+ * indexed, they are looked up from the original graphs only for the relations that make it into the result.
+ *
+ * @author Ozgun Babur
+ */
+public class HeapNetwork extends IndexedNetwork
+{
+	/**
+	 * Gene symbols, ordered by their IDs.
+	 */
+	String[] genes;
+
+	/**
+	 * Map from gene symbols to their IDs.
+	 */
+	Map<String, Integer> idMap;
+
+	/**
+	 * The original graph of each relation type, for the mediator lookup.
+	 */
+	Map<Relations, Graph> graphs;
+
+	/**
+	 * Constructor with the priority-ordered graphs.
+	 * @param graphsList the priority-ordered list of sets of graphs
+	 */
+	public HeapNetwork(List<Map<String, Graph>> graphsList)
+	{
+		Set<String> symbols = new HashSet<>();
+		graphsList.forEach(map -> map.values().forEach(graph -> symbols.addAll(graph.getSymbols())));
+
+		List<String> geneList = new ArrayList<>(symbols);
+		Collections.sort(geneList);
+
+		genes = geneList.toArray(new String[geneList.size()]);
+		idMap = new HashMap<>();
+		for (int i = 0; i < genes.length; i++)
+		{
+			idMap.put(genes[i], i);
+		}
+
+		graphs = new HashMap<>();
+
+		for (Map<String, Graph> graphMap : graphsList)
+		{
+			List<Relations> tier = new ArrayList<>();
+			tiers.add(tier);
+
+			for (String type : graphMap.keySet())
+			{
+				Graph graph = graphMap.get(type);
+
+				Relations rel = new Relations();
+				rel.type = type;
+				rel.directed = graph.isDirected();
+
+				if (rel.directed)
+				{
+					rel.forward = adjacency(buildAdjacency(geneList, idMap, ((DirectedGraph) graph)::getDownstream));
+					rel.backward = adjacency(buildAdjacency(geneList, idMap, ((DirectedGraph) graph)::getUpstream));
+				}
+				else
+				{
+					rel.forward = adjacency(buildAdjacency(geneList, idMap, graph::getNeighbors));
+				}
+
+				tier.add(rel);
+				graphs.put(rel, graph);
+			}
+		}
+	}
+
+	private static Adjacency adjacency(int[][] arrays)
+	{
+		Adjacency adj = new Adjacency();
+		adj.offsets = IntBuffer.wrap(arrays[0]);
+		adj.targets = IntBuffer.wrap(arrays[1]);
+		return adj;
+	}
+
+	@Override
+	public int getGeneCount()
+	{
+		return genes.length;
+	}
+
+	@Override
+	public int getGeneID(String gene)
+	{
+		Integer id = idMap.get(gene);
+		return id == null ? -1 : id;
+	}
+
+	@Override
+	public String getGene(int id)
+	{
+		return genes[id];
+	}
+
+	@Override
+	public String getMediators(Relations rel, Adjacency adj, int entry, String source, String target)
+	{
+		return graphs.get(rel).getMediatorsInString(source, target);
+	}
+}
@@ -0,0 +1,207 @@
+package org.panda.cancernetwork;
+
+import java.nio.IntBuffer;
+import java.util.*;
+
+/**
+ * Priority-ordered relation graphs where gene symbols are interned to dense integer IDs and each relation type is kept
+ * as compressed-sparse-row adjacency. Edge searches over this structure run on integer arrays, and touch gene symbols
+ * only for the relations they report.
+ *
+ * @author Ozgun Babur
+ */
+public abstract class IndexedNetwork
+{
+	/**
+	 * The priority-ordered relation types.
+	 */
+	List<List<Relations>> tiers;
+
+	protected IndexedNetwork()
+	{
+		tiers = new ArrayList<>();
+	}
+
+	/**
+	 * Number of genes in the network.
+	 * @return gene count
+	 */
+	public abstract int getGeneCount();
+
+	/**
+	 * Gets the integer ID of the given gene.
+	 * @param gene the gene symbol
+	 * @return the ID of the gene, or -1 if the gene is not in the network
+	 */
+	public abstract int getGeneID(String gene);
+
+	/**
+	 * Gets the gene symbol with the given ID.
+	 * @param id the gene ID
+	 * @return the gene symbol
+	 */
+	public abstract String getGene(int id);
+
+	/**
+	 * Gets the mediators of a relation in the format of the SIF file.
+	 * @param rel the relation type
+	 * @param adj the adjacency that contains the entry
+	 * @param entry index of the adjacency entry
+	 * @param source source gene of the relation, or the lexically smaller gene for undirected relations
+	 * @param target target gene of the relation, or the lexically greater gene for undirected relations
+	 * @return mediators string
+	 */
+	public abstract String getMediators(Relations rel, Adjacency adj, int entry, String source, String target);
+
+	/**
+	 * Number of priority tiers.
+	 * @return tier count
+	 */
+	public int getTierCount()
+	{
+		return tiers.size();
+	}
+
+	/**
+	 * Gets the relation types of a priority tier.
+	 * @param index the priority
+	 * @return relation types in the tier
+	 */
+	public List<Relations> getTier(int index)
+	{
+		return tiers.get(index);
+	}
+
+	/**
+	 * Converts a set of genes to a bitset of gene IDs. Genes that are not in the network are ignored.
+	 * @param genes gene symbols
+	 * @return bitset of IDs
+	 */
+	public BitSet toBitSet(Set<String> genes)
+	{
+		BitSet bits = new BitSet(getGeneCount());
+		for (String gene : genes)
+		{
+			int id = getGeneID(gene);
+			if (id >= 0) bits.set(id);
+		}
+		return bits;
+	}
+
+	/**
+	 * Relations of one type, kept as compressed-sparse-row adjacency.
+	 */
+	public static class Relations
+	{
+		/**
+		 * The SIF tag of the relation type.
+		 */
+		String type;
+
+		/**
+		 * Whether the relations are directed.
+		 */
+		boolean directed;
+
+		/**
+		 * Downstream adjacency for directed types, neighbor adjacency for undirected types.
+		 */
+		Adjacency forward;
+
+		/**
+		 * Upstream adjacency for directed types, null for undirected types.
+		 */
+		Adjacency backward;
+
+		public String getType()
+		{
+			return type;
+		}
+
+		public boolean isDirected()
+		{
+			return directed;
+		}
+
+		public Adjacency getForward()
+		{
+			return forward;
+		}
+
+		public Adjacency getBackward()
+		{
+			return backward;
+		}
+	}
+
+	/**
+	 * Compressed-sparse-row adjacency. Neighbors of gene i are at the entries from begin(i) to end(i), sorted by ID.
+	 */
+	public static class Adjacency
+	{
+		IntBuffer offsets;
+		IntBuffer targets;
+
+		/**
+		 * Indexes of mediator strings for each entry. Only used by snapshots.
+		 */
+		IntBuffer mediatorIDs;
+
+		public int begin(int gene)
+		{
+			return offsets.get(gene);
+		}
+
+		public int end(int gene)
+		{
+			return offsets.get(gene + 1);
+		}
+
+		public int target(int entry)
+		{
+			return targets.get(entry);
+		}
+
+		public int mediatorID(int entry)
+		{
+			return mediatorIDs.get(entry);
+		}
+	}
+
+	/**
+	 * Builds CSR arrays of offsets and targets for the given neighbor function.
+	 * @param genes gene symbols, ordered by their IDs
+	 * @param idMap map from gene symbols to their IDs
+	 * @param nf provides neighbors of a gene
+	 * @return offsets and targets arrays
+	 */
+	static int[][] buildAdjacency(List<String> genes, Map<String, Integer> idMap, NeighborFunction nf)
+	{
+		int[] offsets = new int[genes.size() + 1];
+		List<int[]> rows = new ArrayList<>(genes.size());
+
+		for (int i = 0; i < genes.size(); i++)
+		{
+			Set<String> neighbors = nf.get(genes.get(i));
+			int[] row = neighbors == null ? new int[0] :
+				neighbors.stream().map(idMap::get).filter(Objects::nonNull).mapToInt(Integer::intValue).sorted()
+					.toArray();
+			rows.add(row);
+			offsets[i + 1] = offsets[i] + row.length;
+		}
+
+		int[] targets = new int[offsets[genes.size()]];
+		for (int i = 0; i < genes.size(); i++)
+		{
+			int[] row = rows.get(i);
+			System.arraycopy(row, 0, targets, offsets[i], row.length);
+		}
+
+		return new int[][]{offsets, targets};
+	}
+
+	interface NeighborFunction
+	{
+		Set<String> get(String gene);
+	}
+}
@@ -0,0 +1,242 @@
+package org.panda.cancernetwork;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Writes a network as Cytoscape.js elements JSON, while the network is generated, without building a document in
+ * memory. The output is in the form:
+ * <pre>
+ * {"elements":{
+ *   "edges":[{"data":{"id":"e0","source":"A","target":"B","type":"controls-state-change-of","mediators":[...]}},...],
+ *   "nodes":[{"data":{"id":"A","altered":true,"cancerGene":true,"color":"rgb(200,255,180)",
+ *     "borderColor":"rgb(0,0,0)","borderWidth":2,"tooltip":"...",
+ *     "infoBoxes":[{"letter":"m","tooltip":"...","backgroundColor":"rgb(255,255,255)","borderColor":"rgb(0,0,0)"}]}},...]
+ * }}
+ * </pre>
+ * Styling fields are only present when they differ from the defaults. Cytoscape.js adds nodes before edges
+ * regardless of their order in the elements object.
+ *
+ * @author Ozgun Babur
+ */
+public class JsonNetworkWriter implements NetworkOutput
+{
+	/**
+	 * Extension of the JSON output file.
+	 */
+	public static final String EXTENSION = ".json";
+
+	/**
+	 * Colors of the node styles, in CSS form.
+	 */
+	private static final String CANCER_GENE_COLOR = toCss(Main.CANCER_GENE_COLOR);
+	private static final String BORDER_COLOR = toCss(GeneFeature.DEFAULT_BORDER_COLOR);
+
+	private final NetworkWriter.CharBuffer out;
+
+	/**
+	 * Number of edges written, which is also the ID of the next edge.
+	 */
+	private int edgeCount;
+
+	/**
+	 * Number of nodes written.
+	 */
+	private int nodeCount;
+
+	/**
+	 * Whether the edges array is closed and the nodes array is open.
+	 */
+	private boolean inNodes;
+
+	/**
+	 * Constructor with the writer of the JSON content. Closing this writer closes it.
+	 * @param writer writer for the JSON content
+	 * @throws IOException
+	 */
+	public JsonNetworkWriter(Writer writer) throws IOException
+	{
+		this.out = new NetworkWriter.CharBuffer(writer);
+		out.append("{\"elements\":{\n\"edges\":[");
+	}
+
+	/**
+	 * Opens the JSON file of the network.
+	 * @param fileNoExt path of the output file, without the extension
+	 * @param compress whether to gzip the file, which then has the ".gz" extension at the end
+	 * @return the writer
+	 * @throws IOException
+	 */
+	public static JsonNetworkWriter open(String fileNoExt, boolean compress) throws IOException
+	{
+		Writer writer = NetworkWriter.openFile(fileNoExt + EXTENSION, compress);
+		try
+		{
+			return new JsonNetworkWriter(writer);
+		}
+		catch (IOException e)
+		{
+			writer.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public void writeEdges(List<String> edges) throws IOException
+	{
+		if (inNodes) throw new IllegalStateException("Edges should be written before the nodes.");
+		edges.sort(null);
+
+		String last = null;
+		for (String edge : edges)
+		{
+			if (edge.equals(last)) continue;
+			writeEdge(edge);
+			last = edge;
+		}
+	}
+
+	/**
+	 * Writes an edge from its SIF line.
+	 */
+	private void writeEdge(String edge) throws IOException
+	{
+		String[] t = edge.split("\t", -1);
+
+		out.append(edgeCount == 0 ? "\n" : ",\n");
+		out.append("{\"data\":{\"id\":\"e").append(String.valueOf(edgeCount++)).append('"');
+		writeField("source", t[0]);
+		writeField("target", t[2]);
+		writeField("type", t[1]);
+
+		out.append(",\"mediators\":[");
+		if (t.length > 3)
+		{
+			boolean first = true;
+			for (String mediator : t[3].split(" "))
+			{
+				if (mediator.isEmpty()) continue;
+				if (!first) out.append(',');
+				writeString(mediator);
+				first = false;
+			}
+		}
+		out.append("]}}");
+	}
+
+	@Override
+	public void writeNode(String gene, boolean altered, boolean cancerGene, Collection<GeneFeature> features,
+		String tooltip) throws IOException
+	{
+		startNodes();
+
+		out.append(nodeCount++ == 0 ? "\n" : ",\n");
+		out.append("{\"data\":{");
+		out.append("\"id\":");
+		writeString(gene);
+		out.append(",\"altered\":").append(String.valueOf(altered));
+		out.append(",\"cancerGene\":").append(String.valueOf(cancerGene));
+
+		if (cancerGene) writeField("color", CANCER_GENE_COLOR);
+
+		// altered cancer genes have a thick black border
+		if (altered && cancerGene)
+		{
+			writeField("borderColor", BORDER_COLOR);
+			out.append(",\"borderWidth\":2");
+		}
+
+		if (tooltip != null) writeField("tooltip", tooltip);
+
+		if (!features.isEmpty())
+		{
+			out.append(",\"infoBoxes\":[");
+			boolean first = true;
+			for (GeneFeature feature : features)
+			{
+				if (!first) out.append(',');
+				out.append("{\"letter\":");
+				writeString(feature.letter);
+				writeField("tooltip", feature.tooltip);
+				writeField("backgroundColor", toCss(feature.bgColor));
+				writeField("borderColor", toCss(feature.borderColor));
+				out.append('}');
+				first = false;
+			}
+			out.append(']');
+		}
+		out.append("}}");
+	}
+
+	private void startNodes() throws IOException
+	{
+		if (inNodes) return;
+		out.append("\n],\n\"nodes\":[");
+		inNodes = true;
+	}
+
+	@Override
+	public void finish() throws IOException
+	{
+		startNodes();
+		out.append("\n]}}\n");
+		flush();
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		out.close();
+	}
+
+	private void writeField(String name, String value) throws IOException
+	{
+		out.append(",\"").append(name).append("\":");
+		writeString(value);
+	}
+
+	/**
+	 * Writes the string as a JSON string, escaping the characters that JSON does not allow as they are.
+	 */
+	private void writeString(String s) throws IOException
+	{
+		out.append('"');
+		int from = 0;
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c != '"' && c != '\\' && c >= 0x20) continue;
+
+			out.append(s, from, i);
+			from = i + 1;
+
+			switch (c)
+			{
+				case '"': out.append("\\\""); break;
+				case '\\': out.append("\\\\"); break;
+				case '\n': out.append("\\n"); break;
+				case '\r': out.append("\\r"); break;
+				case '\t': out.append("\\t"); break;
+				default: out.append(String.format("\\u%04x", (int) c));
+			}
+		}
+		out.append(s, from, s.length());
+		out.append('"');
+	}
+
+	/**
+	 * Converts a color in the form of "r g b" to the CSS form that Cytoscape.js uses.
+	 */
+	static String toCss(String rgb)
+	{
+		return "rgb(" + rgb.trim().replace(' ', ',') + ")";
+	}
+}
@@ -0,0 +1,145 @@
+package org.panda.cancernetwork;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.*;
+
+/**
+ * Runs the batch mode on the patients of a synthetic cohort, and reports the throughput and the peak heap usage. The
+ * cohort is generated first if the directory does not have one, so the scaling limits of the tool can be measured on
+ * a machine without patient data and without network access.
+ *
+ * @author Ozgun Babur
+ */
+public class LoadTest
+{
+	/**
+	 * The first argument of {@link Main} that switches to the load test.
+	 */
+	public static final String LOAD_TEST_FLAG = "--load-test";
+
+	/**
+	 * Results of a load test.
+	 */
+	static class Result
+	{
+		int patients;
+		int failures;
+		long millis;
+		long peakHeap;
+
+		/**
+		 * Metrics of the succeeded runs.
+		 */
+		List<RunMetrics> metrics;
+
+		/**
+		 * The neighborhood cache of the batch, or null if it is disabled.
+		 */
+		NeighborhoodCache cache;
+
+		double getPatientsPerSecond()
+		{
+			return millis == 0 ? 0 : patients * 1000D / millis;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Patients: " + patients + ", failed: " + failures + "\n" +
+				"Time: " + millis / 1000D + " seconds, " + String.format("%.2f", getPatientsPerSecond()) +
+				" patients/second\n" +
+				"Peak heap: " + (peakHeap >> 20) + " MB of " + (Runtime.getRuntime().maxMemory() >> 20) + " MB" +
+				(cache == null ? "" : "\n" + cache) +
+				(metrics.isEmpty() ? "" : "\n" + RunMetrics.formatPercentiles(metrics));
+		}
+	}
+
+	/**
+	 * Generates the networks of the patients of the cohort, and measures the peak heap usage. The JVM keeps the peak
+	 * of each heap pool, which includes the garbage that fills a pool before a collection, so a short spike is not
+	 * missed as it is by sampling. The pools can peak at different times, hence their sum is an upper bound.
+	 * @param root the cohort directory
+	 * @param workers number of patients to process concurrently
+	 * @return the results
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static Result run(File root, int workers) throws IOException, InterruptedException
+	{
+		List<String> dirs = BatchRunner.expand(Collections.singletonList(
+			new File(root, SyntheticCohort.PATIENTS_DIRNAME).getPath() + File.separator + "*"));
+
+		List<MemoryPoolMXBean> pools = new ArrayList<>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) pools.add(pool);
+		}
+
+		System.gc();
+		pools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+		long start = System.currentTimeMillis();
+		BatchRunner runner = new BatchRunner(workers);
+		Map<String, Throwable> failures = runner.run(dirs);
+
+		Result result = new Result();
+		result.millis = System.currentTimeMillis() - start;
+
+		result.patients = dirs.size();
+		result.failures = failures.size();
+		result.peakHeap = pools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+		result.metrics = new ArrayList<>(runner.metrics);
+		result.cache = runner.resources.getNeighborhoodCache();
+		return result;
+	}
+
+	/**
+	 * Runs the load test. Usage: [--workers N] [generator options] dir
+	 * @param args optional worker count, options of {@link SyntheticCohort} for when the cohort is generated, and the
+	 * cohort directory
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		int workers = Runtime.getRuntime().availableProcessors();
+		if (args.length > 1 && args[0].equals(BatchRunner.WORKERS_FLAG))
+		{
+			workers = Integer.valueOf(args[1]);
+			args = Arrays.copyOfRange(args, 2, args.length);
+		}
+
+		SyntheticCohort cohort = new SyntheticCohort();
+		int i = cohort.readOptions(args);
+		if (i != args.length - 1)
+		{
+			System.err.println("Usage: " + LOAD_TEST_FLAG + " [" + BatchRunner.WORKERS_FLAG + " N] [options] dir");
+			System.exit(1);
+		}
+
+		File root = new File(args[i]);
+		if (!new File(root, SyntheticCohort.PATIENTS_DIRNAME).exists())
+		{
+			System.out.println("Generating the cohort: " + root);
+			cohort.generate(root);
+		}
+
+		Result result;
+		try
+		{
+			result = run(root, workers);
+		}
+		catch (InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		}
+
+		System.out.println("Workers: " + workers);
+		System.out.println(result);
+
+		if (result.failures > 0) System.exit(1);
+	}
+}
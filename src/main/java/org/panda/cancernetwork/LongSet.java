@@ -0,0 +1,174 @@
+package org.panda.cancernetwork;
+
+import java.util.Arrays;
+
+/**
+ * A set of primitive long values with open addressing and linear probing. Used for keeping gene pairs as packed long
+ * keys without allocating an object per pair.
+ *
+ * @author Ozgun Babur
+ */
+public class LongSet
+{
+	/**
+	 * The marker for empty slots. The value itself is tracked separately.
+	 */
+	static final long EMPTY = Long.MIN_VALUE;
+
+	/**
+	 * Hash table slots. Its length is always a power of two.
+	 */
+	private long[] slots;
+
+	/**
+	 * Whether the set contains the value that is used as the empty marker.
+	 */
+	private boolean hasEmptyValue;
+
+	/**
+	 * Number of values in the set.
+	 */
+	private int size;
+
+	public LongSet()
+	{
+		this(16);
+	}
+
+	/**
+	 * Constructor with the expected number of values.
+	 * @param expectedSize expected number of values
+	 */
+	public LongSet(int expectedSize)
+	{
+		int capacity = 16;
+		while (capacity < expectedSize * 2) capacity <<= 1;
+		slots = new long[capacity];
+		Arrays.fill(slots, EMPTY);
+	}
+
+	/**
+	 * Packs an ordered pair of gene IDs into a long key.
+	 * @param id1 first gene ID
+	 * @param id2 second gene ID
+	 * @return the pair key
+	 */
+	public static long pairKey(int id1, int id2)
+	{
+		return ((long) id1 << 32) | (id2 & 0xffffffffL);
+	}
+
+	/**
+	 * Adds a value to the set.
+	 * @param value the value
+	 * @return true if the value was not already in the set
+	 */
+	public boolean add(long value)
+	{
+		if (value == EMPTY)
+		{
+			if (hasEmptyValue) return false;
+			hasEmptyValue = true;
+			size++;
+			return true;
+		}
+
+		int i = probe(slots, value);
+		if (slots[i] == value) return false;
+
+		slots[i] = value;
+		size++;
+
+		if (size * 2 > slots.length) rehash(slots.length << 1);
+		return true;
+	}
+
+	/**
+	 * Checks if the value is in the set.
+	 * @param value the value
+	 * @return true if the value is in the set
+	 */
+	public boolean contains(long value)
+	{
+		if (value == EMPTY) return hasEmptyValue;
+
+		return slots[probe(slots, value)] == value;
+	}
+
+	/**
+	 * Adds all values of the other set to this set.
+	 * @param other the other set
+	 */
+	public void addAll(LongSet other)
+	{
+		if (other.hasEmptyValue) add(EMPTY);
+		for (long value : other.slots)
+		{
+			if (value != EMPTY) add(value);
+		}
+	}
+
+	/**
+	 * Number of values in the set.
+	 * @return size
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Removes all values, keeping the allocated capacity.
+	 */
+	public void clear()
+	{
+		Arrays.fill(slots, EMPTY);
+		hasEmptyValue = false;
+		size = 0;
+	}
+
+	private void rehash(int capacity)
+	{
+		long[] old = slots;
+		slots = new long[capacity];
+		Arrays.fill(slots, EMPTY);
+
+		for (long value : old)
+		{
+			if (value != EMPTY) slots[probe(slots, value)] = value;
+		}
+	}
+
+	/**
+	 * Finds the slot of the value in a hash table of long keys, or the empty slot where it would be added, by linear
+	 * probing. Shared with the other tables of packed gene pairs.
+	 * @param slots hash table slots, whose length is a power of two, with at least one empty slot
+	 * @param value the value, which is not the empty marker
+	 * @return index of the slot
+	 */
+	static int probe(long[] slots, long value)
+	{
+		int mask = slots.length - 1;
+		int i = hash(value) & mask;
+		while (slots[i] != EMPTY && slots[i] != value) i = (i + 1) & mask;
+		return i;
+	}
+
+	/**
+	 * Mixes the bits of the value, since pair keys have most of their entropy in specific bit ranges.
+	 */
+	private static int hash(long value)
+	{
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return (int) value;
+	}
+}
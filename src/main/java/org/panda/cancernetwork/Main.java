@@ -1,18 +1,18 @@
 package org.panda.cancernetwork;
 
 import org.biopax.paxtools.pattern.miner.SIFEnum;
-import org.panda.utility.FileUtil;
-import org.panda.utility.graph.DirectedGraph;
-import org.panda.utility.graph.Graph;
 
-import java.awt.Color;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Main class for cancer network generation. It reads parameters from a file and generates the desired network.
@@ -31,6 +31,11 @@ public class Main
 	 */
 	public static final String DEFAULT_OUTPUT_FILENAME = "network";
 
+	/**
+	 * Fill color of the cancer genes in the format file.
+	 */
+	static final String CANCER_GENE_COLOR = "200 255 180";
+
 	/**
 	 * The directory that contains the parameters file.
 	 */
@@ -62,6 +67,93 @@ public class Main
 	 */
 	String outputFile;
 
+	/**
+	 * Whether the output files are gzip compressed.
+	 */
+	boolean compressOutput;
+
+	/**
+	 * Whether the network is written as a Cytoscape.js JSON file instead of the sif and format files.
+	 */
+	boolean jsonOutput;
+
+	/**
+	 * Local SIF file of the network. When set, the network is loaded from this file instead of Pathway Commons.
+	 */
+	String networkFile;
+
+	/**
+	 * Compiled network snapshot file. When set, the network is memory-mapped from this file instead of being loaded
+	 * into graphs.
+	 */
+	String networkSnapshot;
+
+	/**
+	 * Index file of the neighbors of the cancer genes. When set, edges are searched on this index, which is built
+	 * once for the relation types and cancer genes, and reused as long as they stay the same.
+	 */
+	String cancerGeneIndex;
+
+	/**
+	 * Cache of parsed alteration files. Null if alteration files are always parsed.
+	 */
+	AlterationCache alterationCache;
+
+	/**
+	 * Whether to keep only the alterations of genes that are in the network or are cancer genes. Other altered genes
+	 * can only be isolated nodes in the result.
+	 */
+	boolean alteredGenesInNetworkOnly;
+
+	/**
+	 * Number of threads for the edge search. The search is sequential when this is 1.
+	 */
+	int threads = 1;
+
+	/**
+	 * Number of genes of the first set that a parallel search task scans without further splitting.
+	 */
+	static final int GENES_PER_TASK = 64;
+
+	/**
+	 * Alterations of each gene-alteration-set parameter, paired with the parameter value, in the order of the
+	 * parameters. A repeated parameter has an entry for each line. Null unless the sources are kept for updating the
+	 * alterations of a single source later.
+	 */
+	List<Map.Entry<String, GeneAlterationSet>> alterationSources;
+
+	/**
+	 * Whether to write the metrics of the run as a JSON report next to the output.
+	 */
+	boolean runReport;
+
+	/**
+	 * Timing, allocation and size metrics of the stages of the run.
+	 */
+	RunMetrics metrics;
+
+	/**
+	 * Networks and cancer genes shared with other runs in the same JVM. Null when running for a single directory.
+	 */
+	SharedResources resources;
+
+	/**
+	 * The network that is being loaded while the other resources in the parameters are loaded. Null if the network
+	 * load is not started yet.
+	 */
+	CompletableFuture<IndexedNetwork> networkLoad;
+
+	/**
+	 * Runs the resource loads of the parameters. These are mostly waiting for I/O, hence they do not use the common
+	 * fork-join pool, which the loaders use for parsing.
+	 */
+	static final ExecutorService LOAD_EXECUTOR = Executors.newCachedThreadPool(r ->
+	{
+		Thread thread = new Thread(r, "parameter-loader");
+		thread.setDaemon(true);
+		return thread;
+	});
+
 	/**
 	 * Constructor that sets the working directory and initializes data structures.
 	 *
@@ -70,11 +162,24 @@ public class Main
 	public Main(String directory)
 	{
 		this.directory = directory;
+		metrics = new RunMetrics(directory);
 		sifTypes = new HashMap<>();
 		gas = new GeneAlterationSet();
 		cancerGenes = new HashSet<>();
 	}
 
+	/**
+	 * Constructor for runs that share loaded resources with other runs.
+	 *
+	 * @param directory The directory that contains parameters file and where the output will be generated.
+	 * @param resources resources shared among runs
+	 */
+	public Main(String directory, SharedResources resources)
+	{
+		this(directory);
+		this.resources = resources;
+	}
+
 	/**
 	 * The method that does the job.
 	 *
@@ -82,201 +187,717 @@ public class Main
 	 */
 	public void generateNetwork() throws IOException
 	{
-		// read the parameters file and set the variables
-		readParameters(directory);
+		String sifNoExt;
+		try (RunMetrics.Span total = metrics.start("total"))
+		{
+			// read the parameters file and set the variables
+			try (RunMetrics.Span span = metrics.start("parameters"))
+			{
+				readParameters(directory);
+			}
+
+			// decide the output file name
+			sifNoExt = outputFile == null ? DEFAULT_OUTPUT_FILENAME : outputFile;
+			sifNoExt = directory + File.separator + sifNoExt;
+
+			// initialize file writers for the output
+			try (NetworkOutput writer = jsonOutput ? JsonNetworkWriter.open(sifNoExt, compressOutput) :
+				NetworkWriter.open(sifNoExt, compressOutput))
+			{
+				generateNetwork(writer);
+			}
+		}
+
+		if (runReport) metrics.write(new File(sifNoExt + ".report.json"));
+	}
 
-		// load the SIF network
-		NetworkLoader nl = new NetworkLoader(sifTypes);
-		List<Map<String, Graph>> graphs = nl.load();
+	/**
+	 * Generates the network with the already read parameters, and writes it to the given writers.
+	 *
+	 * @param sifWriter writer for the SIF content
+	 * @param fmtWriter writer for the format content
+	 * @throws IOException
+	 */
+	public void generateNetwork(Writer sifWriter, Writer fmtWriter) throws IOException
+	{
+		generateNetwork(new NetworkWriter(sifWriter, fmtWriter));
+	}
 
+	/**
+	 * Generates the network with the already read parameters, and writes it to the given output. Edges and nodes are
+	 * written in sorted order, hence the output is the same between runs.
+	 *
+	 * @param writer output of the network. It is finished, but not closed.
+	 * @throws IOException
+	 */
+	void generateNetwork(NetworkOutput writer) throws IOException
+	{
 		// get the set of altered genes from the collection of gene alterations
 		Set<String> genes = gas.getGenes();
 
-		//-- DEBUG START
-		// print the intersection of altered genes and the cancer genes
-		genes.stream().filter(cancerGenes::contains).forEach(System.out::println);
-		//-- DEBUG END
+		// load the SIF network, or get the one shared with the other runs
+		IndexedNetwork network = loadNetwork();
 
-		// initialize collections to keep track of graph elements
-		Set<String> genesInGraph = new HashSet<>();
-		Set<String> edges = new HashSet<>();
+		metrics.count("altered-genes", genes.size());
+		metrics.count("cancer-genes", cancerGenes.size());
+		metrics.count("altered-cancer-genes", genes.stream().filter(cancerGenes::contains).count());
+		metrics.count("network-genes", network.getGeneCount());
 
 		// decide which relations should be on the network
-		findEdges(genes, cancerGenes, graphs, genesInGraph, edges);
-
-		// decide the output file name
-		String sifNoExt = outputFile == null ? DEFAULT_OUTPUT_FILENAME : outputFile;
-		sifNoExt = directory + File.separator + sifNoExt;
-
-		// initialize file writers for the output
-		BufferedWriter sifWriter = Files.newBufferedWriter(Paths.get(sifNoExt + ".sif"));
-		BufferedWriter fmtWriter = Files.newBufferedWriter(Paths.get(sifNoExt + ".format"));
+		EdgeBuffer buffer;
+		try (RunMetrics.Span span = metrics.start("search"))
+		{
+			buffer = searchEdges(genes, cancerGenes, network);
+		}
+		metrics.addWork("search", buffer.cpuNanos, buffer.allocatedBytes);
 
-		// start writing the format file
-		fmtWriter.write("node\tall-nodes\tcolor\t255 255 255");
-		fmtWriter.write("\tnode\tall-nodes\tbordercolor\t0 0 0");
+		if (buffer.cacheHits + buffer.cacheMisses > 0)
+		{
+			metrics.count("neighborhood-cache.hits", buffer.cacheHits);
+			metrics.count("neighborhood-cache.misses", buffer.cacheMisses);
+		}
 
-		// write SIF relations in .sif file
-		for (String edge : edges)
+		metrics.count("edges", buffer.edges.size());
+		for (int i = 0; i < network.getTierCount(); i++)
 		{
-			sifWriter.write(edge + "\n");
+			metrics.count("avoided-pairs.tier-" + i, i < buffer.avoided.length ? buffer.avoided[i] : 0);
 		}
 
-		// append gene names to the end of sif file for visualizing the altered genes with no pathway relations
-		genes.stream()./*filter(cancerGenes::containsKey).*/forEach(g ->
+		try (RunMetrics.Span span = metrics.start("write"))
 		{
-			FileUtil.writeln(g, sifWriter);
-			genesInGraph.add(g);
-		});
+			writeNetwork(genes, buffer, writer);
+		}
+	}
+
+	/**
+	 * Writes the found edges and the genes to the given output.
+	 *
+	 * @param genes altered genes
+	 * @param buffer edges and genes found by the search. Its lists are released while writing.
+	 * @param writer output of the network. It is finished, but not closed.
+	 * @throws IOException
+	 */
+	void writeNetwork(Set<String> genes, EdgeBuffer buffer, NetworkOutput writer) throws IOException
+	{
+		// genes are kept sorted for the order of the output
+		Set<String> genesInGraph = new TreeSet<>(buffer.genes);
+		genesInGraph.addAll(genes);
+		buffer.genes = null;
+		metrics.count("nodes", genesInGraph.size());
+
+		// write relations, in sorted order and without the repeated ones
+		writer.writeEdges(buffer.edges);
+		buffer.edges = null;
 
-		// write alteration boxes, colors and tooltips of genes into the format file
+		// write the genes with their alteration boxes, colors and tooltips. Altered genes are written even when they
+		// have no pathway relations.
 		for (String gene : genesInGraph)
 		{
-			if (genes.contains(gene))
-			{
-				// if the altered it is also a cancer gene, it has a thick black border
-				if (cancerGenes.contains(gene))
-				{
-					FileUtil.lnwrite("node\t" + gene + "\tbordercolor\t0 0 0", fmtWriter);
-					FileUtil.lnwrite("node\t" + gene + "\tborderwidth\t2", fmtWriter);
-				}
+			boolean altered = genes.contains(gene);
+			writer.writeNode(gene, altered, cancerGenes.contains(gene),
+				altered ? gas.getGeneFeatures(gene) : Collections.emptySet(),
+				tooltips == null ? null : tooltips.get(gene));
+		}
 
-				// write alterations as info boxes
-				for (GeneFeature geneFeature : gas.getGeneFeatures(gene))
-				{
-					FileUtil.lnwrite("node\t" + gene + "\trppasite\t" + geneFeature, fmtWriter);
-				}
-			}
+		writer.finish();
+	}
 
-			// paint cancer genes in green
-			if (cancerGenes.contains(gene))
-			{
-				Color bgcolor = new Color(200, 255, 180);
+	/**
+	 * Gets the network to search. If its load was started while reading the parameters, waits for it to complete.
+	 *
+	 * @return the indexed network
+	 * @throws IOException
+	 */
+	IndexedNetwork loadNetwork() throws IOException
+	{
+		if (networkLoad == null) return readNetwork();
 
-				FileUtil.lnwrite("node\t" + gene + "\tcolor\t" + bgcolor.getRed() + " " + bgcolor.getGreen() + " " +
-					bgcolor.getBlue(), fmtWriter);
-			}
+		try
+		{
+			return networkLoad.join();
+		}
+		catch (CompletionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw e;
+		}
+	}
 
-			// set tooltips
-			if (tooltips != null && tooltips.containsKey(gene))
-			{
-				FileUtil.lnwrite("node\t" + gene + "\ttooltip\t" + tooltips.get(gene), fmtWriter);
-			}
+	/**
+	 * Loads the network to search, which is the cancer gene index if configured, and the whole network otherwise.
+	 *
+	 * @return the indexed network
+	 * @throws IOException
+	 */
+	IndexedNetwork readNetwork() throws IOException
+	{
+		try (RunMetrics.Span span = metrics.start("network"))
+		{
+			return readNetworkUnmeasured();
+		}
+	}
+
+	private IndexedNetwork readNetworkUnmeasured() throws IOException
+	{
+		if (cancerGeneIndex != null)
+		{
+			return resources != null ?
+				resources.getCancerGeneIndex(sifTypes, networkFile, networkSnapshot, cancerGeneIndex, cancerGenes) :
+				new NetworkLoader(sifTypes, networkFile).loadCancerGeneIndex(cancerGeneIndex, cancerGenes,
+					networkSnapshot);
 		}
 
-		// close output file streams
-		sifWriter.close();
-		fmtWriter.close();
+		return resources != null ? resources.getNetwork(sifTypes, networkFile, networkSnapshot) :
+			new NetworkLoader(sifTypes, networkFile).loadIndexed(networkSnapshot);
 	}
 
 	/**
-	 * Searches for edges that connect the given two sets of genes.
+	 * Searches for edges that connect the given two sets of genes. Relations of all priority tiers are resolved in a
+	 * single pass over the neighborhood of each gene in the first set. Whenever a higher priority relation exists
+	 * between two genes, the pair is avoided for lower priority relations.
 	 *
 	 * @param set1 first set of genes - can be altered genes
 	 * @param set2 second set of genes - can be cancer genes
-	 * @param graphsList the priority-ordered list of sets of graphs
+	 * @param network the priority-ordered network with integer gene IDs
 	 * @param genesInGraph genes in the result graph
 	 * @param edges edges in the result graph
 	 */
-	private void findEdges(Set<String> set1, Set<String> set2, List<Map<String, Graph>> graphsList,
+	void findEdges(Set<String> set1, Set<String> set2, IndexedNetwork network,
 		Set<String> genesInGraph, Set<String> edges)
 	{
-		// whenever a higher priority relation exists between two genes, the pair is avoided for lower priority
-		// relations
-		Set<String> avoid = new HashSet<>();
+		EdgeBuffer buffer = searchEdges(set1, set2, network);
+		edges.addAll(buffer.edges);
+		genesInGraph.addAll(buffer.genes);
+	}
+
+	/**
+	 * Searches for edges that connect the given two sets of genes, as in
+	 * {@link #findEdges(Set, Set, IndexedNetwork, Set, Set)}. Edges and genes are in the order of the gene IDs in the
+	 * first set, and they can be repeated.
+	 *
+	 * @param set1 first set of genes - can be altered genes
+	 * @param set2 second set of genes - can be cancer genes
+	 * @param network the priority-ordered network with integer gene IDs
+	 * @return edges and genes in the result graph
+	 */
+	EdgeBuffer searchEdges(Set<String> set1, Set<String> set2, IndexedNetwork network)
+	{
+		// membership of genes in the sets are kept as bitsets of gene IDs
+		BitSet bits1 = network.toBitSet(set1);
+		BitSet bits2 = network.toBitSet(set2);
+
+		// relations of genes to the second set are shared with the other runs that search the same network
+		NeighborhoodCache cache = resources == null ? null : resources.getNeighborhoodCache();
+		int context = cache == null ? -1 : cache.getContext(network, set2);
 
-		// for each priority set, search relations iteratively
-		for (Map<String, Graph> graphMap : graphsList)
+		SearchTask task = new SearchTask(bits1, bits2, network, threads > 1, 0, bits1.length(), cache, context);
+
+		// genes of the first set are split among tasks, whose results are merged in the order of gene IDs, hence the
+		// result is the same with the sequential search
+		EdgeBuffer buffer;
+		if (threads > 1)
 		{
-			findEdges(set1, set2, graphMap, genesInGraph, edges, avoid);
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try
+			{
+				buffer = pool.invoke(task);
+			}
+			finally
+			{
+				pool.shutdown();
+			}
 		}
+		else buffer = task.compute();
+
+		return buffer;
 	}
 
 	/**
+	 * Searches the relations of each gene to the second set separately, so that the relations of a gene can be
+	 * added or removed later without searching the others. A relation between two genes of the first set is found
+	 * for both genes.
 	 *
-	 * @param set1 first set of genes - can be altered genes
+	 * @param genes genes to search - can be altered genes
 	 * @param set2 second set of genes - can be cancer genes
-	 * @param graphs current set of graph relations to consider
-	 * @param genesInGraph genes in the result graph
-	 * @param edges edges in the result graph
-	 * @param avoid pairs of genes that are already covered with higher priority relations
+	 * @param network the network to search
+	 * @return relations of each gene, empty for a gene that is not in the network
 	 */
-	private void findEdges(Set<String> set1, Set<String> set2, Map<String, Graph> graphs,
-		Set<String> genesInGraph, Set<String> edges, Set<String> avoid)
+	Map<String, List<String>> searchEdgesByGene(Collection<String> genes, Set<String> set2, IndexedNetwork network)
 	{
-		// pairs of genes that covered in this iteration
-		Set<String> newAvoids = new HashSet<>();
+		BitSet bits2 = network.toBitSet(set2);
+		NeighborhoodCache cache = resources == null ? null : resources.getNeighborhoodCache();
+		int context = cache == null ? -1 : cache.getContext(network, set2);
 
-		// iterate over neighbors of first gene set and see if any of them are in the second set
-		for (String gene1 : set1)
+		Map<String, List<String>> edges = new HashMap<>();
+		for (String gene : genes)
 		{
-			for (String type : graphs.keySet())
+			int id = network.getGeneID(gene);
+			if (id < 0)
 			{
-				Graph graph = graphs.get(type);
+				edges.put(gene, Collections.emptyList());
+				continue;
+			}
+
+			BitSet bits1 = new BitSet();
+			bits1.set(id);
+			edges.put(gene, new SearchTask(bits1, bits2, network, false, id, id + 1, cache, context).compute().edges);
+		}
+		return edges;
+	}
+
+	/**
+	 * Edges and genes found by a search task.
+	 */
+	static class EdgeBuffer
+	{
+		List<String> edges = new ArrayList<>();
+		List<String> genes = new ArrayList<>();
+
+		/**
+		 * Number of gene pairs whose relations are avoided in each tier, because of higher priority relations.
+		 */
+		long[] avoided = new long[0];
+
+		/**
+		 * CPU time and allocated bytes of the search on the pool threads.
+		 */
+		long cpuNanos;
+		long allocatedBytes;
+
+		/**
+		 * Genes whose relations are found in, and are added to the neighborhood cache.
+		 */
+		long cacheHits;
+		long cacheMisses;
+
+		/**
+		 * Counts a gene pair whose relations are avoided in the given tier.
+		 */
+		void avoid(int tier)
+		{
+			if (tier >= avoided.length) avoided = Arrays.copyOf(avoided, tier + 1);
+			avoided[tier]++;
+		}
+
+		/**
+		 * Appends the results of the next task.
+		 */
+		void append(EdgeBuffer next)
+		{
+			edges.addAll(next.edges);
+			genes.addAll(next.genes);
+
+			if (next.avoided.length > avoided.length) avoided = Arrays.copyOf(avoided, next.avoided.length);
+			for (int i = 0; i < next.avoided.length; i++) avoided[i] += next.avoided[i];
+
+			cpuNanos += next.cpuNanos;
+			allocatedBytes += next.allocatedBytes;
+			cacheHits += next.cacheHits;
+			cacheMisses += next.cacheMisses;
+		}
+	}
+
+	/**
+	 * Relations of a gene from all priority tiers, merged and sorted by neighbor and then by tier. Each entry is
+	 * tagged with its relation type, which also determines the tier, and with its direction.
+	 */
+	static class Neighborhood
+	{
+		static final int FORWARD = 0;
+		static final int BACKWARD = 1;
+		static final int UNDIRECTED = 2;
 
-				if (graph.isDirected())
+		/**
+		 * Relation types of all tiers, in priority order.
+		 */
+		List<IndexedNetwork.Relations> relations;
+
+		/**
+		 * Tier of each relation type.
+		 */
+		int[] tierOf;
+
+		/**
+		 * Sort keys, which pack neighbor ID, tier (8 bits) and the index of the entry in this neighborhood (24 bits).
+		 */
+		long[] keys = new long[64];
+
+		int[] relationIndex = new int[64];
+		int[] kind = new int[64];
+		int[] entry = new int[64];
+		int size;
+
+		Neighborhood(IndexedNetwork network)
+		{
+			if (network.getTierCount() > 256)
+			{
+				throw new IllegalArgumentException("At most 256 priority tiers are supported.");
+			}
+
+			relations = new ArrayList<>();
+			List<Integer> tiers = new ArrayList<>();
+
+			for (int i = 0; i < network.getTierCount(); i++)
+			{
+				for (IndexedNetwork.Relations rel : network.getTier(i))
+				{
+					relations.add(rel);
+					tiers.add(i);
+				}
+			}
+			tierOf = tiers.stream().mapToInt(Integer::intValue).toArray();
+		}
+
+		/**
+		 * Collects the relations of the gene from all tiers.
+		 */
+		void load(int gene)
+		{
+			size = 0;
+
+			for (int r = 0; r < relations.size(); r++)
+			{
+				IndexedNetwork.Relations rel = relations.get(r);
+				IndexedNetwork.Adjacency fw = rel.getForward();
+
+				for (int k = fw.begin(gene); k < fw.end(gene); k++)
+				{
+					add(fw.target(k), r, rel.isDirected() ? FORWARD : UNDIRECTED, k);
+				}
+
+				if (rel.isDirected())
 				{
-					for (String gene2 : ((DirectedGraph) graph).getDownstream(gene1))
+					IndexedNetwork.Adjacency bw = rel.getBackward();
+
+					for (int k = bw.begin(gene); k < bw.end(gene); k++)
 					{
-						if (set2.contains(gene2))
-						{
-							generateDirectedEdge(gene1, gene2, type, graph, edges, genesInGraph, avoid, newAvoids);
-						}
+						add(bw.target(k), r, BACKWARD, k);
 					}
-					for (String gene2 : ((DirectedGraph) graph).getUpstream(gene1))
+				}
+			}
+
+			Arrays.sort(keys, 0, size);
+		}
+
+		private void add(int target, int r, int direction, int k)
+		{
+			if (size == keys.length)
+			{
+				keys = Arrays.copyOf(keys, size * 2);
+				relationIndex = Arrays.copyOf(relationIndex, size * 2);
+				kind = Arrays.copyOf(kind, size * 2);
+				entry = Arrays.copyOf(entry, size * 2);
+			}
+
+			keys[size] = ((long) target << 32) | ((long) tierOf[r] << 24) | size;
+			relationIndex[size] = r;
+			kind[size] = direction;
+			entry[size] = k;
+			size++;
+		}
+
+		/**
+		 * Neighbor of the i-th entry in sorted order.
+		 */
+		int target(int i)
+		{
+			return (int) (keys[i] >>> 32);
+		}
+
+		/**
+		 * Tier of the i-th entry in sorted order.
+		 */
+		int tier(int i)
+		{
+			return (int) (keys[i] >>> 24) & 0xff;
+		}
+
+		/**
+		 * Position of the i-th entry in sorted order, in the tag arrays.
+		 */
+		int pos(int i)
+		{
+			return (int) (keys[i] & 0xffffff);
+		}
+	}
+
+	/**
+	 * Searches the relations of the genes of the first set in the given ID range. Large ranges are split into halves
+	 * when run in a fork-join pool.
+	 */
+	static class SearchTask extends RecursiveTask<EdgeBuffer>
+	{
+		BitSet bits1;
+		BitSet bits2;
+		IndexedNetwork network;
+		boolean split;
+		int from;
+		int to;
+		NeighborhoodCache cache;
+		int context;
+
+		/**
+		 * @param bits1 IDs of the first set of genes - can be altered genes
+		 * @param bits2 IDs of the second set of genes - can be cancer genes
+		 * @param network the network to search
+		 * @param split whether to split large ranges into subtasks
+		 * @param from the first gene ID in the range, inclusive
+		 * @param to the last gene ID in the range, exclusive
+		 * @param cache the cache of the relations to the second set, or null to resolve them each time
+		 * @param context the context of the network and the second set in the cache
+		 */
+		SearchTask(BitSet bits1, BitSet bits2, IndexedNetwork network, boolean split, int from, int to,
+			NeighborhoodCache cache, int context)
+		{
+			this.bits1 = bits1;
+			this.bits2 = bits2;
+			this.network = network;
+			this.split = split;
+			this.from = from;
+			this.to = to;
+			this.cache = cache;
+			this.context = context;
+		}
+
+		@Override
+		protected EdgeBuffer compute()
+		{
+			if (split && bits1.get(from, to).cardinality() > GENES_PER_TASK)
+			{
+				int mid = (from + to) >>> 1;
+				SearchTask left = new SearchTask(bits1, bits2, network, true, from, mid, cache, context);
+				SearchTask right = new SearchTask(bits1, bits2, network, true, mid, to, cache, context);
+				right.fork();
+				EdgeBuffer buffer = left.compute();
+				buffer.append(right.join());
+				return buffer;
+			}
+
+			// the work on the pool threads is not seen by the metrics of the calling thread
+			boolean pooled = split && ForkJoinTask.inForkJoinPool();
+			long cpu = pooled ? RunMetrics.cpuTime() : 0;
+			long allocated = pooled ? RunMetrics.allocatedBytes() : 0;
+
+			EdgeBuffer buffer = new EdgeBuffer();
+			Neighborhood nb = new Neighborhood(network);
+
+			// iterate over neighbors of first gene set and see if any of them are in the second set
+			for (int id1 = bits1.nextSetBit(from); id1 >= 0 && id1 < to; id1 = bits1.nextSetBit(id1 + 1))
+			{
+				if (cache != null)
+				{
+					addCached(id1, nb, buffer);
+					continue;
+				}
+
+				nb.load(id1);
+
+				int i = 0;
+				while (i < nb.size)
+				{
+					// entries of the same neighbor are consecutive
+					int id2 = nb.target(i);
+					int j = i;
+					while (j < nb.size && nb.target(j) == id2) j++;
+
+					// when both genes are in both sets, the pair is resolved from the gene with the smaller ID
+					if (bits2.get(id2) && !(id2 < id1 && bits1.get(id2) && bits2.get(id1)))
 					{
-						if (set2.contains(gene2))
-						{
-							generateDirectedEdge(gene2, gene1, type, graph, edges, genesInGraph, avoid, newAvoids);
-						}
+						resolvePair(id1, id2, nb, i, j, buffer);
 					}
+					i = j;
+				}
+			}
+
+			if (pooled)
+			{
+				buffer.cpuNanos = RunMetrics.cpuTime() - cpu;
+				buffer.allocatedBytes = RunMetrics.allocatedBytes() - allocated;
+			}
+			return buffer;
+		}
+
+		/**
+		 * Adds the relations of the gene from the cache, resolving them to all genes of the second set on a miss.
+		 * The pairs that are resolved from the other gene are skipped, as in the search without the cache.
+		 */
+		private void addCached(int id1, Neighborhood nb, EdgeBuffer buffer)
+		{
+			boolean[] resolved = new boolean[1];
+			NeighborhoodCache.Neighbors neighbors = cache.get(context, id1, gene ->
+			{
+				resolved[0] = true;
+				return resolveNeighbors(gene, nb);
+			});
+
+			if (resolved[0]) buffer.cacheMisses++;
+			else buffer.cacheHits++;
+
+			String gene1 = network.getGene(id1);
+			for (int n = 0; n < neighbors.targets.length; n++)
+			{
+				int id2 = neighbors.targets[n];
+				if (id2 < id1 && bits1.get(id2) && bits2.get(id1)) continue;
+
+				String gene2 = network.getGene(id2);
+				for (int k = neighbors.offsets[n]; k < neighbors.offsets[n + 1]; k++)
+				{
+					buffer.edges.add(neighbors.edges[k]);
+					buffer.genes.add(neighbors.reversed[k] ? gene2 : gene1);
+					buffer.genes.add(neighbors.reversed[k] ? gene1 : gene2);
 				}
-				else
+				if (neighbors.avoided[n] != null) for (int tier : neighbors.avoided[n]) buffer.avoid(tier);
+			}
+		}
+
+		/**
+		 * Resolves the relations of the gene to all genes of the second set, for the cache.
+		 */
+		private NeighborhoodCache.Neighbors resolveNeighbors(int id1, Neighborhood nb)
+		{
+			List<Integer> targets = new ArrayList<>();
+			List<Integer> offsets = new ArrayList<>();
+			List<String> edges = new ArrayList<>();
+			List<Boolean> reversed = new ArrayList<>();
+			List<int[]> avoided = new ArrayList<>();
+
+			String gene1 = network.getGene(id1);
+			nb.load(id1);
+
+			int i = 0;
+			while (i < nb.size)
+			{
+				int id2 = nb.target(i);
+				int j = i;
+				while (j < nb.size && nb.target(j) == id2) j++;
+
+				if (bits2.get(id2))
 				{
-					for (String gene2 : graph.getNeighbors(gene1))
+					EdgeBuffer pair = new EdgeBuffer();
+					resolvePair(id1, id2, nb, i, j, pair);
+
+					targets.add(id2);
+					offsets.add(edges.size());
+					edges.addAll(pair.edges);
+					for (int k = 0; k < pair.edges.size(); k++)
+					{
+						reversed.add(!pair.genes.get(2 * k).equals(gene1));
+					}
+
+					int[] tiers = null;
+					for (int t = 0; t < pair.avoided.length; t++)
 					{
-						if (set2.contains(gene2))
-						{
-							// generate undirected edge
+						if (pair.avoided[t] == 0) continue;
+						tiers = tiers == null ? new int[]{t} : Arrays.copyOf(tiers, tiers.length + 1);
+						tiers[tiers.length - 1] = t;
+					}
+					avoided.add(tiers);
+				}
+				i = j;
+			}
+			offsets.add(edges.size());
+
+			NeighborhoodCache.Neighbors neighbors = new NeighborhoodCache.Neighbors();
+			neighbors.targets = targets.stream().mapToInt(Integer::intValue).toArray();
+			neighbors.offsets = offsets.stream().mapToInt(Integer::intValue).toArray();
+			neighbors.edges = edges.toArray(new String[0]);
+			neighbors.reversed = new boolean[reversed.size()];
+			for (int k = 0; k < neighbors.reversed.length; k++) neighbors.reversed[k] = reversed.get(k);
+			neighbors.avoided = avoided.toArray(new int[0][]);
+			return neighbors;
+		}
+
+		/**
+		 * Selects the relations between two genes, going over the tiers in priority order. A directed relation is
+		 * avoided if a higher tier has a relation in the same direction or an undirected relation. An undirected
+		 * relation is avoided if a higher tier has any relation between the genes.
+		 */
+		private void resolvePair(int id1, int id2, Neighborhood nb, int from, int to, EdgeBuffer buffer)
+		{
+			// whether the pair is covered from gene1 to gene2, and from gene2 to gene1, by higher tiers
+			boolean covered12 = false;
+			boolean covered21 = false;
+
+			int i = from;
+			while (i < to)
+			{
+				int tier = nb.tier(i);
+				boolean new12 = false;
+				boolean new21 = false;
+				boolean avoided = false;
 
-							String key1 = gene1 + " " + gene2;
-							String key2 = gene2 + " " + gene1;
-							if (!avoid.contains(key1) && !avoid.contains(key2))
+				for (; i < to && nb.tier(i) == tier; i++)
+				{
+					int p = nb.pos(i);
+					IndexedNetwork.Relations rel = nb.relations.get(nb.relationIndex[p]);
+
+					switch (nb.kind[p])
+					{
+						case Neighborhood.FORWARD:
+							if (!covered12)
+							{
+								addDirectedEdge(id1, id2, rel, rel.getForward(), nb.entry[p], buffer);
+								new12 = true;
+							}
+							else avoided = true;
+							break;
+						case Neighborhood.BACKWARD:
+							if (!covered21)
+							{
+								addDirectedEdge(id2, id1, rel, rel.getBackward(), nb.entry[p], buffer);
+								new21 = true;
+							}
+							else avoided = true;
+							break;
+						case Neighborhood.UNDIRECTED:
+							if (!covered12 && !covered21)
 							{
-								String g1 = gene1;
-								String g2 = gene2;
-								if (g2.compareTo(g1) < 0)
-								{
-									String temp = g1;
-									g1 = g2;
-									g2 = temp;
-								}
-
-								edges.add(g1 + "\t" + type + "\t" + g2 + "\t" + graph.getMediatorsInString(g1, g2));
-								genesInGraph.add(gene1);
-								genesInGraph.add(gene2);
-
-								newAvoids.add(key1);
-								newAvoids.add(key2);
+								addUndirectedEdge(id1, id2, rel, nb.entry[p], buffer);
+								new12 = true;
+								new21 = true;
 							}
-						}
+							else avoided = true;
+							break;
 					}
 				}
+
+				if (avoided) buffer.avoid(tier);
+				covered12 |= new12;
+				covered21 |= new21;
 			}
 		}
-		avoid.addAll(newAvoids);
-	}
 
-	private void generateDirectedEdge(String gene1, String gene2, String type, Graph graph,
-		Set<String> edges, Set<String> genesInGraph, Set<String> avoid, Set<String> newAvoids)
-	{
-		String key = gene1 + " " + gene2;
-		if (!avoid.contains(key))
+		private void addDirectedEdge(int source, int target, IndexedNetwork.Relations rel,
+			IndexedNetwork.Adjacency adj, int entry, EdgeBuffer buffer)
 		{
-			edges.add(gene1 + "\t" + type + "\t" + gene2 + "\t" + graph.getMediatorsInString(gene1, gene2));
-			genesInGraph.add(gene1);
-			genesInGraph.add(gene2);
-			newAvoids.add(key);
+			String gene1 = network.getGene(source);
+			String gene2 = network.getGene(target);
+			buffer.edges.add(gene1 + "\t" + rel.getType() + "\t" + gene2 + "\t" +
+				network.getMediators(rel, adj, entry, gene1, gene2));
+			buffer.genes.add(gene1);
+			buffer.genes.add(gene2);
+		}
+
+		private void addUndirectedEdge(int id1, int id2, IndexedNetwork.Relations rel, int entry, EdgeBuffer buffer)
+		{
+			String gene1 = network.getGene(id1);
+			String gene2 = network.getGene(id2);
+			String g1 = gene1;
+			String g2 = gene2;
+			if (g2.compareTo(g1) < 0)
+			{
+				String temp = g1;
+				g1 = g2;
+				g2 = temp;
+			}
+
+			buffer.edges.add(g1 + "\t" + rel.getType() + "\t" + g2 + "\t" +
+				network.getMediators(rel, rel.getForward(), entry, g1, g2));
+			buffer.genes.add(gene1);
+			buffer.genes.add(gene2);
 		}
 	}
 
@@ -287,30 +908,222 @@ public class Main
 	 */
 	void readParameters(String dir) throws IOException
 	{
-		Files.lines(Paths.get(dir + File.separator + PARAMETERS_FILENAME)).
-			filter(l -> !l.startsWith("#")).map(l -> l.split("=")).
-			forEach(t ->
+		try (Stream<String> lines = Files.lines(Paths.get(dir + File.separator + PARAMETERS_FILENAME)))
+		{
+			readParameters(lines);
+		}
+	}
+
+	/**
+	 * Configures parameters from lines in the format of the parameters file. The lines are first parsed into a plan.
+	 * Settings are applied in the order of lines, then the resources (alterations, cancer genes, tooltips) are loaded
+	 * concurrently, and the network load is started alongside them. Loaded resources are applied in the order of
+	 * lines, so the result is the same with loading them one by one. The network load is waited for when the network
+	 * is needed, except that alteration files are loaded after the network when they are filtered by its genes.
+	 * @param lines lines of parameters
+	 * @throws ParameterException if a line is malformed or its resource cannot be loaded
+	 */
+	void readParameters(Stream<String> lines)
+	{
+		List<ParameterLine> plan = new ArrayList<>();
+		int number = 0;
+
+		for (String line : (Iterable<String>) lines::iterator)
+		{
+			number++;
+			if (line.startsWith("#") || line.trim().isEmpty()) continue;
+
+			String[] t = line.split("=");
+
+			// the token before "=" has to be one of the values in the Parameters enum
+			Parameter param = Parameter.findEnum(t[0].trim());
+
+			if (param == null)
 			{
-				// the token before "=" has to be one of the values in the Parameters enum
-				Parameter param = Parameter.findEnum(t[0].trim());
+				System.err.println("Unknown parameter = " + t[0].trim());
+			}
+			else if (t.length < 2)
+			{
+				throw new ParameterException(number, line, "No value given.", null);
+			}
+			else plan.add(new ParameterLine(number, line, param, t[1].trim()));
+		}
+
+		// settings do not load anything, and they are needed to start the network load
+		for (ParameterLine line : plan)
+		{
+			if (line.param.reader != null) line.read(this);
+		}
+
+		// alteration files are filtered by the network genes, hence they wait for the network when filtered
+		boolean filterByNetwork = alteredGenesInNetworkOnly && !sifTypes.isEmpty();
+		Predicate<ParameterLine> waitsNetwork = line ->
+			filterByNetwork && line.param == Parameter.GENE_ALTERATION_SET;
+
+		for (ParameterLine line : plan)
+		{
+			if (line.param.loader != null && !waitsNetwork.test(line)) line.startLoad(this);
+		}
 
-				if (param != null)
+		// the cancer gene index is selected by the cancer genes, and the gene filter contains them
+		if (cancerGeneIndex != null || filterByNetwork)
+		{
+			plan.stream().filter(line -> line.param == Parameter.CANCER_GENE_RESOURCE)
+				.forEach(line -> line.finishLoad(this));
+		}
+
+		if (!sifTypes.isEmpty())
+		{
+			networkLoad = CompletableFuture.supplyAsync(() ->
+			{
+				try
 				{
-					try
-					{
-						// the specific Parameter enum knows how to configure the Main class using the parameter value
-						param.reader.read(t[1].trim(), this);
-					}
-					catch (IOException e)
-					{
-						throw new RuntimeException(e);
-					}
+					return readNetwork();
 				}
-				else
+				catch (IOException e)
 				{
-					System.err.println("Unknown parameter = " + t[0].trim());
+					throw new UncheckedIOException(e);
 				}
-			});
+			}, LOAD_EXECUTOR);
+		}
+
+		if (filterByNetwork)
+		{
+			Predicate<String> filter;
+			try
+			{
+				IndexedNetwork network = loadNetwork();
+				filter = gene -> cancerGenes.contains(gene) || network.getGeneID(gene) >= 0;
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+
+			for (ParameterLine line : plan)
+			{
+				if (waitsNetwork.test(line))
+				{
+					line.geneFilter = filter;
+					line.startLoad(this);
+				}
+			}
+		}
+
+		for (ParameterLine line : plan)
+		{
+			if (line.param.loader != null) line.finishLoad(this);
+		}
+	}
+
+	/**
+	 * A line of the parameters file, and the load of its resource.
+	 */
+	static class ParameterLine
+	{
+		int number;
+		String text;
+		Parameter param;
+		String value;
+
+		/**
+		 * The running load of the resource.
+		 */
+		CompletableFuture<ParameterApplier> load;
+
+		/**
+		 * Whether the loaded resource is applied.
+		 */
+		boolean applied;
+
+		/**
+		 * Genes to keep while loading alterations. Null if all are kept.
+		 */
+		Predicate<String> geneFilter;
+
+		ParameterLine(int number, String text, Parameter param, String value)
+		{
+			this.number = number;
+			this.text = text;
+			this.param = param;
+			this.value = value;
+		}
+
+		/**
+		 * Applies a setting.
+		 */
+		void read(Main main)
+		{
+			try
+			{
+				// the specific Parameter enum knows how to configure the Main class using the parameter value
+				param.reader.read(value, main);
+			}
+			catch (IOException | RuntimeException e)
+			{
+				throw new ParameterException(number, text, e.toString(), e);
+			}
+		}
+
+		/**
+		 * Starts loading the resource in the background.
+		 */
+		void startLoad(Main main)
+		{
+			load = CompletableFuture.supplyAsync(() ->
+			{
+				try (RunMetrics.Span span = main.metrics.start(param.getText()))
+				{
+					return param.loader.load(value, main, geneFilter);
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}, LOAD_EXECUTOR);
+		}
+
+		/**
+		 * Waits for the resource and applies it, unless already applied.
+		 */
+		void finishLoad(Main main)
+		{
+			if (applied) return;
+
+			try
+			{
+				load.join().apply(main);
+				applied = true;
+			}
+			catch (CompletionException e)
+			{
+				Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() :
+					e.getCause();
+				throw new ParameterException(number, text, cause.toString(), cause);
+			}
+		}
+	}
+
+	/**
+	 * Error in a line of the parameters file.
+	 */
+	public static class ParameterException extends RuntimeException
+	{
+		/**
+		 * Line number in the parameters file, starting from 1.
+		 */
+		int lineNumber;
+
+		ParameterException(int lineNumber, String line, String message, Throwable cause)
+		{
+			super("Line " + lineNumber + " of parameters (" + line.trim() + "): " + message, cause);
+			this.lineNumber = lineNumber;
+		}
+
+		public int getLineNumber()
+		{
+			return lineNumber;
+		}
 	}
 
 	enum Parameter
@@ -325,10 +1138,82 @@ public class Main
 			}
 		}),
 
-		CANCER_GENE_RESOURCE((value, main) ->
-			main.cancerGenes.addAll(CancerGeneResource.getCancerGenes(value, main.directory))),
+		CANCER_GENE_RESOURCE((value, main, geneFilter) ->
+		{
+			Set<String> genes;
+			if (main.resources != null) genes = main.resources.getCancerGenes(value, main.directory);
+			else
+			{
+				// resources are lazily initialized singletons
+				synchronized (CancerGeneResource.class)
+				{
+					genes = CancerGeneResource.getCancerGenes(value, main.directory);
+				}
+			}
+			return m -> m.cancerGenes.addAll(genes);
+		}),
+
+		GENE_ALTERATION_SET((value, main, geneFilter) ->
+		{
+			GeneAlterationSet gas = new GeneAlterationSet();
+			gas.setGeneFilter(geneFilter);
+			AlterationReader.loadAlterations(value, gas, main.directory, main.alterationCache);
+			return m ->
+			{
+				m.gas.addAll(gas);
+				if (m.alterationSources != null) m.alterationSources.add(new AbstractMap.SimpleEntry<>(value, gas));
+			};
+		}),
 
-		GENE_ALTERATION_SET((value, main) -> AlterationReader.loadAlterations(value, main.gas, main.directory)),
+		NETWORK_FILE((value, main) ->
+		{
+			main.networkFile = value.startsWith("/") ? value : main.directory + File.separator + value;
+		}),
+
+		NETWORK_SNAPSHOT((value, main) ->
+		{
+			main.networkSnapshot = value.startsWith("/") ? value : main.directory + File.separator + value;
+		}),
+
+		CANCER_GENE_INDEX((value, main) ->
+		{
+			main.cancerGeneIndex = value.startsWith("/") ? value : main.directory + File.separator + value;
+		}),
+
+		ALTERED_GENES_IN_NETWORK_ONLY((value, main) ->
+		{
+			main.alteredGenesInNetworkOnly = Boolean.valueOf(value);
+		}),
+
+		ALTERATION_CACHE((value, main) ->
+		{
+			main.alterationCache = new AlterationCache(value.startsWith("/") ? value :
+				main.directory + File.separator + value);
+		}),
+
+		THREADS((value, main) ->
+		{
+			main.threads = value.equals("all") ? Runtime.getRuntime().availableProcessors() : Integer.valueOf(value);
+		}),
+
+		RUN_REPORT((value, main) ->
+		{
+			main.runReport = Boolean.valueOf(value);
+		}),
+
+		COMPRESS_OUTPUT((value, main) ->
+		{
+			main.compressOutput = Boolean.valueOf(value);
+		}),
+
+		OUTPUT_FORMAT((value, main) ->
+		{
+			if (!value.equals("sif") && !value.equals("json"))
+			{
+				throw new IllegalArgumentException("Output format should be sif or json: " + value);
+			}
+			main.jsonOutput = value.equals("json");
+		}),
 
 		OUTPUT_FILE((value, main) ->
 		{
@@ -336,17 +1221,36 @@ public class Main
 			main.outputFile = value;
 		}),
 
-		TOOLTIPS((value, main) -> main.tooltips = Files.lines(Paths.get(main.directory + File.separator + value))
-			.map(l -> l.split("\t")).collect(Collectors.toMap(t -> t[0], t -> t[1])))
-		;
+		TOOLTIPS((value, main, geneFilter) ->
+		{
+			Map<String, String> tooltips;
+			try (Stream<String> lines = CompressedInput.lines(main.directory + File.separator + value))
+			{
+				tooltips = lines.map(l -> l.split("\t")).collect(Collectors.toMap(t -> t[0], t -> t[1]));
+			}
+			return m -> m.tooltips = tooltips;
+		});
 
+		/**
+		 * Reader of a setting, which is applied while reading the parameters.
+		 */
 		ParameterReader reader;
 
+		/**
+		 * Loader of a resource, which is loaded concurrently with the other resources.
+		 */
+		ParameterLoader loader;
+
 		Parameter(ParameterReader reader)
 		{
 			this.reader = reader;
 		}
 
+		Parameter(ParameterLoader loader)
+		{
+			this.loader = loader;
+		}
+
 		String getText()
 		{
 			return toString().toLowerCase().replaceAll("_", "-");
@@ -367,8 +1271,50 @@ public class Main
 		void read(String value, Main main) throws IOException;
 	}
 
+	/**
+	 * Loads the resource of a parameter without modifying the Main class, and tells how to apply it.
+	 */
+	interface ParameterLoader
+	{
+		ParameterApplier load(String value, Main main, Predicate<String> geneFilter) throws IOException;
+	}
+
+	/**
+	 * Applies a loaded resource to the Main class.
+	 */
+	interface ParameterApplier
+	{
+		void apply(Main main);
+	}
+
 	public static void main(String[] args) throws IOException
 	{
+		if (args[0].equals(BatchRunner.BATCH_FLAG))
+		{
+			BatchRunner.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args[0].equals(NetworkServer.SERVER_FLAG))
+		{
+			NetworkServer.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args[0].equals(SyntheticCohort.GENERATE_FLAG))
+		{
+			SyntheticCohort.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args[0].equals(WatchMode.WATCH_FLAG))
+		{
+			WatchMode.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args[0].equals(LoadTest.LOAD_TEST_FLAG))
+		{
+			LoadTest.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
 		Main main = new Main(args[0]);
 		main.generateNetwork();
 	}
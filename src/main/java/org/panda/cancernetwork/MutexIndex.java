@@ -0,0 +1,404 @@
+package org.panda.cancernetwork;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * A persistent index of the best scores of genes and gene pairs in a tree of Mutex results. Scores are kept for each
+ * result directory, stamped with the modification times of the directory and its result file, and the size of the
+ * result file. When the index is loaded, the tree is walked, and only the result directories with a different stamp
+ * are read again. The index file is rewritten when anything changes.
+ * <p>
+ * File layout, where all integers are big-endian:
+ * <pre>
+ * magic, version, root path
+ * gene count, genes
+ * directory count, and for each directory:
+ *     relative path, directory modification time, result file modification time, result file size
+ *     gene score count, and for each: gene ID, best score (double)
+ *     pair score count, and for each: gene ID 1, gene ID 2, best score (double)
+ * </pre>
+ * Strings are written as their UTF-8 byte count followed by the bytes.
+ *
+ * @author Ozgun Babur
+ */
+public class MutexIndex
+{
+	/**
+	 * First four bytes of an index file.
+	 */
+	static final int MAGIC = 0x434E4D58;
+
+	/**
+	 * Version of the file layout. Index files of a different version are rebuilt.
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * Root directory of the results.
+	 */
+	String root;
+
+	/**
+	 * Scores of result directories, mapped by their paths relative to the root.
+	 */
+	Map<String, Entry> entries;
+
+	/**
+	 * Number of result directories that were read in the last update, instead of taken from the index file.
+	 */
+	int readCount;
+
+	/**
+	 * Best gene scores over all directories, computed at the first request.
+	 */
+	Map<String, Double> geneScores;
+
+	private MutexIndex(String root)
+	{
+		this.root = root;
+		this.entries = new HashMap<>();
+	}
+
+	/**
+	 * Loads the index of the results under the root directory, and brings it up to date.
+	 * @param root the root directory of the Mutex results
+	 * @param indexFile the index file, which is created if it does not exist
+	 * @return the up-to-date index
+	 * @throws IOException
+	 */
+	public static MutexIndex load(String root, String indexFile) throws IOException
+	{
+		root = new File(root).getCanonicalPath();
+		File file = new File(indexFile);
+
+		MutexIndex old = file.exists() ? read(file, root) : null;
+		Map<String, Entry> oldEntries = old == null ? Collections.emptyMap() : old.entries;
+
+		MutexIndex index = new MutexIndex(root);
+		int prefix = root.length();
+
+		List<Entry> entries = MutexReader.walk(root, f -> true, (dir, resultFile, items) ->
+		{
+			String relative = dir.length() > prefix ? dir.substring(prefix + 1) : "";
+			Entry entry = new Entry(relative, new File(dir), new File(resultFile));
+
+			Entry cached = oldEntries.get(relative);
+			if (cached != null && cached.hasSameStamp(entry)) items.add(cached);
+			else
+			{
+				entry.read(dir, resultFile);
+				items.add(entry);
+			}
+		});
+
+		for (Entry entry : entries)
+		{
+			index.entries.put(entry.dir, entry);
+
+			// entries taken from the old index are the same objects
+			if (oldEntries.get(entry.dir) != entry) index.readCount++;
+		}
+
+		if (index.readCount > 0 || !oldEntries.keySet().equals(index.entries.keySet()))
+		{
+			index.write(file);
+		}
+		return index;
+	}
+
+	/**
+	 * Gets the best score of each gene over all result directories.
+	 * @return best scores of genes
+	 */
+	public synchronized Map<String, Double> getGeneBestScores()
+	{
+		if (geneScores == null)
+		{
+			geneScores = new HashMap<>();
+			for (Entry entry : entries.values())
+			{
+				entry.genes.forEach((gene, score) -> geneScores.merge(gene, score, Math::min));
+			}
+		}
+		return geneScores;
+	}
+
+	/**
+	 * Gets the genes whose best score is at most the threshold.
+	 * @param threshold the score threshold, inclusive
+	 * @return genes that pass the threshold
+	 */
+	public Set<String> getGenes(double threshold)
+	{
+		Map<String, Double> scores = getGeneBestScores();
+		return scores.keySet().stream().filter(g -> scores.get(g) <= threshold).collect(Collectors.toSet());
+	}
+
+	/**
+	 * Gets the best score of each gene pair over all result directories. Keys are in the form of
+	 * {@link MutexReader#convertGroupsToPairBestScores(Set)}.
+	 * @return best scores of gene pairs
+	 */
+	public Map<String, Double> getPairBestScores()
+	{
+		Map<String, Double> scores = new HashMap<>();
+		getPairScores().forEach((id1, id2, score) ->
+			scores.put(new PairScoreMap.Pair(id1, id2, score).toGeneKey(GeneDictionary.SHARED), score));
+		return scores;
+	}
+
+	/**
+	 * Gets the best score of each gene pair over all result directories, keyed by the IDs of the genes in
+	 * {@link GeneDictionary#SHARED}.
+	 * @return best scores of gene pairs
+	 */
+	public PairScoreMap getPairScores()
+	{
+		PairScoreMap scores = new PairScoreMap();
+		for (Entry entry : entries.values())
+		{
+			scores.putAllMin(entry.pairs);
+		}
+		return scores;
+	}
+
+	/**
+	 * Gets the k gene pairs with the best scores over all result directories, ordered from the best.
+	 * @param k number of pairs
+	 * @return best pairs
+	 */
+	public List<PairScoreMap.Pair> getTopPairs(int k)
+	{
+		return getPairScores().top(k);
+	}
+
+	/**
+	 * Number of result directories that were read when the index was loaded.
+	 * @return number of changed or new result directories
+	 */
+	public int getReadCount()
+	{
+		return readCount;
+	}
+
+	/**
+	 * Reads the index file.
+	 * @return the index, or null if the file is for another root or it cannot be read
+	 */
+	private static MutexIndex read(File file, String root)
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+			if (!readString(in).equals(root)) return null;
+
+			String[] genes = new String[in.readInt()];
+			int[] ids = new int[genes.length];
+			for (int i = 0; i < genes.length; i++)
+			{
+				genes[i] = readString(in);
+				ids[i] = GeneDictionary.SHARED.getID(genes[i]);
+			}
+
+			MutexIndex index = new MutexIndex(root);
+			int dirCount = in.readInt();
+			for (int i = 0; i < dirCount; i++)
+			{
+				Entry entry = new Entry(readString(in), in.readLong(), in.readLong(), in.readLong());
+
+				int geneCount = in.readInt();
+				entry.genes = new HashMap<>(geneCount * 2);
+				for (int j = 0; j < geneCount; j++)
+				{
+					entry.genes.put(genes[in.readInt()], in.readDouble());
+				}
+
+				int pairCount = in.readInt();
+				entry.pairs = new PairScoreMap(pairCount);
+				for (int j = 0; j < pairCount; j++)
+				{
+					entry.pairs.putMin(ids[in.readInt()], ids[in.readInt()], in.readDouble());
+				}
+
+				index.entries.put(entry.dir, entry);
+			}
+			return index;
+		}
+		catch (IOException | ArrayIndexOutOfBoundsException e)
+		{
+			System.err.println("Cannot read Mutex index " + file + ": " + e + ", rebuilding.");
+			return null;
+		}
+	}
+
+	private void write(File file) throws IOException
+	{
+		Map<String, Integer> ids = new LinkedHashMap<>();
+		for (Entry entry : entries.values())
+		{
+			entry.genes.keySet().forEach(g -> ids.putIfAbsent(g, ids.size()));
+		}
+
+		// file IDs of genes, indexed by their IDs in the dictionary
+		int[] fileIDs = new int[GeneDictionary.SHARED.size()];
+		ids.forEach((gene, id) -> fileIDs[GeneDictionary.SHARED.getID(gene)] = id);
+
+		File parent = file.getAbsoluteFile().getParentFile();
+		Files.createDirectories(parent.toPath());
+
+		// other runs may be updating the same index, so each writes its own temporary file
+		File temp = File.createTempFile(file.getName(), ".tmp", parent);
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writeString(root, out);
+
+			out.writeInt(ids.size());
+			for (String gene : ids.keySet())
+			{
+				writeString(gene, out);
+			}
+
+			out.writeInt(entries.size());
+			for (Entry entry : entries.values())
+			{
+				writeString(entry.dir, out);
+				out.writeLong(entry.dirModified);
+				out.writeLong(entry.fileModified);
+				out.writeLong(entry.fileSize);
+
+				out.writeInt(entry.genes.size());
+				for (String gene : entry.genes.keySet())
+				{
+					out.writeInt(ids.get(gene));
+					out.writeDouble(entry.genes.get(gene));
+				}
+
+				out.writeInt(entry.pairs.size());
+				PairWriter writer = new PairWriter(out, fileIDs);
+				entry.pairs.forEach(writer);
+				if (writer.error != null) throw writer.error;
+			}
+		}
+		catch (IOException e)
+		{
+			temp.delete();
+			throw e;
+		}
+
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Writes pairs with the file IDs of their genes, keeping the first error since the consumer cannot throw.
+	 */
+	private static class PairWriter implements PairScoreMap.PairConsumer
+	{
+		DataOutputStream out;
+		int[] fileIDs;
+		IOException error;
+
+		PairWriter(DataOutputStream out, int[] fileIDs)
+		{
+			this.out = out;
+			this.fileIDs = fileIDs;
+		}
+
+		@Override
+		public void accept(int id1, int id2, double score)
+		{
+			if (error != null) return;
+			try
+			{
+				out.writeInt(fileIDs[id1]);
+				out.writeInt(fileIDs[id2]);
+				out.writeDouble(score);
+			}
+			catch (IOException e)
+			{
+				error = e;
+			}
+		}
+	}
+
+	private static void writeString(String s, DataOutputStream out) throws IOException
+	{
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException
+	{
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Best scores in a result directory, and the stamp of the directory.
+	 */
+	static class Entry
+	{
+		/**
+		 * Path relative to the root.
+		 */
+		String dir;
+
+		long dirModified;
+		long fileModified;
+		long fileSize;
+
+		Map<String, Double> genes;
+
+		/**
+		 * Best scores of pairs, keyed by the IDs of the genes in {@link GeneDictionary#SHARED}.
+		 */
+		PairScoreMap pairs;
+
+		Entry(String dir, long dirModified, long fileModified, long fileSize)
+		{
+			this.dir = dir;
+			this.dirModified = dirModified;
+			this.fileModified = fileModified;
+			this.fileSize = fileSize;
+		}
+
+		/**
+		 * Takes the stamp from the result directory and its file.
+		 */
+		Entry(String dir, File resultDir, File resultFile)
+		{
+			this(dir, resultDir.lastModified(), resultFile.lastModified(), resultFile.length());
+		}
+
+		boolean hasSameStamp(Entry other)
+		{
+			return dirModified == other.dirModified && fileModified == other.fileModified &&
+				fileSize == other.fileSize;
+		}
+
+		/**
+		 * Reads the best scores from the result file. The index serves any threshold, so the whole file is read, but
+		 * each group is merged into the best scores as it is read instead of being kept.
+		 */
+		void read(String resultDir, String resultFile)
+		{
+			Map<Integer, Double> best = new HashMap<>();
+			pairs = new PairScoreMap();
+			MutexReader.forEachGroup(resultFile, resultDir, group ->
+			{
+				MutexReader.addGeneScores(group, best);
+				MutexReader.addPairScores(group, pairs);
+			}, Double.POSITIVE_INFINITY);
+			genes = MutexReader.toGeneScores(best);
+		}
+	}
+}
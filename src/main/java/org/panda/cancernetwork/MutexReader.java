@@ -2,11 +2,14 @@ package org.panda.cancernetwork;
 
 import org.panda.utility.CollectionUtil;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 /**
@@ -16,25 +19,45 @@ import java.util.stream.Stream;
  */
 public class MutexReader
 {
+	/**
+	 * Suffix of the compressed result files, which are used when the uncompressed ones do not exist.
+	 */
+	public static final String COMPRESSED_SUFFIX = ".gz";
+
 	public static Set<Group> readMutexResults(String dir)
 	{
-		String file = dir + "/ranked-groups.txt";
+		String file = findResultFile(dir, "ranked-groups.txt");
 		return readResults(dir, file);
 	}
 
 	public static Set<Group> readCoocResults(String dir)
 	{
-		String file = dir + "/cooc-groups.txt";
+		String file = findResultFile(dir, "cooc-groups.txt");
 		return readResults(dir, file);
 	}
 
-	private static Set<Group> readResults(String dir, String file)
+	/**
+	 * Finds the result file in the directory, which can be gzip or BGZF compressed with the ".gz" suffix.
+	 * @param dir the result directory
+	 * @param name name of the uncompressed result file
+	 * @return path to the result file, or to the uncompressed one if none exists
+	 */
+	public static String findResultFile(String dir, String name)
 	{
-		boolean hasQval = hasQVal(file);
+		String file = dir + "/" + name;
+		if (!new File(file).exists() && new File(file + COMPRESSED_SUFFIX).exists()) return file + COMPRESSED_SUFFIX;
+		return file;
+	}
 
-		Set<Group> groups = new HashSet<>();
-		readGroups(file, groups, hasQval, dir);
+	private static boolean hasMutexResults(String dir)
+	{
+		return new File(findResultFile(dir, "ranked-groups.txt")).exists();
+	}
 
+	private static Set<Group> readResults(String dir, String file)
+	{
+		Set<Group> groups = new HashSet<>();
+		readGroups(file, dir, groups);
 		return groups;
 	}
 
@@ -48,45 +71,133 @@ public class MutexReader
 		return convertGroupsToGeneBestScores(readMutexResultsRecursive(dir, new HashSet<>()));
 	}
 
+	/**
+	 * Reads the best scores of the genes that are in a group with a score at most the threshold. Result files are
+	 * ranked by score, so each file is read only up to the first group over the threshold.
+	 * @param dir the root directory of the results
+	 * @param threshold the score threshold, inclusive
+	 * @return best scores of the genes that pass the threshold
+	 */
+	public static Map<String, Double> readBestScoresRecursive(String dir, double threshold)
+	{
+		return convertGroupsToGeneBestScores(readMutexResultsRecursive(dir, new HashSet<>(), f -> true, threshold));
+	}
+
 	public static Map<String, Double> convertGroupsToGeneBestScores(Set<Group> groups)
 	{
-		Map<String, Double> scores = new HashMap<>();
+		// scores are collected by gene ID, and genes are looked up once at the end
+		Map<Integer, Double> best = new HashMap<>();
 		for (Group group : groups)
 		{
-			for (String gene : group.genes)
-			{
-				if (!scores.containsKey(gene) || scores.get(gene) > group.score) scores.put(gene, group.score);
-			}
+			addGeneScores(group, best);
 		}
+		return toGeneScores(best);
+	}
+
+	/**
+	 * Merges the score of the group into the best scores of its genes.
+	 * @param group the group
+	 * @param best best scores, keyed by the IDs of the genes in {@link GeneDictionary#SHARED}
+	 */
+	static void addGeneScores(Group group, Map<Integer, Double> best)
+	{
+		for (int id : group.ids)
+		{
+			best.merge(id, group.score, Math::min);
+		}
+	}
+
+	/**
+	 * Converts the best scores keyed by gene IDs into the best scores keyed by genes.
+	 */
+	static Map<String, Double> toGeneScores(Map<Integer, Double> best)
+	{
+		Map<String, Double> scores = new HashMap<>(best.size() * 2);
+		best.forEach((id, score) -> scores.put(GeneDictionary.SHARED.getGene(id), score));
 		return scores;
 	}
 
 	/**
 	 * Pairs are keys of the result map, where key is "g1 g2" and g1.compareTo(g2) < 0.
+	 * @see #getPairBestScores(Collection)
 	 */
 	public static Map<String, Double> convertGroupsToPairBestScores(Set<Group> groups)
 	{
 		Map<String, Double> scores = new HashMap<>();
+		getPairBestScores(groups).forEach((id1, id2, score) ->
+			scores.put(new PairScoreMap.Pair(id1, id2, score).toGeneKey(GeneDictionary.SHARED), score));
+		return scores;
+	}
+
+	/**
+	 * Gets the best score of each gene pair in the groups, keyed by the IDs of the genes.
+	 * @param groups the groups
+	 * @return best scores of the pairs
+	 */
+	public static PairScoreMap getPairBestScores(Collection<Group> groups)
+	{
+		PairScoreMap scores = new PairScoreMap();
 		for (Group group : groups)
 		{
-			for (String g1 : group.genes)
+			addPairScores(group, scores);
+		}
+		return scores;
+	}
+
+	/**
+	 * Merges the score of the group into the best scores of its gene pairs.
+	 * @param group the group
+	 * @param scores best scores of the pairs
+	 */
+	static void addPairScores(Group group, PairScoreMap scores)
+	{
+		int[] ids = group.ids;
+		for (int i = 0; i < ids.length; i++)
+		{
+			for (int j = i + 1; j < ids.length; j++)
 			{
-				for (String g2 : group.genes)
+				scores.putMin(LongSet.pairKey(ids[i], ids[j]), group.score);
+			}
+		}
+	}
+
+	/**
+	 * Gets the k gene pairs with the best scores in the groups, ordered from the best. Groups are visited in the order
+	 * of their scores, so the first time a pair is seen is its best score, and the visit stops after k distinct pairs.
+	 * Only the selected pairs are kept, instead of the scores of all pairs.
+	 * @param groups the groups
+	 * @param k number of pairs
+	 * @return best pairs
+	 */
+	public static List<PairScoreMap.Pair> getTopPairs(Collection<Group> groups, int k)
+	{
+		List<Group> sorted = new ArrayList<>(groups);
+		sorted.sort(Comparator.comparing(Group::getScore));
+
+		List<PairScoreMap.Pair> pairs = new ArrayList<>();
+		LongSet seen = new LongSet();
+
+		for (Group group : sorted)
+		{
+			int[] ids = group.ids;
+			for (int i = 0; i < ids.length && pairs.size() < k; i++)
+			{
+				for (int j = i + 1; j < ids.length && pairs.size() < k; j++)
 				{
-					if (g1.compareTo(g2) < 0)
+					if (seen.add(LongSet.pairKey(ids[i], ids[j])))
 					{
-						String key = g1 + " " + g2;
-						if (!scores.containsKey(key) || scores.get(key) > group.score) scores.put(key, group.score);
+						pairs.add(new PairScoreMap.Pair(ids[i], ids[j], group.score));
 					}
 				}
 			}
+			if (pairs.size() >= k) break;
 		}
-		return scores;
+		return pairs;
 	}
 
 	public static boolean hasQVal(String path)
 	{
-		try(Stream<String> stream = Files.lines(Paths.get(path)))
+		try(Stream<String> stream = CompressedInput.lines(path))
 		{
 			return stream.limit(1).anyMatch(line -> line.split("\t").length >= 3);
 		}
@@ -98,7 +209,7 @@ public class MutexReader
 
 	public static void readGroups(String path, Set<Group> groups, boolean hasQval, String dir)
 	{
-		try(Stream<String> stream = Files.lines(Paths.get(path)))
+		try(Stream<String> stream = CompressedInput.lines(path))
 		{
 			stream.skip(1).filter(l -> !l.isEmpty()).map(line -> line.split("\t")).forEach(token ->
 				groups.add(new Group(Arrays.asList(token).subList(hasQval ? 2 : 1, token.length),
@@ -110,43 +221,263 @@ public class MutexReader
 		}
 	}
 
+	/**
+	 * Reads the groups in the result file, detecting from its header whether it has a q-value column. The file is
+	 * opened once.
+	 * @param path the result file
+	 * @param dir the result directory that the groups are from
+	 * @param groups collection to add the groups
+	 */
+	public static void readGroups(String path, String dir, Collection<Group> groups)
+	{
+		readGroups(path, dir, groups, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Reads the groups in the result file with a score at most the threshold. The file is ranked by score, so reading
+	 * stops at the first group over the threshold, and only the score of that line is parsed.
+	 * @param path the result file
+	 * @param dir the result directory that the groups are from
+	 * @param groups collection to add the groups
+	 * @param threshold the score threshold, inclusive
+	 */
+	public static void readGroups(String path, String dir, Collection<Group> groups, double threshold)
+	{
+		forEachGroup(path, dir, groups::add, threshold);
+	}
+
+	/**
+	 * Reads the groups in the result file with a score at most the threshold, passing each to the consumer as it is
+	 * read, so that the groups do not have to be kept.
+	 * @param path the result file
+	 * @param dir the result directory that the groups are from
+	 * @param consumer receives the groups in the order of the file
+	 * @param threshold the score threshold, inclusive
+	 * @see #readGroups(String, String, Collection, double)
+	 */
+	public static void forEachGroup(String path, String dir, Consumer<Group> consumer, double threshold)
+	{
+		try (BufferedReader reader = CompressedInput.newReader(path))
+		{
+			String header = reader.readLine();
+			if (header == null) return;
+			boolean hasQval = header.split("\t").length >= 3;
+
+			for (String line = reader.readLine(); line != null; line = reader.readLine())
+			{
+				if (line.isEmpty()) continue;
+
+				int tab = line.indexOf('\t');
+				double score = Double.parseDouble(tab < 0 ? line : line.substring(0, tab));
+				if (score > threshold) break;
+
+				String[] token = line.split("\t");
+				consumer.accept(new Group(Arrays.asList(token).subList(hasQval ? 2 : 1, token.length), dir, score));
+			}
+		}
+		catch (IOException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
 	public static Set<Group> readMutexResultsRecursive(String dir, Set<Group> result)
 	{
-		if (new File(dir + "/ranked-groups.txt").exists())
-			result.addAll(readMutexResults(dir));
+		return readMutexResultsRecursive(dir, result, f -> true);
+	}
 
-		Arrays.stream(new File(dir).listFiles()).filter(File::isDirectory).forEach(d ->
-			readMutexResultsRecursive(d.getPath(), result));
+	/**
+	 * Reads the Mutex results in the directory and in its subdirectories. Directories are walked in parallel on a
+	 * bounded pool, since the walk is mostly waiting for the file system. Each subtree collects its own groups, and
+	 * they are merged into the result at the end.
+	 * @param dir the root directory
+	 * @param result set to add the groups
+	 * @param filter decides which subdirectories to walk. It is called by one thread at a time.
+	 * @return the result set
+	 */
+	public static Set<Group> readMutexResultsRecursive(String dir, Set<Group> result, DirectoryFilter filter)
+	{
+		return readMutexResultsRecursive(dir, result, filter, Double.POSITIVE_INFINITY);
+	}
 
+	/**
+	 * Reads the Mutex results with a score at most the threshold, in the directory and in its subdirectories.
+	 * @param dir the root directory
+	 * @param result set to add the groups
+	 * @param filter decides which subdirectories to walk. It is called by one thread at a time.
+	 * @param threshold the score threshold, inclusive
+	 * @return the result set
+	 * @see #readGroups(String, String, Collection, double)
+	 */
+	public static Set<Group> readMutexResultsRecursive(String dir, Set<Group> result, DirectoryFilter filter,
+		double threshold)
+	{
+		result.addAll(walk(dir, filter, (resultDir, file, groups) -> readGroups(file, resultDir, groups, threshold)));
 		return result;
 	}
 
-	public static Set<Group> readMutexResultsRecursive(String dir, Set<Group> result, DirectoryFilter filter)
+	/**
+	 * Walks the directory and its subdirectories, and reads the Mutex results of each result directory with the given
+	 * reader. Directories are walked in parallel on a bounded pool, since the walk is mostly waiting for the file
+	 * system. Each subtree collects its own items, and they are concatenated at the end.
+	 * @param dir the root directory
+	 * @param filter decides which subdirectories to walk. It is called by one thread at a time.
+	 * @param reader reads a result directory
+	 * @return items that the reader produced
+	 */
+	static <T> List<T> walk(String dir, DirectoryFilter filter, ResultReader<T> reader)
 	{
-		if (new File(dir + "/ranked-groups.txt").exists())
+		ForkJoinPool pool = new ForkJoinPool(IO_THREADS);
+		try
+		{
+			return pool.invoke(new DirectoryTask<>(new File(dir), filter, reader));
+		}
+		finally
 		{
-			result.addAll(readMutexResults(dir));
+			pool.shutdown();
 		}
+	}
 
-		Arrays.stream(new File(dir).listFiles()).filter(File::isDirectory).filter(filter::process).forEach(d ->
-			readMutexResultsRecursive(d.getPath(), result, filter));
+	/**
+	 * Number of threads that walk the result directories.
+	 */
+	static final int IO_THREADS = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
 
-		return result;
+	/**
+	 * Reads the results of a directory during a walk.
+	 */
+	interface ResultReader<T>
+	{
+		/**
+		 * @param dir the result directory
+		 * @param file the ranked groups file in the directory
+		 * @param items collection to add what is read
+		 */
+		void read(String dir, String file, List<T> items);
 	}
 
+	/**
+	 * Reads the results in a directory, and walks its subdirectories in subtasks.
+	 */
+	static class DirectoryTask<T> extends RecursiveTask<List<T>>
+	{
+		File dir;
+		DirectoryFilter filter;
+		ResultReader<T> reader;
+
+		DirectoryTask(File dir, DirectoryFilter filter, ResultReader<T> reader)
+		{
+			this.dir = dir;
+			this.filter = filter;
+			this.reader = reader;
+		}
+
+		@Override
+		protected List<T> compute()
+		{
+			List<DirectoryTask<T>> subtasks = new ArrayList<>();
+
+			File[] subdirs = dir.listFiles(File::isDirectory);
+			if (subdirs != null)
+			{
+				for (File subdir : subdirs)
+				{
+					boolean accept;
+					synchronized (filter)
+					{
+						accept = filter.process(subdir);
+					}
+					if (accept) subtasks.add(new DirectoryTask<>(subdir, filter, reader));
+				}
+			}
+
+			// subdirectories are walked while this directory is read
+			subtasks.forEach(ForkJoinTask::fork);
+
+			List<T> items = new ArrayList<>();
+			String path = dir.getPath();
+			if (hasMutexResults(path)) reader.read(path, findResultFile(path, "ranked-groups.txt"), items);
+
+			for (DirectoryTask<T> subtask : subtasks)
+			{
+				items.addAll(subtask.join());
+			}
+			return items;
+		}
+	}
+
+	/**
+	 * A group of genes in a Mutex result. Genes are also kept as their sorted, distinct IDs in the
+	 * {@link GeneDictionary#SHARED} dictionary, so that comparing groups and enumerating their pairs do not touch
+	 * strings.
+	 */
 	public static class Group
 	{
-		public List<String> genes;
+		/**
+		 * Genes in the order of the result file.
+		 */
+		public final List<String> genes;
+
+		/**
+		 * Sorted and distinct gene IDs.
+		 */
+		public final int[] ids;
 		public String fromDir;
-		public double score;
+		public final double score;
+
+		/**
+		 * Cached hash code, computed at the first request. Zero means not computed.
+		 */
+		private int hash;
 
 		public Group(List<String> genes, String fromDir, double score)
 		{
-			this.genes = genes;
+			this(toIDs(genes), fromDir, score);
+		}
+
+		/**
+		 * @param members IDs of the genes in the order of the result file
+		 */
+		Group(int[] members, String fromDir, double score)
+		{
+			this.genes = new Members(members);
+			this.ids = sortedDistinct(members);
 			this.fromDir = fromDir;
 			this.score = score;
 		}
 
+		private static int[] toIDs(List<String> genes)
+		{
+			int[] ids = new int[genes.size()];
+			for (int i = 0; i < ids.length; i++)
+			{
+				ids[i] = GeneDictionary.SHARED.getID(genes.get(i));
+			}
+			return ids;
+		}
+
+		private static int[] sortedDistinct(int[] members)
+		{
+			int[] ids = members.clone();
+			Arrays.sort(ids);
+
+			int n = 0;
+			for (int i = 0; i < ids.length; i++)
+			{
+				if (n == 0 || ids[i] != ids[n - 1]) ids[n++] = ids[i];
+			}
+			return n == ids.length ? ids : Arrays.copyOf(ids, n);
+		}
+
+		/**
+		 * Gets the genes of the group, in the order of the result file.
+		 * @return the genes
+		 */
+		public List<String> getGenes()
+		{
+			return genes;
+		}
+
 		public double getScore()
 		{
 			return score;
@@ -160,7 +491,11 @@ public class MutexReader
 
 		public void shortenLoc(String remove)
 		{
-			if (fromDir.startsWith(remove)) fromDir = fromDir.substring(remove.length());
+			if (fromDir.startsWith(remove))
+			{
+				fromDir = fromDir.substring(remove.length());
+				hash = 0;
+			}
 		}
 
 		public String geneKey()
@@ -173,22 +508,51 @@ public class MutexReader
 		@Override
 		public int hashCode()
 		{
-			int h = 0;
-			for (String gene : genes)
+			int h = hash;
+			if (h == 0)
 			{
-				h += gene.hashCode();
+				h = Arrays.hashCode(ids);
+				h = 31 * h + fromDir.hashCode();
+				h = 31 * h + Double.hashCode(score);
+				hash = h;
 			}
-			h += fromDir.hashCode();
-			h += Double.hashCode(score);
 			return h;
 		}
 
 		@Override
 		public boolean equals(Object obj)
 		{
-			return obj instanceof Group && ((Group) obj).genes.containsAll(genes) &&
-				((Group) obj).genes.size() == genes.size() && ((Group) obj).fromDir.equals(fromDir) &&
-				((Group) obj).score == score;
+			if (this == obj) return true;
+			if (!(obj instanceof Group)) return false;
+
+			Group g = (Group) obj;
+			return g.hashCode() == hashCode() && g.score == score && Arrays.equals(g.ids, ids) &&
+				g.fromDir.equals(fromDir);
+		}
+	}
+
+	/**
+	 * Read-only list of the genes of a group, which keeps only their IDs.
+	 */
+	private static class Members extends AbstractList<String> implements RandomAccess
+	{
+		final int[] ids;
+
+		Members(int[] ids)
+		{
+			this.ids = ids;
+		}
+
+		@Override
+		public String get(int index)
+		{
+			return GeneDictionary.SHARED.getGene(ids[index]);
+		}
+
+		@Override
+		public int size()
+		{
+			return ids.length;
 		}
 	}
 
@@ -0,0 +1,281 @@
+package org.panda.cancernetwork;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of the relations of genes to a set of target genes, shared among the runs in the same JVM. Genes
+ * such as TP53 or KRAS are altered in most patients, and their relations to the cancer genes are the same as long as
+ * the network and the cancer genes are the same, so they are resolved once per cohort. The cached relations are
+ * resolved over all priority tiers, with their mediators.
+ * <p>
+ * The cache is split into segments that are locked separately. Each segment evicts its least recently used genes
+ * when its share of the capacity is exceeded, where the size of a gene is the number of its relations. When a gene
+ * is requested by several runs at once, it is resolved by only one of them and the others wait for it.
+ *
+ * @author Ozgun Babur
+ */
+public class NeighborhoodCache
+{
+	/**
+	 * Default capacity, in number of relations.
+	 */
+	public static final long DEFAULT_CAPACITY = 1_000_000;
+
+	private static final int SEGMENT_COUNT = 16;
+
+	private final Segment[] segments;
+
+	/**
+	 * IDs of the contexts, which are the pairs of a network and a target gene set. Networks are compared by
+	 * identity, since they are shared instances, and target gene sets by their fingerprint. Networks are weakly
+	 * referenced, so that the networks evicted from the shared resources can be collected.
+	 */
+	private final Map<IndexedNetwork, Map<Long, Integer>> contexts = new WeakHashMap<>();
+
+	private int contextCount;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Relations of a gene to the target genes. Relations are grouped by the neighbor, in the order of neighbor IDs.
+	 */
+	static class Neighbors
+	{
+		/**
+		 * IDs of the neighbors in the target set.
+		 */
+		int[] targets;
+
+		/**
+		 * Start of the relations of each neighbor in the edges, with an extra end offset.
+		 */
+		int[] offsets;
+
+		/**
+		 * Relations in the SIF format, with their mediators.
+		 */
+		String[] edges;
+
+		/**
+		 * Whether each relation is from the neighbor to the gene, which decides the order of their genes.
+		 */
+		boolean[] reversed;
+
+		/**
+		 * Tiers in which the relations with each neighbor are avoided, null for a neighbor that has none.
+		 */
+		int[][] avoided;
+
+		int size()
+		{
+			return edges.length + 1;
+		}
+	}
+
+	/**
+	 * Resolves the relations of a gene on a cache miss.
+	 */
+	interface Resolver
+	{
+		Neighbors resolve(int gene);
+	}
+
+	/**
+	 * @param capacity maximum number of cached relations
+	 */
+	public NeighborhoodCache(long capacity)
+	{
+		segments = new Segment[SEGMENT_COUNT];
+		for (int i = 0; i < segments.length; i++)
+		{
+			segments[i] = new Segment(Math.max(1, capacity / SEGMENT_COUNT));
+		}
+	}
+
+	/**
+	 * Gets the ID of the context of the given network and target genes, which is a part of the keys of the cache.
+	 * @param network the network
+	 * @param targets the target genes
+	 * @return the context ID
+	 */
+	public int getContext(IndexedNetwork network, Set<String> targets)
+	{
+		long fingerprint = NetworkSnapshot.fingerprint(targets);
+
+		synchronized (contexts)
+		{
+			Map<Long, Integer> map = contexts.computeIfAbsent(network, k -> new HashMap<>());
+			Integer id = map.get(fingerprint);
+			if (id == null)
+			{
+				id = contextCount++;
+				map.put(fingerprint, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * Gets the relations of the gene in the context, resolving them if they are not cached.
+	 * @param context the context ID
+	 * @param gene the gene ID
+	 * @param resolver resolves the relations on a cache miss
+	 * @return the relations of the gene
+	 */
+	Neighbors get(int context, int gene, Resolver resolver)
+	{
+		long key = ((long) context << 32) | gene;
+		Segment segment = segments[(int) (mix(key) >>> 32) & (SEGMENT_COUNT - 1)];
+
+		CompletableFuture<Neighbors> future;
+		boolean resolve = false;
+
+		synchronized (segment)
+		{
+			future = segment.map.get(key);
+			if (future == null)
+			{
+				future = new CompletableFuture<>();
+				segment.map.put(key, future);
+				resolve = true;
+			}
+		}
+
+		if (!resolve)
+		{
+			hits.incrementAndGet();
+			try
+			{
+				return future.join();
+			}
+			catch (CompletionException e)
+			{
+				// the resolving run failed, hence the gene is resolved here
+				return resolver.resolve(gene);
+			}
+		}
+
+		misses.incrementAndGet();
+		Neighbors neighbors;
+		try
+		{
+			neighbors = resolver.resolve(gene);
+		}
+		catch (RuntimeException | Error e)
+		{
+			synchronized (segment)
+			{
+				segment.map.remove(key, future);
+			}
+			future.completeExceptionally(e);
+			throw e;
+		}
+
+		synchronized (segment)
+		{
+			// the entry may be evicted while being resolved
+			if (segment.map.get(key) == future) segment.add(neighbors.size());
+		}
+		future.complete(neighbors);
+		return neighbors;
+	}
+
+	private static long mix(long key)
+	{
+		key *= 0x9e3779b97f4a7c15L;
+		return key ^ (key >>> 29);
+	}
+
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	public long getEvictions()
+	{
+		return evictions.get();
+	}
+
+	/**
+	 * Gets the ratio of the requests that found the gene in the cache.
+	 * @return the hit rate, or 0 if there is no request yet
+	 */
+	public double getHitRate()
+	{
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0 : h / (double) total;
+	}
+
+	/**
+	 * Gets the number of cached relations.
+	 * @return the total size of the resolved genes in the cache
+	 */
+	public long getSize()
+	{
+		long size = 0;
+		for (Segment segment : segments)
+		{
+			synchronized (segment)
+			{
+				size += segment.size;
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("Neighborhood cache: %.1f%% hit rate, %d hits, %d misses, %d evictions, %d relations",
+			getHitRate() * 100, getHits(), getMisses(), getEvictions(), getSize());
+	}
+
+	/**
+	 * A part of the cache, which is a map in the order of access.
+	 */
+	private class Segment
+	{
+		final long capacity;
+		long size;
+
+		final LinkedHashMap<Long, CompletableFuture<Neighbors>> map = new LinkedHashMap<>(64, 0.75f, true);
+
+		Segment(long capacity)
+		{
+			this.capacity = capacity;
+		}
+
+		/**
+		 * Accounts a resolved gene, and evicts the least recently used resolved genes while over the capacity. The
+		 * last added gene is kept even if it is larger than the capacity alone.
+		 */
+		void add(int entrySize)
+		{
+			size += entrySize;
+
+			Iterator<CompletableFuture<Neighbors>> iter = map.values().iterator();
+			while (size > capacity && map.size() > 1 && iter.hasNext())
+			{
+				CompletableFuture<Neighbors> future = iter.next();
+
+				// genes that are still being resolved are not accounted yet
+				if (!future.isDone()) continue;
+
+				if (!future.isCompletedExceptionally()) size -= future.join().size();
+				iter.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+}
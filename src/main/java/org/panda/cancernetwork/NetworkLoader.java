@@ -4,10 +4,14 @@ import org.biopax.paxtools.pattern.miner.SIFEnum;
 import org.panda.resource.network.PathwayCommons;
 import org.panda.utility.graph.Graph;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
 import java.util.*;
 
 /**
- * Loads Pathway Commons SIF.
+ * Loads Pathway Commons SIF, or a local SIF file when working offline.
  *
  * @author Ozgun Babur
  */
@@ -18,13 +22,29 @@ public class NetworkLoader
 	 */
 	Map<SIFEnum, Integer> types;
 
+	/**
+	 * Local SIF file to load instead of Pathway Commons. Null to use Pathway Commons.
+	 */
+	String networkFile;
+
 	/**
 	 * Constructor with types of relations and their priority
 	 * @param types types of relations and their priority
 	 */
 	public NetworkLoader(Map<SIFEnum, Integer> types)
+	{
+		this(types, null);
+	}
+
+	/**
+	 * Constructor with types of relations and their priority, and the local SIF file to load them from.
+	 * @param types types of relations and their priority
+	 * @param networkFile the local SIF file, or null to use Pathway Commons
+	 */
+	public NetworkLoader(Map<SIFEnum, Integer> types, String networkFile)
 	{
 		this.types = types;
+		this.networkFile = networkFile;
 	}
 
 	/**
@@ -37,16 +57,198 @@ public class NetworkLoader
 
 		int max = types.values().stream().max(Integer::compare).get();
 
-		for (int i = 0; i <= max; i++)
+		// Pathway Commons is a lazily initialized singleton, hence the networks of different types are not loaded
+		// from it at the same time
+		synchronized (PathwayCommons.class)
 		{
-			int index = i;
-			Map<String, Graph> map = new HashMap<>();
-			list.add(map);
+			for (int i = 0; i <= max; i++)
+			{
+				int index = i;
+				Map<String, Graph> map = new HashMap<>();
+				list.add(map);
 
-			types.keySet().stream().filter(type -> types.get(type) == index).forEach(type ->
-				map.put(type.getTag(), PathwayCommons.get().getGraph(type)));
+				types.keySet().stream().filter(type -> types.get(type) == index).forEach(type ->
+					map.put(type.getTag(), PathwayCommons.get().getGraph(type)));
+			}
 		}
 
 		return list;
 	}
+
+	/**
+	 * Loads the network and indexes it for the integer-based edge search. The local SIF file is read directly into
+	 * the index, without building graphs.
+	 * @return the indexed network
+	 * @throws IOException
+	 */
+	public IndexedNetwork loadIndexed() throws IOException
+	{
+		return networkFile != null ? new SifNetwork(networkFile, types) : new HeapNetwork(load());
+	}
+
+	/**
+	 * Loads the indexed network, from the given snapshot file if there is one.
+	 * @param snapshotFile the snapshot file, or null to load the network into memory
+	 * @return the indexed network
+	 * @throws IOException
+	 */
+	public IndexedNetwork loadIndexed(String snapshotFile) throws IOException
+	{
+		return snapshotFile != null ? loadSnapshot(snapshotFile) : loadIndexed();
+	}
+
+	/**
+	 * Compiles the network into a snapshot file that can later be memory-mapped with {@link #loadSnapshot(String)}.
+	 * @param file the snapshot file
+	 * @throws IOException
+	 */
+	public void compile(String file) throws IOException
+	{
+		// the stamp is taken before loading, so a network that changes meanwhile is compiled again next time
+		String source = getSourceStamp();
+		NetworkSnapshot.write(loadIndexed(), null, 0, source, new File(file));
+	}
+
+	/**
+	 * Gets the identity of the network that this loader loads, which is recorded in the compiled snapshots. It is the
+	 * path, size and modification time of the local SIF file, or of the Pathway Commons resource when there is no
+	 * local file.
+	 * @return the source stamp
+	 * @throws IOException
+	 */
+	public String getSourceStamp() throws IOException
+	{
+		File file;
+		String origin;
+		if (networkFile != null)
+		{
+			file = new File(networkFile);
+			origin = "network-file";
+		}
+		else
+		{
+			CodeSource code = PathwayCommons.class.getProtectionDomain().getCodeSource();
+			if (code == null) return "pathway-commons";
+			try
+			{
+				file = new File(code.getLocation().toURI());
+			}
+			catch (URISyntaxException | IllegalArgumentException e)
+			{
+				return "pathway-commons " + code.getLocation();
+			}
+			origin = "pathway-commons";
+		}
+
+		file = file.getCanonicalFile();
+		return origin + " " + file.getPath() + " " + file.length() + " " + file.lastModified();
+	}
+
+	/**
+	 * Loads the network by memory-mapping a compiled snapshot. If the snapshot does not exist, is of a different
+	 * version, or was compiled for different relation types or from a different or changed network, it is compiled
+	 * first.
+	 * @param file the snapshot file
+	 * @return the memory-mapped snapshot
+	 * @throws IOException
+	 */
+	public NetworkSnapshot loadSnapshot(String file) throws IOException
+	{
+		File f = new File(file);
+
+		if (f.exists())
+		{
+			try
+			{
+				NetworkSnapshot snapshot = NetworkSnapshot.map(f);
+				String mismatch = mismatch(snapshot, 0);
+				if (mismatch == null) return snapshot;
+				System.err.println("Network snapshot " + mismatch + ", recompiling: " + file);
+			}
+			catch (IOException e)
+			{
+				System.err.println(e.getMessage() + ", recompiling.");
+			}
+		}
+
+		compile(file);
+		return NetworkSnapshot.map(f);
+	}
+
+	/**
+	 * Loads the index of the neighbors of the given cancer genes. The index is a snapshot that keeps only the
+	 * relations to the cancer genes, with their mediators. It is memory-mapped if it exists and it is built for the
+	 * same relation types, cancer genes and network, otherwise it is built from the network first.
+	 * @param indexFile the index file
+	 * @param cancerGenes the cancer genes
+	 * @param snapshotFile the snapshot file of the whole network, or null to load the network into memory
+	 * @return the memory-mapped index
+	 * @throws IOException
+	 */
+	public NetworkSnapshot loadCancerGeneIndex(String indexFile, Set<String> cancerGenes, String snapshotFile)
+		throws IOException
+	{
+		return loadCancerGeneIndex(indexFile, cancerGenes, () -> loadIndexed(snapshotFile));
+	}
+
+	/**
+	 * Loads the index of the neighbors of the given cancer genes, building it from the given source if needed.
+	 * @param indexFile the index file
+	 * @param cancerGenes the cancer genes
+	 * @param source provides the whole network when the index needs to be built
+	 * @return the memory-mapped index
+	 * @throws IOException
+	 */
+	NetworkSnapshot loadCancerGeneIndex(String indexFile, Set<String> cancerGenes, NetworkSource source)
+		throws IOException
+	{
+		File f = new File(indexFile);
+		long fingerprint = NetworkSnapshot.fingerprint(cancerGenes);
+
+		if (f.exists())
+		{
+			try
+			{
+				NetworkSnapshot index = NetworkSnapshot.map(f);
+				String mismatch = mismatch(index, fingerprint);
+				if (mismatch == null) return index;
+				System.err.println("Cancer gene index " + mismatch + ", rebuilding: " + indexFile);
+			}
+			catch (IOException e)
+			{
+				System.err.println(e.getMessage() + ", rebuilding.");
+			}
+		}
+
+		String stamp = getSourceStamp();
+		IndexedNetwork network = source.get();
+		NetworkSnapshot.write(network, network.toBitSet(cancerGenes), fingerprint, stamp, f);
+		return NetworkSnapshot.map(f);
+	}
+
+	/**
+	 * Checks if the snapshot can be reused for the relation types and the network of this loader.
+	 * @param snapshot the existing snapshot
+	 * @param fingerprint the expected fingerprint of the target genes, 0 for the whole network
+	 * @return the reason that the snapshot cannot be reused, or null if it can be
+	 * @throws IOException
+	 */
+	private String mismatch(NetworkSnapshot snapshot, long fingerprint) throws IOException
+	{
+		if (!snapshot.matches(types)) return "has different relation types";
+		if (snapshot.getFingerprint() != fingerprint)
+		{
+			return fingerprint == 0 ? "is a cancer gene index" : "is for different cancer genes";
+		}
+		if (!snapshot.getSource().equals(getSourceStamp())) return "is from a different or changed network";
+		return null;
+	}
+
+	/**
+	 * Provides an indexed network.
+	 */
+	interface NetworkSource
+	{
+		IndexedNetwork get() throws IOException;
+	}
 }
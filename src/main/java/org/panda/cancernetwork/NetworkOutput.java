@@ -0,0 +1,44 @@
+package org.panda.cancernetwork;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Receives a generated network, and writes it in an output format. Edges are given first, and then the nodes in
+ * sorted order.
+ *
+ * @author Ozgun Babur
+ */
+public interface NetworkOutput extends Closeable, Flushable
+{
+	/**
+	 * Writes the edges in sorted order, skipping the repeated ones. The sorted order needs every edge of the network,
+	 * so the edges are not streamed during the search but buffered until it ends, and the peak memory includes the
+	 * whole edge list.
+	 * @param edges edge lines in SIF format, which is source, type, target and mediators separated by tabs. The list
+	 * is sorted in place.
+	 * @throws IOException
+	 */
+	void writeEdges(List<String> edges) throws IOException;
+
+	/**
+	 * Writes a node of the network.
+	 * @param gene the gene
+	 * @param altered whether the gene is altered
+	 * @param cancerGene whether the gene is a cancer gene
+	 * @param features alterations of the gene to show as info boxes, empty if not altered
+	 * @param tooltip tooltip of the gene, or null
+	 * @throws IOException
+	 */
+	void writeNode(String gene, boolean altered, boolean cancerGene, Collection<GeneFeature> features,
+		String tooltip) throws IOException;
+
+	/**
+	 * Completes the content and flushes it. The underlying writers are left open.
+	 * @throws IOException
+	 */
+	void finish() throws IOException;
+}
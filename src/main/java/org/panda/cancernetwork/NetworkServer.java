@@ -0,0 +1,382 @@
+package org.panda.cancernetwork;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A long-running HTTP server that keeps networks and cancer gene sets resident in memory, and generates networks on
+ * request. The request body is in the format of the parameters file. Relative file paths in it are resolved against
+ * the base directory of the server, or against the "dir" query parameter when given, which is relative to the base
+ * directory. Requests can only read files under the base directory, and they cannot set the parameters that write
+ * files or change the thread use, since any web page that the user visits can post to a loopback port.
+ * <p>
+ * Endpoints, all accepting POST:
+ * <pre>
+ * /sif       streams the SIF content
+ * /format    streams the format content
+ * /network   streams a zip with both the SIF and the format files
+ * /json      streams the network as Cytoscape.js elements JSON
+ * </pre>
+ * Requests run on virtual threads when the JVM supports them, and on a fixed thread pool otherwise. The server only
+ * listens on the loopback interface.
+ *
+ * @author Ozgun Babur
+ */
+public class NetworkServer
+{
+	/**
+	 * The first argument of {@link Main} that switches to the server mode.
+	 */
+	public static final String SERVER_FLAG = "--server";
+
+	/**
+	 * Default port to listen.
+	 */
+	public static final int DEFAULT_PORT = 8484;
+
+	/**
+	 * Parameters that a request can set. The others write files on the server, which are snapshots, indexes, caches,
+	 * reports and outputs, or change its thread use. Output format and compression are ignored, since the endpoint
+	 * decides the output.
+	 */
+	static final Set<Main.Parameter> REQUEST_PARAMETERS = Collections.unmodifiableSet(EnumSet.of(
+		Main.Parameter.USE_RELATION_TYPE, Main.Parameter.CANCER_GENE_RESOURCE, Main.Parameter.GENE_ALTERATION_SET,
+		Main.Parameter.NETWORK_FILE, Main.Parameter.ALTERED_GENES_IN_NETWORK_ONLY, Main.Parameter.TOOLTIPS,
+		Main.Parameter.OUTPUT_FORMAT, Main.Parameter.COMPRESS_OUTPUT));
+
+	/**
+	 * Base directory for the relative paths in requests. Requests cannot read files out of it.
+	 */
+	String baseDir;
+
+	/**
+	 * Resources that stay in memory between requests.
+	 */
+	SharedResources resources;
+
+	HttpServer server;
+
+	/**
+	 * Constructor with the base directory.
+	 * @param baseDir base directory for the relative paths in requests
+	 */
+	public NetworkServer(String baseDir)
+	{
+		this.baseDir = baseDir;
+		this.resources = new SharedResources();
+	}
+
+	/**
+	 * Starts listening on the given port of the loopback interface.
+	 * @param port the port
+	 * @throws IOException
+	 */
+	public void start(int port) throws IOException
+	{
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+
+		server.createContext("/sif", exchange -> handle(exchange, Output.SIF));
+		server.createContext("/format", exchange -> handle(exchange, Output.FORMAT));
+		server.createContext("/network", exchange -> handle(exchange, Output.ZIP));
+		server.createContext("/json", exchange -> handle(exchange, Output.JSON));
+
+		server.setExecutor(createExecutor());
+		server.start();
+	}
+
+	/**
+	 * Stops the server, waiting for the ongoing requests at most the given seconds.
+	 * @param delay seconds to wait
+	 */
+	public void stop(int delay)
+	{
+		server.stop(delay);
+	}
+
+	/**
+	 * Creates an executor of virtual threads if the JVM has them, and a fixed thread pool otherwise. Virtual threads
+	 * are looked up reflectively, so that the code still runs on Java 8.
+	 */
+	static ExecutorService createExecutor()
+	{
+		try
+		{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2);
+		}
+	}
+
+	enum Output
+	{
+		SIF("text/plain"),
+		FORMAT("text/plain"),
+		ZIP("application/zip"),
+		JSON("application/json");
+
+		String contentType;
+
+		Output(String contentType)
+		{
+			this.contentType = contentType;
+		}
+	}
+
+	private void handle(HttpExchange exchange, Output output) throws IOException
+	{
+		try
+		{
+			if (!exchange.getRequestMethod().equals("POST"))
+			{
+				sendError(exchange, 405, "Only POST is supported.");
+				return;
+			}
+
+			Main main;
+
+			// parameter errors are reported before the response starts
+			try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)))
+			{
+				String dir = getQueryParameter(exchange, "dir");
+				dir = dir == null ? baseDir : resolve(baseDir, dir);
+
+				List<String> lines = reader.lines().collect(Collectors.toList());
+				checkParameters(lines, dir);
+
+				main = new Main(dir, resources);
+				main.readParameters(lines.stream());
+			}
+			catch (RuntimeException | AssertionError e)
+			{
+				sendError(exchange, 400, "Cannot read parameters: " + e);
+				return;
+			}
+
+			if (main.sifTypes.isEmpty())
+			{
+				sendError(exchange, 400, "At least one use-relation-type is required.");
+				return;
+			}
+
+			exchange.getResponseHeaders().set("Content-Type", output.contentType);
+
+			// zero length means a chunked response, which is streamed as the network is written
+			exchange.sendResponseHeaders(200, 0);
+
+			try (OutputStream os = exchange.getResponseBody())
+			{
+				write(main, output, os);
+			}
+		}
+		catch (Exception e)
+		{
+			// the response is already started, closing the exchange truncates it
+			System.err.println("Request failed: " + e);
+		}
+		finally
+		{
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Checks that the request sets only the allowed parameters, and that the files they read are under the base
+	 * directory. Malformed and unknown lines are left to {@link Main#readParameters(java.util.stream.Stream)}.
+	 * @param lines lines of the request body
+	 * @param dir the directory of the request, which is under the base directory
+	 * @throws IOException
+	 * @throws IllegalArgumentException if a parameter is not allowed, or a path is out of the base directory
+	 */
+	void checkParameters(List<String> lines, String dir) throws IOException
+	{
+		for (String line : lines)
+		{
+			if (line.startsWith("#") || line.trim().isEmpty()) continue;
+
+			String[] t = line.split("=");
+			Main.Parameter param = Main.Parameter.findEnum(t[0].trim());
+			if (param == null || t.length < 2) continue;
+
+			if (!REQUEST_PARAMETERS.contains(param))
+			{
+				throw new IllegalArgumentException("Not allowed in requests: " + param.getText());
+			}
+
+			String value = t[1].trim();
+			String[] v = value.split("\\s+");
+
+			switch (param)
+			{
+				case NETWORK_FILE:
+				case TOOLTIPS:
+					resolve(dir, value);
+					break;
+				case GENE_ALTERATION_SET:
+					if (v.length > 1) resolve(dir, v[1]);
+					break;
+				case CANCER_GENE_RESOURCE:
+				{
+					// the index file of Mutex results is written when it is out of date
+					if (v[0].equals(CancerGeneResource.Mutex.name()) && v.length > 3)
+					{
+						throw new IllegalArgumentException("Mutex index files are not allowed in requests.");
+					}
+					if (v.length > 1) resolve(dir, v[1]);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Resolves a relative path of a request against the directory, and checks that it stays under the base
+	 * directory, also after following the symbolic links.
+	 * @param dir the directory to resolve against
+	 * @param path the relative path
+	 * @return the resolved path
+	 * @throws IOException
+	 * @throws IllegalArgumentException if the path is absolute, has "..", or is out of the base directory
+	 */
+	String resolve(String dir, String path) throws IOException
+	{
+		Path p = Paths.get(path);
+		if (p.isAbsolute() || path.startsWith("/"))
+		{
+			throw new IllegalArgumentException("Absolute paths are not allowed: " + path);
+		}
+		for (Path name : p)
+		{
+			if (name.toString().equals("..")) throw new IllegalArgumentException("\"..\" is not allowed: " + path);
+		}
+
+		File file = new File(dir, path);
+		String base = new File(baseDir).getCanonicalPath();
+		String canonical = file.getCanonicalPath();
+		if (!canonical.equals(base) && !canonical.startsWith(base + File.separator))
+		{
+			throw new IllegalArgumentException("Out of the base directory: " + path);
+		}
+		return file.getPath();
+	}
+
+	private void write(Main main, Output output, OutputStream os) throws IOException
+	{
+		switch (output)
+		{
+			case SIF:
+			{
+				BufferedWriter sifWriter = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+				main.generateNetwork(sifWriter, new BufferedWriter(new NullWriter()));
+				break;
+			}
+			case FORMAT:
+			{
+				BufferedWriter fmtWriter = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+				main.generateNetwork(new BufferedWriter(new NullWriter()), fmtWriter);
+				break;
+			}
+			case ZIP:
+			{
+				// the SIF entry is streamed, the format content is kept until the SIF entry is complete
+				ZipOutputStream zos = new ZipOutputStream(os);
+				zos.putNextEntry(new ZipEntry(Main.DEFAULT_OUTPUT_FILENAME + ".sif"));
+				BufferedWriter sifWriter = new BufferedWriter(new OutputStreamWriter(zos, StandardCharsets.UTF_8));
+				StringWriter fmt = new StringWriter();
+
+				main.generateNetwork(sifWriter, new BufferedWriter(fmt));
+
+				zos.closeEntry();
+				zos.putNextEntry(new ZipEntry(Main.DEFAULT_OUTPUT_FILENAME + ".format"));
+				zos.write(fmt.toString().getBytes(StandardCharsets.UTF_8));
+				zos.closeEntry();
+				zos.finish();
+				break;
+			}
+			case JSON:
+			{
+				Writer writer = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+				main.generateNetwork(new JsonNetworkWriter(writer));
+				break;
+			}
+		}
+	}
+
+	private static void sendError(HttpExchange exchange, int code, String message) throws IOException
+	{
+		byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain");
+		exchange.sendResponseHeaders(code, bytes.length);
+		try (OutputStream os = exchange.getResponseBody())
+		{
+			os.write(bytes);
+		}
+	}
+
+	private static String getQueryParameter(HttpExchange exchange, String name) throws IOException
+	{
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query == null) return null;
+
+		for (String pair : query.split("&"))
+		{
+			String[] t = pair.split("=", 2);
+			if (t.length == 2 && t[0].equals(name)) return URLDecoder.decode(t[1], "UTF-8");
+		}
+		return null;
+	}
+
+	/**
+	 * A writer that discards everything, for the output that is not requested.
+	 */
+	static class NullWriter extends Writer
+	{
+		@Override
+		public void write(char[] cbuf, int off, int len)
+		{
+		}
+
+		@Override
+		public void flush()
+		{
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+
+	/**
+	 * Starts the server. Usage: [port] [base-dir]
+	 * @param args optional port and base directory
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		int port = args.length > 0 ? Integer.valueOf(args[0]) : DEFAULT_PORT;
+		String baseDir = args.length > 1 ? args[1] : new File(".").getAbsolutePath();
+
+		new NetworkServer(baseDir).start(port);
+		System.out.println("Listening on port " + port + ", base directory " + baseDir);
+	}
+}
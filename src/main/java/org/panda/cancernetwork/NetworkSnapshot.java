@@ -0,0 +1,596 @@
+package org.panda.cancernetwork;
+
+import org.biopax.paxtools.pattern.miner.SIFEnum;
+import org.panda.utility.graph.Graph;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A compiled binary form of the priority-ordered graphs that the {@link NetworkLoader} provides. The snapshot is
+ * memory-mapped when loaded, hence a run only touches the pages of the genes it asks for. Its adjacency views are
+ * directly the indexed network that the edge search runs on.
+ * <p>
+ * File layout, where all integers are big-endian and all integer sections are 4-byte aligned:
+ * <pre>
+ * magic, version, target fingerprint (long), source length, UTF-8 source
+ * gene count n, name offsets [n + 1], UTF-8 names sorted by their bytes
+ * tier count, and for each tier: type count, and for each type:
+ *     tag length, UTF-8 tag, directed flag
+ *     forward entry count m, offsets [n + 1], targets [m], mediator IDs [m]
+ *     backward entry count m', offsets [n + 1], sources [m'], mediator IDs [m']      (only for directed types)
+ * mediator count s, mediator offsets [s + 1], UTF-8 mediator strings
+ * </pre>
+ * Undirected relations are stored in both directions of the forward adjacency. A snapshot with a target fingerprint
+ * keeps only the entries that point to the target genes, see {@link #write(IndexedNetwork, BitSet, long, File)}.
+ *
+ * @author Ozgun Babur
+ */
+public class NetworkSnapshot extends IndexedNetwork
+{
+	/**
+	 * First four bytes of a snapshot file.
+	 */
+	static final int MAGIC = 0x434E534E;
+
+	/**
+	 * Version of the file layout. Snapshots of a different version are rejected.
+	 */
+	static final int VERSION = 3;
+
+	/**
+	 * Fingerprint of the target genes when the snapshot keeps only the relations to a target set, 0 otherwise.
+	 */
+	long fingerprint;
+
+	/**
+	 * Identity of the network that the snapshot is compiled from, see {@link NetworkLoader#getSourceStamp()}. Empty if
+	 * it is not known.
+	 */
+	String source;
+
+	/**
+	 * Number of genes in the dictionary.
+	 */
+	int geneCount;
+
+	/**
+	 * Offsets of gene names in the names section.
+	 */
+	IntBuffer nameOffsets;
+
+	/**
+	 * UTF-8 encoded gene names.
+	 */
+	ByteBuffer names;
+
+	/**
+	 * Offsets of mediator strings in the mediators section.
+	 */
+	IntBuffer mediatorOffsets;
+
+	/**
+	 * UTF-8 encoded mediator strings.
+	 */
+	ByteBuffer mediators;
+
+	private NetworkSnapshot()
+	{
+	}
+
+	@Override
+	public int getGeneCount()
+	{
+		return geneCount;
+	}
+
+	/**
+	 * Finds the integer ID of the given gene with a binary search in the sorted gene dictionary.
+	 * @param gene the gene symbol
+	 * @return the ID of the gene, or -1 if the gene is not in the snapshot
+	 */
+	@Override
+	public int getGeneID(String gene)
+	{
+		byte[] key = gene.getBytes(StandardCharsets.UTF_8);
+
+		int lo = 0;
+		int hi = geneCount - 1;
+
+		while (lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			int cmp = compareName(mid, key);
+
+			if (cmp < 0) lo = mid + 1;
+			else if (cmp > 0) hi = mid - 1;
+			else return mid;
+		}
+		return -1;
+	}
+
+	@Override
+	public String getGene(int id)
+	{
+		return decode(names, nameOffsets.get(id), nameOffsets.get(id + 1));
+	}
+
+	/**
+	 * Gets the mediator string with the given ID.
+	 * @param id the mediator ID that an adjacency entry points to
+	 * @return mediators in the format of the SIF file
+	 */
+	public String getMediators(int id)
+	{
+		return decode(mediators, mediatorOffsets.get(id), mediatorOffsets.get(id + 1));
+	}
+
+	@Override
+	public String getMediators(Relations rel, Adjacency adj, int entry, String source, String target)
+	{
+		return getMediators(adj.mediatorID(entry));
+	}
+
+	/**
+	 * Gets the fingerprint of the target genes that the snapshot is restricted to.
+	 * @return the fingerprint, or 0 if the snapshot has all relations
+	 */
+	public long getFingerprint()
+	{
+		return fingerprint;
+	}
+
+	/**
+	 * Gets the identity of the network that the snapshot is compiled from.
+	 * @return the source stamp, or an empty string if it is not known
+	 */
+	public String getSource()
+	{
+		return source;
+	}
+
+	/**
+	 * Checks if the snapshot is compiled for the given relation types and priorities.
+	 * @param types types of relations and their priority
+	 * @return true if the tiers of the snapshot are the same with the given types
+	 */
+	public boolean matches(Map<SIFEnum, Integer> types)
+	{
+		int max = types.values().stream().max(Integer::compare).get();
+		if (max + 1 != tiers.size()) return false;
+
+		for (int i = 0; i <= max; i++)
+		{
+			int index = i;
+			Set<String> expected = new HashSet<>();
+			types.keySet().stream().filter(type -> types.get(type) == index).forEach(type ->
+				expected.add(type.getTag()));
+
+			Set<String> existing = new HashSet<>();
+			tiers.get(i).forEach(rel -> existing.add(rel.type));
+
+			if (!expected.equals(existing)) return false;
+		}
+		return true;
+	}
+
+	private int compareName(int id, byte[] key)
+	{
+		int start = nameOffsets.get(id);
+		int len = nameOffsets.get(id + 1) - start;
+		int n = Math.min(len, key.length);
+
+		for (int i = 0; i < n; i++)
+		{
+			int cmp = (names.get(start + i) & 0xff) - (key[i] & 0xff);
+			if (cmp != 0) return cmp;
+		}
+		return len - key.length;
+	}
+
+	private static String decode(ByteBuffer buf, int start, int end)
+	{
+		byte[] b = new byte[end - start];
+		for (int i = 0; i < b.length; i++)
+		{
+			b[i] = buf.get(start + i);
+		}
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	//--- Section: Loading ------------------------------------------------------------------------------------------
+
+	/**
+	 * Memory-maps a snapshot file.
+	 * @param file the snapshot file
+	 * @return the mapped snapshot
+	 * @throws IOException if the file cannot be read, or it is not a snapshot of the current version
+	 */
+	public static NetworkSnapshot map(File file) throws IOException
+	{
+		ByteBuffer buf;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			if (channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException("Network snapshot is larger than 2 GB: " + file);
+			}
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if (buf.capacity() < 8 || buf.getInt() != MAGIC)
+		{
+			throw new IOException("Not a network snapshot: " + file);
+		}
+		int version = buf.getInt();
+		if (version != VERSION)
+		{
+			throw new IOException("Network snapshot version " + version + " is not supported: " + file);
+		}
+
+		NetworkSnapshot snapshot = new NetworkSnapshot();
+
+		snapshot.fingerprint = buf.getLong();
+		int sourceLength = buf.getInt();
+		snapshot.source = decode(bytes(buf, sourceLength), 0, sourceLength);
+		snapshot.geneCount = buf.getInt();
+		snapshot.nameOffsets = ints(buf, snapshot.geneCount + 1);
+		snapshot.names = bytes(buf, snapshot.nameOffsets.get(snapshot.geneCount));
+
+		int tierCount = buf.getInt();
+		for (int i = 0; i < tierCount; i++)
+		{
+			List<Relations> tier = new ArrayList<>();
+			snapshot.tiers.add(tier);
+
+			int typeCount = buf.getInt();
+			for (int j = 0; j < typeCount; j++)
+			{
+				Relations rel = new Relations();
+				int tagLength = buf.getInt();
+				rel.type = decode(bytes(buf, tagLength), 0, tagLength);
+				rel.directed = buf.getInt() != 0;
+				rel.forward = adjacency(buf, snapshot.geneCount);
+				if (rel.directed) rel.backward = adjacency(buf, snapshot.geneCount);
+				tier.add(rel);
+			}
+		}
+
+		int mediatorCount = buf.getInt();
+		snapshot.mediatorOffsets = ints(buf, mediatorCount + 1);
+		snapshot.mediators = bytes(buf, snapshot.mediatorOffsets.get(mediatorCount));
+
+		return snapshot;
+	}
+
+	private static Adjacency adjacency(ByteBuffer buf, int geneCount)
+	{
+		int entryCount = buf.getInt();
+		Adjacency adj = new Adjacency();
+		adj.offsets = ints(buf, geneCount + 1);
+		adj.targets = ints(buf, entryCount);
+		adj.mediatorIDs = ints(buf, entryCount);
+		return adj;
+	}
+
+	/**
+	 * Gets a view of the next integer section and advances the buffer.
+	 */
+	private static IntBuffer ints(ByteBuffer buf, int count)
+	{
+		ByteBuffer slice = buf.slice();
+		slice.limit(count * 4);
+		buf.position(buf.position() + count * 4);
+		return slice.asIntBuffer();
+	}
+
+	/**
+	 * Gets a view of the next byte section and advances the buffer to the next 4-byte boundary.
+	 */
+	private static ByteBuffer bytes(ByteBuffer buf, int count)
+	{
+		ByteBuffer slice = buf.slice();
+		slice.limit(count);
+		buf.position(buf.position() + padded(count));
+		return slice;
+	}
+
+	private static int padded(int count)
+	{
+		return (count + 3) & ~3;
+	}
+
+	//--- Section: Compiling ----------------------------------------------------------------------------------------
+
+	/**
+	 * Compiles the given priority-ordered graphs into a snapshot file.
+	 * @param graphsList the priority-ordered list of sets of graphs, as provided by the {@link NetworkLoader}
+	 * @param file the snapshot file to write
+	 * @throws IOException
+	 */
+	public static void write(List<Map<String, Graph>> graphsList, File file) throws IOException
+	{
+		write(new HeapNetwork(graphsList), null, 0, "", file);
+	}
+
+	/**
+	 * Compiles an indexed network of an unknown source into a snapshot file.
+	 * @see #write(IndexedNetwork, BitSet, long, String, File)
+	 */
+	public static void write(IndexedNetwork network, BitSet targets, long fingerprint, File file) throws IOException
+	{
+		write(network, targets, fingerprint, "", file);
+	}
+
+	/**
+	 * Compiles an indexed network into a snapshot file. When a set of targets is given, only the adjacency entries
+	 * that point to the targets are kept, which makes a lookup of a gene's neighbors in the target set. The file is
+	 * first written to a temporary file next to it, then moved in place, so that concurrent readers never see a
+	 * partial snapshot.
+	 * @param network the network to compile
+	 * @param targets IDs of the target genes in the network, or null to keep all relations
+	 * @param fingerprint fingerprint of the target genes, or 0 when there is no target set
+	 * @param source identity of the network, which is checked before the snapshot is reused
+	 * @param file the snapshot file to write
+	 * @throws IOException
+	 */
+	public static void write(IndexedNetwork network, BitSet targets, long fingerprint, String source, File file)
+		throws IOException
+	{
+		// decide which genes remain in the snapshot
+		BitSet kept = new BitSet(network.getGeneCount());
+		if (targets == null) kept.set(0, network.getGeneCount());
+		else network.tiers.forEach(tier -> tier.forEach(rel ->
+		{
+			markKept(rel.forward, targets, kept);
+			if (rel.backward != null) markKept(rel.backward, targets, kept);
+		}));
+
+		// the gene dictionary is sorted by UTF-8 bytes so that it can be binary searched
+		List<Object[]> dict = new ArrayList<>();
+		for (int id = kept.nextSetBit(0); id >= 0; id = kept.nextSetBit(id + 1))
+		{
+			dict.add(new Object[]{network.getGene(id).getBytes(StandardCharsets.UTF_8), id});
+		}
+		dict.sort((o1, o2) -> compareBytes((byte[]) o1[0], (byte[]) o2[0]));
+
+		List<byte[]> geneBytes = new ArrayList<>(dict.size());
+		int[] oldIDs = new int[dict.size()];
+		int[] newIDs = new int[network.getGeneCount()];
+		Arrays.fill(newIDs, -1);
+		for (int i = 0; i < dict.size(); i++)
+		{
+			geneBytes.add((byte[]) dict.get(i)[0]);
+			oldIDs[i] = (Integer) dict.get(i)[1];
+			newIDs[oldIDs[i]] = i;
+		}
+
+		// mediator strings are shared by all adjacency entries that point to them
+		Map<String, Integer> mediatorIDs = new LinkedHashMap<>();
+
+		// other runs may be compiling the same snapshot, so each writes its own temporary file
+		File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fingerprint);
+
+			byte[] sourceBytes = source.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(sourceBytes.length);
+			out.write(sourceBytes);
+			pad(sourceBytes.length, out);
+
+			out.writeInt(geneBytes.size());
+			writeStrings(geneBytes, out);
+
+			out.writeInt(network.getTierCount());
+			for (int i = 0; i < network.getTierCount(); i++)
+			{
+				List<Relations> tier = network.getTier(i);
+				out.writeInt(tier.size());
+
+				for (Relations rel : tier)
+				{
+					byte[] tag = rel.type.getBytes(StandardCharsets.UTF_8);
+					out.writeInt(tag.length);
+					out.write(tag);
+					pad(tag.length, out);
+					out.writeInt(rel.directed ? 1 : 0);
+
+					writeAdjacency(buildAdjacency(network, rel, true, targets, oldIDs, newIDs, mediatorIDs), out);
+
+					if (rel.directed)
+					{
+						writeAdjacency(buildAdjacency(network, rel, false, targets, oldIDs, newIDs, mediatorIDs), out);
+					}
+				}
+			}
+
+			List<byte[]> medBytes = new ArrayList<>(mediatorIDs.size());
+			mediatorIDs.keySet().forEach(m -> medBytes.add(m.getBytes(StandardCharsets.UTF_8)));
+			out.writeInt(medBytes.size());
+			writeStrings(medBytes, out);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			temp.delete();
+			throw e;
+		}
+
+		try
+		{
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static void markKept(Adjacency adj, BitSet targets, BitSet kept)
+	{
+		for (int gene = 0; gene < adj.offsets.limit() - 1; gene++)
+		{
+			for (int k = adj.begin(gene); k < adj.end(gene); k++)
+			{
+				if (targets.get(adj.target(k)))
+				{
+					kept.set(gene);
+					kept.set(adj.target(k));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the CSR adjacency in new gene IDs as three arrays: offsets, targets and mediator IDs.
+	 */
+	private static int[][] buildAdjacency(IndexedNetwork network, Relations rel, boolean forward, BitSet targets,
+		int[] oldIDs, int[] newIDs, Map<String, Integer> mediatorIDs)
+	{
+		Adjacency adj = forward ? rel.forward : rel.backward;
+
+		int[] offsets = new int[oldIDs.length + 1];
+		List<int[]> rows = new ArrayList<>(oldIDs.length);
+
+		for (int i = 0; i < oldIDs.length; i++)
+		{
+			int old = oldIDs[i];
+			String gene = network.getGene(old);
+
+			// pairs of new target ID and mediator ID, to be sorted by target
+			List<int[]> row = new ArrayList<>();
+
+			for (int k = adj.begin(old); k < adj.end(old); k++)
+			{
+				int t = adj.target(k);
+				if (targets != null && !targets.get(t)) continue;
+
+				String neighbor = network.getGene(t);
+				String med;
+				if (rel.directed)
+				{
+					med = forward ? network.getMediators(rel, adj, k, gene, neighbor) :
+						network.getMediators(rel, adj, k, neighbor, gene);
+				}
+				else
+				{
+					med = neighbor.compareTo(gene) < 0 ? network.getMediators(rel, adj, k, neighbor, gene) :
+						network.getMediators(rel, adj, k, gene, neighbor);
+				}
+				if (med == null) med = "";
+
+				Integer medID = mediatorIDs.get(med);
+				if (medID == null)
+				{
+					medID = mediatorIDs.size();
+					mediatorIDs.put(med, medID);
+				}
+
+				row.add(new int[]{newIDs[t], medID});
+			}
+
+			row.sort(Comparator.comparingInt(e -> e[0]));
+			rows.add(row.stream().flatMapToInt(Arrays::stream).toArray());
+			offsets[i + 1] = offsets[i] + row.size();
+		}
+
+		int[] tgts = new int[offsets[oldIDs.length]];
+		int[] medIDs = new int[tgts.length];
+
+		for (int i = 0; i < oldIDs.length; i++)
+		{
+			int[] row = rows.get(i);
+			for (int j = 0; j < row.length / 2; j++)
+			{
+				tgts[offsets[i] + j] = row[j * 2];
+				medIDs[offsets[i] + j] = row[j * 2 + 1];
+			}
+		}
+
+		return new int[][]{offsets, tgts, medIDs};
+	}
+
+	/**
+	 * Computes a fingerprint of a gene set, independent of the iteration order of the set.
+	 * @param genes the gene set
+	 * @return a non-zero fingerprint
+	 */
+	public static long fingerprint(Set<String> genes)
+	{
+		List<String> sorted = new ArrayList<>(genes);
+		Collections.sort(sorted);
+
+		// 64-bit FNV-1a over the sorted genes, separated by zero bytes
+		long h = 0xcbf29ce484222325L;
+		for (String gene : sorted)
+		{
+			for (byte b : gene.getBytes(StandardCharsets.UTF_8))
+			{
+				h ^= b & 0xff;
+				h *= 0x100000001b3L;
+			}
+			h *= 0x100000001b3L;
+		}
+		return h == 0 ? 1 : h;
+	}
+
+	private static void writeAdjacency(int[][] adj, DataOutputStream out) throws IOException
+	{
+		out.writeInt(adj[1].length);
+		for (int[] array : adj)
+		{
+			for (int v : array)
+			{
+				out.writeInt(v);
+			}
+		}
+	}
+
+	private static void writeStrings(List<byte[]> strings, DataOutputStream out) throws IOException
+	{
+		int offset = 0;
+		out.writeInt(offset);
+		for (byte[] b : strings)
+		{
+			offset += b.length;
+			out.writeInt(offset);
+		}
+		for (byte[] b : strings)
+		{
+			out.write(b);
+		}
+		pad(offset, out);
+	}
+
+	private static void pad(int count, DataOutputStream out) throws IOException
+	{
+		for (int i = count; i < padded(count); i++)
+		{
+			out.write(0);
+		}
+	}
+
+	private static int compareBytes(byte[] a, byte[] b)
+	{
+		int n = Math.min(a.length, b.length);
+		for (int i = 0; i < n; i++)
+		{
+			int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+			if (cmp != 0) return cmp;
+		}
+		return a.length - b.length;
+	}
+
+}
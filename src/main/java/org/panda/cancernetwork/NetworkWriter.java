@@ -0,0 +1,317 @@
+package org.panda.cancernetwork;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the SIF and format content of a network. Lines are assembled in a reusable char buffer per output instead of
+ * concatenating strings, and edges are written in sorted order, so that the output of the same input is the same
+ * between runs.
+ *
+ * @author Ozgun Babur
+ */
+public class NetworkWriter implements NetworkOutput
+{
+	/**
+	 * Extension of the compressed output files, appended to the SIF and format extensions.
+	 */
+	public static final String COMPRESSED_EXTENSION = ".gz";
+
+	/**
+	 * Size of the char buffer of each output.
+	 */
+	static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Buffer of the SIF content.
+	 */
+	private final CharBuffer sif;
+
+	/**
+	 * Buffer of the format content.
+	 */
+	private final CharBuffer fmt;
+
+	/**
+	 * Whether the format file has any line yet. Format lines are separated by new lines, without one at the end.
+	 */
+	private boolean fmtStarted;
+
+	/**
+	 * Constructor with the writers of the SIF and format content. Closing this writer closes them.
+	 * @param sifWriter writer for the SIF content
+	 * @param fmtWriter writer for the format content
+	 */
+	public NetworkWriter(Writer sifWriter, Writer fmtWriter)
+	{
+		this(sifWriter, fmtWriter, BUFFER_SIZE);
+	}
+
+	private NetworkWriter(Writer sifWriter, Writer fmtWriter, int bufferSize)
+	{
+		this.sif = new CharBuffer(sifWriter, bufferSize);
+		this.fmt = new CharBuffer(fmtWriter, bufferSize);
+	}
+
+	/**
+	 * Writes the node styles that apply to all nodes. It is the beginning of the format content.
+	 */
+	private void writeFormatHeader() throws IOException
+	{
+		writeFormat("all-nodes", "color", GeneFeature.DEFAULT_BACKGROUND_COLOR);
+		writeFormat("all-nodes", "bordercolor", GeneFeature.DEFAULT_BORDER_COLOR);
+	}
+
+	/**
+	 * Opens the SIF and format files of the network.
+	 * @param fileNoExt path of the output files, without the extension
+	 * @param compress whether to gzip the files, which then have the ".gz" extension at the end
+	 * @return the writer
+	 * @throws IOException
+	 */
+	public static NetworkWriter open(String fileNoExt, boolean compress) throws IOException
+	{
+		Writer sifWriter = openFile(fileNoExt + ".sif", compress);
+		try
+		{
+			return new NetworkWriter(sifWriter, openFile(fileNoExt + ".format", compress));
+		}
+		catch (IOException e)
+		{
+			sifWriter.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens a UTF-8 writer to the file.
+	 * @param file the file
+	 * @param compress whether to gzip the file, which then has the ".gz" extension at the end
+	 * @return the writer
+	 * @throws IOException
+	 */
+	static Writer openFile(String file, boolean compress) throws IOException
+	{
+		OutputStream os = Files.newOutputStream(Paths.get(compress ? file + COMPRESSED_EXTENSION : file));
+		try
+		{
+			if (compress) os = new GZIPOutputStream(os, BUFFER_SIZE);
+			return new OutputStreamWriter(os, StandardCharsets.UTF_8);
+		}
+		catch (IOException e)
+		{
+			os.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Sorts the edges and writes them to the SIF content, skipping the repeated ones.
+	 * @param edges edge lines without the line ending. The list is sorted in place.
+	 * @throws IOException
+	 */
+	@Override
+	public void writeEdges(List<String> edges) throws IOException
+	{
+		if (!fmtStarted) writeFormatHeader();
+		edges.sort(null);
+
+		String last = null;
+		for (String edge : edges)
+		{
+			if (edge.equals(last)) continue;
+			sif.append(edge).append('\n');
+			last = edge;
+		}
+	}
+
+	/**
+	 * Altered genes are written to the SIF content on their own, to show them when they have no relations.
+	 */
+	@Override
+	public void writeNode(String gene, boolean altered, boolean cancerGene, Collection<GeneFeature> features,
+		String tooltip) throws IOException
+	{
+		if (!fmtStarted) writeFormatHeader();
+
+		if (altered)
+		{
+			sif.append(gene).append('\n');
+
+			// if the altered it is also a cancer gene, it has a thick black border
+			if (cancerGene)
+			{
+				writeFormat(gene, "bordercolor", GeneFeature.DEFAULT_BORDER_COLOR);
+				writeFormat(gene, "borderwidth", "2");
+			}
+
+			// write alterations as info boxes
+			for (GeneFeature feature : features)
+			{
+				writeFormat(gene, "rppasite", feature);
+			}
+		}
+
+		// paint cancer genes in green
+		if (cancerGene) writeFormat(gene, "color", Main.CANCER_GENE_COLOR);
+
+		if (tooltip != null) writeFormat(gene, "tooltip", tooltip);
+	}
+
+	/**
+	 * Renders the SIF and format content of a node, to be written later with {@link #writeNode(String[])}. The
+	 * format lines of the node each start with a line ending, since they follow the format header.
+	 * @param gene the gene
+	 * @param altered whether the gene is altered
+	 * @param cancerGene whether the gene is a cancer gene
+	 * @param features alterations of the gene
+	 * @param tooltip tooltip of the gene, or null
+	 * @return the SIF content and the format content of the node
+	 * @throws IOException
+	 */
+	static String[] renderNode(String gene, boolean altered, boolean cancerGene, Collection<GeneFeature> features,
+		String tooltip) throws IOException
+	{
+		StringWriter sifText = new StringWriter();
+		StringWriter fmtText = new StringWriter();
+
+		NetworkWriter writer = new NetworkWriter(sifText, fmtText, 256);
+		writer.fmtStarted = true;
+		writer.writeNode(gene, altered, cancerGene, features, tooltip);
+		writer.flush();
+
+		return new String[]{sifText.toString(), fmtText.toString()};
+	}
+
+	/**
+	 * Writes a node that is rendered with {@link #renderNode(String, boolean, boolean, Collection, String)}.
+	 * @param node the SIF content and the format content of the node
+	 * @throws IOException
+	 */
+	void writeNode(String[] node) throws IOException
+	{
+		if (!fmtStarted) writeFormatHeader();
+		sif.append(node[0]);
+		fmt.append(node[1]);
+	}
+
+	/**
+	 * Writes a node attribute to the format content.
+	 * @param gene the gene, or "all-nodes"
+	 * @param attribute name of the attribute
+	 * @param value value of the attribute
+	 * @throws IOException
+	 */
+	void writeFormat(String gene, String attribute, Object value) throws IOException
+	{
+		if (fmtStarted) fmt.append('\n');
+		else fmtStarted = true;
+
+		fmt.append("node\t").append(gene).append('\t').append(attribute).append('\t').append(String.valueOf(value));
+	}
+
+	@Override
+	public void finish() throws IOException
+	{
+		if (!fmtStarted) writeFormatHeader();
+		flush();
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		sif.flush();
+		fmt.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			sif.close();
+		}
+		finally
+		{
+			fmt.close();
+		}
+	}
+
+	/**
+	 * A char buffer in front of a writer, which is drained to the writer when full.
+	 */
+	static class CharBuffer
+	{
+		final Writer out;
+		final char[] buf;
+		int pos;
+
+		CharBuffer(Writer out)
+		{
+			this(out, BUFFER_SIZE);
+		}
+
+		CharBuffer(Writer out, int size)
+		{
+			this.out = out;
+			this.buf = new char[size];
+		}
+
+		CharBuffer append(String s) throws IOException
+		{
+			return append(s, 0, s.length());
+		}
+
+		/**
+		 * Appends the part of the string from the start index, inclusive, to the end index, exclusive.
+		 */
+		CharBuffer append(String s, int start, int end) throws IOException
+		{
+			while (start < end)
+			{
+				if (pos == buf.length) drain();
+				int n = Math.min(end - start, buf.length - pos);
+				s.getChars(start, start + n, buf, pos);
+				pos += n;
+				start += n;
+			}
+			return this;
+		}
+
+		CharBuffer append(char c) throws IOException
+		{
+			if (pos == buf.length) drain();
+			buf[pos++] = c;
+			return this;
+		}
+
+		void drain() throws IOException
+		{
+			out.write(buf, 0, pos);
+			pos = 0;
+		}
+
+		void flush() throws IOException
+		{
+			drain();
+			out.flush();
+		}
+
+		void close() throws IOException
+		{
+			try
+			{
+				drain();
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+	}
+}
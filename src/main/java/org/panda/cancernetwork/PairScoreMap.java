@@ -0,0 +1,237 @@
+package org.panda.cancernetwork;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Best scores of unordered gene pairs, where genes are the IDs in a {@link GeneDictionary}. Pairs are packed into long
+ * keys with {@link LongSet#pairKey(int, int)}, the smaller ID first, and kept with the open addressing and linear
+ * probing of {@link LongSet}, so that no object is allocated per pair. Lower scores are better, as in Mutex results.
+ *
+ * @author Ozgun Babur
+ */
+public class PairScoreMap
+{
+	/**
+	 * The marker for empty slots. Gene IDs are non-negative, so no pair key is equal to it.
+	 */
+	private static final long EMPTY = LongSet.EMPTY;
+
+	/**
+	 * Hash table slots for keys. Its length is always a power of two.
+	 */
+	private long[] keys;
+
+	/**
+	 * Scores, parallel to the keys.
+	 */
+	private double[] scores;
+
+	/**
+	 * Number of pairs in the map.
+	 */
+	private int size;
+
+	public PairScoreMap()
+	{
+		this(16);
+	}
+
+	/**
+	 * Constructor with the expected number of pairs.
+	 * @param expectedSize expected number of pairs
+	 */
+	public PairScoreMap(int expectedSize)
+	{
+		int capacity = 16;
+		while (capacity < expectedSize * 2) capacity <<= 1;
+		keys = new long[capacity];
+		scores = new double[capacity];
+		Arrays.fill(keys, EMPTY);
+	}
+
+	/**
+	 * Packs the unordered pair into a key, the smaller ID first.
+	 * @param id1 one gene ID
+	 * @param id2 other gene ID
+	 * @return the pair key
+	 */
+	public static long key(int id1, int id2)
+	{
+		return id1 < id2 ? LongSet.pairKey(id1, id2) : LongSet.pairKey(id2, id1);
+	}
+
+	/**
+	 * Records the score of the pair, keeping the lower one if the pair already has a score.
+	 * @param id1 one gene ID
+	 * @param id2 other gene ID
+	 * @param score the score
+	 */
+	public void putMin(int id1, int id2, double score)
+	{
+		putMin(key(id1, id2), score);
+	}
+
+	/**
+	 * Records the score of the pair key, keeping the lower one if the pair already has a score.
+	 * @param key the pair key
+	 * @param score the score
+	 */
+	public void putMin(long key, double score)
+	{
+		int i = LongSet.probe(keys, key);
+		if (keys[i] == key)
+		{
+			if (score < scores[i]) scores[i] = score;
+			return;
+		}
+
+		keys[i] = key;
+		scores[i] = score;
+		size++;
+
+		if (size * 2 > keys.length) rehash(keys.length << 1);
+	}
+
+	/**
+	 * Merges the scores of the other map into this one, keeping the lower scores.
+	 * @param other the other map
+	 */
+	public void putAllMin(PairScoreMap other)
+	{
+		for (int i = 0; i < other.keys.length; i++)
+		{
+			if (other.keys[i] != EMPTY) putMin(other.keys[i], other.scores[i]);
+		}
+	}
+
+	/**
+	 * Gets the best score of the pair.
+	 * @param id1 one gene ID
+	 * @param id2 other gene ID
+	 * @return the score, or NaN if the pair has no score
+	 */
+	public double get(int id1, int id2)
+	{
+		long key = key(id1, id2);
+		int i = LongSet.probe(keys, key);
+		return keys[i] == key ? scores[i] : Double.NaN;
+	}
+
+	/**
+	 * Number of pairs in the map.
+	 * @return size
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Passes each pair to the consumer, in no particular order.
+	 * @param consumer receives the pairs, the smaller ID first
+	 */
+	public void forEach(PairConsumer consumer)
+	{
+		for (int i = 0; i < keys.length; i++)
+		{
+			if (keys[i] != EMPTY) consumer.accept((int) (keys[i] >>> 32), (int) keys[i], scores[i]);
+		}
+	}
+
+	/**
+	 * Gets the k pairs with the best scores, ordered from the best. Only k pairs are kept in a bounded heap during the
+	 * selection.
+	 * @param k number of pairs
+	 * @return best pairs
+	 */
+	public List<Pair> top(int k)
+	{
+		PriorityQueue<Pair> heap = new PriorityQueue<>(Math.max(1, k), Pair.BEST_FIRST.reversed());
+		forEach((id1, id2, score) ->
+		{
+			if (heap.size() < k) heap.add(new Pair(id1, id2, score));
+			else if (k > 0 && score < heap.peek().score)
+			{
+				heap.poll();
+				heap.add(new Pair(id1, id2, score));
+			}
+		});
+
+		List<Pair> pairs = new ArrayList<>(heap);
+		pairs.sort(Pair.BEST_FIRST);
+		return pairs;
+	}
+
+	private void rehash(int capacity)
+	{
+		long[] oldKeys = keys;
+		double[] oldScores = scores;
+		keys = new long[capacity];
+		scores = new double[capacity];
+		Arrays.fill(keys, EMPTY);
+
+		for (int j = 0; j < oldKeys.length; j++)
+		{
+			if (oldKeys[j] == EMPTY) continue;
+
+			int i = LongSet.probe(keys, oldKeys[j]);
+			keys[i] = oldKeys[j];
+			scores[i] = oldScores[j];
+		}
+	}
+
+	public interface PairConsumer
+	{
+		void accept(int id1, int id2, double score);
+	}
+
+	/**
+	 * A gene pair with its best score.
+	 */
+	public static class Pair
+	{
+		/**
+		 * Orders pairs by score, ties broken by the IDs so that the order is stable.
+		 */
+		static final Comparator<Pair> BEST_FIRST = Comparator.comparingDouble((Pair p) -> p.score)
+			.thenComparingInt(p -> p.id1).thenComparingInt(p -> p.id2);
+
+		public final int id1;
+		public final int id2;
+		public final double score;
+
+		public Pair(int id1, int id2, double score)
+		{
+			this.id1 = id1;
+			this.id2 = id2;
+			this.score = score;
+		}
+
+		/**
+		 * Gets the pair in the form of the keys of {@link MutexReader#convertGroupsToPairBestScores(java.util.Set)}.
+		 * @param dictionary the dictionary of the IDs
+		 * @return "g1 g2", where g1.compareTo(g2) < 0
+		 */
+		public String toGeneKey(GeneDictionary dictionary)
+		{
+			String g1 = dictionary.getGene(id1);
+			String g2 = dictionary.getGene(id2);
+			return g1.compareTo(g2) < 0 ? g1 + " " + g2 : g2 + " " + g1;
+		}
+
+		@Override
+		public String toString()
+		{
+			return toGeneKey(GeneDictionary.SHARED) + "\t" + score;
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package org.panda.cancernetwork;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JFR events of the runs. The event types are defined with jdk.jfr.EventFactory, which is looked up reflectively, so
+ * that the code still compiles and runs on Java 8. Events are emitted only when the JVM has the event factory, which
+ * is Java 12 and later.
+ *
+ * @author Ozgun Babur
+ */
+class RunEvents
+{
+	/**
+	 * Factory of the events of the stages of a run. The duration of an event is the wall time of the stage.
+	 */
+	private static final Object STAGE;
+
+	/**
+	 * Factory of the events of the counts of the elements that a run processed.
+	 */
+	private static final Object COUNT;
+
+	private static Method newEvent;
+	private static Method begin;
+	private static Method end;
+	private static Method shouldCommit;
+	private static Method isEnabled;
+	private static Method set;
+	private static Method commit;
+
+	static
+	{
+		Object stage = null;
+		Object count = null;
+		try
+		{
+			Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+			Class<?> event = Class.forName("jdk.jfr.Event");
+
+			stage = createFactory(factory, "org.panda.cancernetwork.Stage", "Network Generation Stage",
+				field(String.class, "directory", "Directory"),
+				field(String.class, "stage", "Stage"),
+				field(long.class, "cpuTime", "CPU Time", annotation("jdk.jfr.Timespan", "NANOSECONDS")),
+				field(long.class, "allocated", "Allocated", annotation("jdk.jfr.DataAmount", "BYTES")));
+
+			count = createFactory(factory, "org.panda.cancernetwork.Count", "Network Generation Count",
+				field(String.class, "directory", "Directory"),
+				field(String.class, "name", "Name"),
+				field(long.class, "value", "Value"));
+
+			newEvent = factory.getMethod("newEvent");
+			begin = event.getMethod("begin");
+			end = event.getMethod("end");
+			shouldCommit = event.getMethod("shouldCommit");
+			isEnabled = event.getMethod("isEnabled");
+			set = event.getMethod("set", int.class, Object.class);
+			commit = event.getMethod("commit");
+		}
+		catch (ReflectiveOperationException | LinkageError | RuntimeException e)
+		{
+			stage = null;
+			count = null;
+		}
+		STAGE = stage;
+		COUNT = count;
+	}
+
+	/**
+	 * Whether the events can be emitted.
+	 */
+	static boolean isAvailable()
+	{
+		return STAGE != null && COUNT != null;
+	}
+
+	/**
+	 * Creates an annotation element of JFR.
+	 * @param type name of the annotation type
+	 * @param value the value of the annotation
+	 */
+	private static Object annotation(String type, Object value) throws ReflectiveOperationException
+	{
+		Class<?> element = Class.forName("jdk.jfr.AnnotationElement");
+		Constructor<?> constructor = element.getConstructor(Class.class, Object.class);
+		return constructor.newInstance(Class.forName(type), value);
+	}
+
+	/**
+	 * Creates a field of an event type, with its label and the other annotations.
+	 */
+	private static Object field(Class<?> type, String name, String label, Object... annotations)
+		throws ReflectiveOperationException
+	{
+		List<Object> list = new ArrayList<>(Arrays.asList(annotations));
+		list.add(annotation("jdk.jfr.Label", label));
+
+		Class<?> descriptor = Class.forName("jdk.jfr.ValueDescriptor");
+		return descriptor.getConstructor(Class.class, String.class, List.class).newInstance(type, name, list);
+	}
+
+	/**
+	 * Creates the factory of an event type in the category of the tool, without stack traces.
+	 */
+	private static Object createFactory(Class<?> factory, String name, String label, Object... fields)
+		throws ReflectiveOperationException
+	{
+		List<Object> annotations = Arrays.asList(
+			annotation("jdk.jfr.Name", name),
+			annotation("jdk.jfr.Label", label),
+			annotation("jdk.jfr.Category", new String[]{"Cancer Network"}),
+			annotation("jdk.jfr.StackTrace", false));
+
+		return factory.getMethod("create", List.class, List.class)
+			.invoke(null, annotations, Collections.unmodifiableList(Arrays.asList(fields)));
+	}
+
+	/**
+	 * Begins the event of a stage.
+	 * @return the event, to be committed when the stage ends
+	 */
+	static Object beginStage()
+	{
+		try
+		{
+			Object event = newEvent.invoke(STAGE);
+			begin.invoke(event);
+			return event;
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static void commitStage(Object event, String directory, String stage, long cpuTime, long allocated)
+	{
+		try
+		{
+			end.invoke(event);
+			if ((Boolean) shouldCommit.invoke(event))
+			{
+				set(event, directory, stage, cpuTime, allocated);
+				commit.invoke(event);
+			}
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static void count(String directory, String name, long value)
+	{
+		try
+		{
+			Object event = newEvent.invoke(COUNT);
+			if ((Boolean) isEnabled.invoke(event))
+			{
+				set(event, directory, name, value);
+				commit.invoke(event);
+			}
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Sets the fields of the event in the order they are defined.
+	 */
+	private static void set(Object event, Object... values) throws ReflectiveOperationException
+	{
+		for (int i = 0; i < values.length; i++)
+		{
+			set.invoke(event, i, values[i]);
+		}
+	}
+}
@@ -0,0 +1,340 @@
+package org.panda.cancernetwork;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Wall time, CPU time and allocated bytes of the stages of a run, and the counts of the elements it processed. CPU
+ * time and allocations are measured on the thread that runs a stage, and the work of helper threads is added to the
+ * stage explicitly. Stages that run concurrently, such as the loads of the parameters, overlap in wall time. Each
+ * stage and count is also emitted as a JFR event when the JVM supports it.
+ *
+ * @author Ozgun Babur
+ */
+public class RunMetrics
+{
+	/**
+	 * Percentiles that are reported for a batch.
+	 */
+	public static final double[] PERCENTILES = {50, 90, 99, 100};
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Whether the JFR events can be emitted.
+	 */
+	private static final boolean JFR = RunEvents.isAvailable();
+
+	/**
+	 * The directory of the run.
+	 */
+	String directory;
+
+	/**
+	 * Stages in the order they are first started.
+	 */
+	private final Map<String, Stage> stages = new LinkedHashMap<>();
+
+	/**
+	 * Counts in the order they are first recorded.
+	 */
+	private final Map<String, Long> counts = new LinkedHashMap<>();
+
+	/**
+	 * Measurements of a stage, summed over its runs.
+	 */
+	static class Stage
+	{
+		int calls;
+		long wallNanos;
+		long cpuNanos;
+		long allocatedBytes;
+	}
+
+	/**
+	 * @param directory the directory of the run
+	 */
+	public RunMetrics(String directory)
+	{
+		this.directory = directory;
+	}
+
+	/**
+	 * Starts measuring a stage on the current thread. The measurement is recorded when the returned span is closed.
+	 * @param stage name of the stage
+	 * @return the running span
+	 */
+	public Span start(String stage)
+	{
+		return new Span(stage);
+	}
+
+	/**
+	 * Adds the work that other threads did for a stage.
+	 * @param stage name of the stage
+	 * @param cpuNanos CPU time of the other threads
+	 * @param allocatedBytes bytes allocated by the other threads
+	 */
+	public synchronized void addWork(String stage, long cpuNanos, long allocatedBytes)
+	{
+		Stage s = stages.computeIfAbsent(stage, k -> new Stage());
+		s.cpuNanos += cpuNanos;
+		s.allocatedBytes += allocatedBytes;
+	}
+
+	/**
+	 * Records a count. A count that is recorded again is replaced.
+	 * @param name name of the count
+	 * @param value the count
+	 */
+	public void count(String name, long value)
+	{
+		synchronized (this)
+		{
+			counts.put(name, value);
+		}
+		if (JFR) RunEvents.count(directory, name, value);
+	}
+
+	private synchronized void record(String stage, long wallNanos, long cpuNanos, long allocatedBytes)
+	{
+		Stage s = stages.computeIfAbsent(stage, k -> new Stage());
+		s.calls++;
+		s.wallNanos += wallNanos;
+		s.cpuNanos += cpuNanos;
+		s.allocatedBytes += allocatedBytes;
+	}
+
+	/**
+	 * Gets the count with the given name.
+	 * @param name name of the count
+	 * @return the count, or null if it is not recorded
+	 */
+	public synchronized Long getCount(String name)
+	{
+		return counts.get(name);
+	}
+
+	/**
+	 * Gets the measurements and counts as values with flat names, such as "search.wall-ms" and "edges".
+	 * @return values in the order of stages and then counts
+	 */
+	public synchronized Map<String, Double> toValues()
+	{
+		Map<String, Double> values = new LinkedHashMap<>();
+		stages.forEach((name, s) ->
+		{
+			values.put(name + ".wall-ms", s.wallNanos / 1e6);
+			values.put(name + ".cpu-ms", s.cpuNanos / 1e6);
+			values.put(name + ".allocated-bytes", (double) s.allocatedBytes);
+		});
+		counts.forEach((name, value) -> values.put(name, (double) value));
+		return values;
+	}
+
+	/**
+	 * Writes the report as JSON. It is first written to a temporary file next to it, then moved in place.
+	 * @param file the report file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException
+	{
+		File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		try (Writer writer = new BufferedWriter(new FileWriter(temp)))
+		{
+			write(writer);
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Writes the report as JSON.
+	 * @param writer the writer
+	 * @throws IOException
+	 */
+	public synchronized void write(Writer writer) throws IOException
+	{
+		writer.write("{\n\t\"directory\": " + quote(directory) + ",\n\t\"stages\": {");
+
+		String sep = "\n";
+		for (String name : stages.keySet())
+		{
+			Stage s = stages.get(name);
+			writer.write(sep + "\t\t" + quote(name) + ": {\"calls\": " + s.calls +
+				", \"wallMillis\": " + s.wallNanos / 1e6 + ", \"cpuMillis\": " + s.cpuNanos / 1e6 +
+				", \"allocatedBytes\": " + s.allocatedBytes + "}");
+			sep = ",\n";
+		}
+
+		writer.write("\n\t},\n\t\"counts\": {");
+
+		sep = "\n";
+		for (String name : counts.keySet())
+		{
+			writer.write(sep + "\t\t" + quote(name) + ": " + counts.get(name));
+			sep = ",\n";
+		}
+
+		writer.write("\n\t}\n}\n");
+	}
+
+	/**
+	 * Gets the percentiles of each value over the given runs. A value that is missing in a run is not counted for
+	 * that run.
+	 * @param runs metrics of the runs
+	 * @param percentiles percentiles to compute, between 0 and 100
+	 * @return percentiles of each value, in the order the values are first seen
+	 */
+	public static Map<String, double[]> percentiles(Collection<RunMetrics> runs, double... percentiles)
+	{
+		Map<String, List<Double>> values = new LinkedHashMap<>();
+		for (RunMetrics run : runs)
+		{
+			run.toValues().forEach((name, value) -> values.computeIfAbsent(name, k -> new ArrayList<>()).add(value));
+		}
+
+		Map<String, double[]> result = new LinkedHashMap<>();
+		values.forEach((name, list) ->
+		{
+			double[] sorted = list.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+			double[] p = new double[percentiles.length];
+			for (int i = 0; i < p.length; i++)
+			{
+				// nearest rank
+				int rank = (int) Math.ceil(percentiles[i] / 100 * sorted.length);
+				p[i] = sorted[Math.max(0, rank - 1)];
+			}
+			result.put(name, p);
+		});
+		return result;
+	}
+
+	/**
+	 * Writes the percentiles of the runs as JSON.
+	 * @param runs metrics of the runs
+	 * @param writer the writer
+	 * @throws IOException
+	 */
+	public static void writePercentiles(Collection<RunMetrics> runs, Writer writer) throws IOException
+	{
+		Map<String, double[]> percentiles = percentiles(runs, PERCENTILES);
+
+		writer.write("{\n\t\"runs\": " + runs.size() + ",\n\t\"percentiles\": [");
+		for (int i = 0; i < PERCENTILES.length; i++)
+		{
+			writer.write((i > 0 ? ", " : "") + PERCENTILES[i]);
+		}
+		writer.write("],\n\t\"values\": {");
+
+		String sep = "\n";
+		for (String name : percentiles.keySet())
+		{
+			writer.write(sep + "\t\t" + quote(name) + ": [");
+			double[] p = percentiles.get(name);
+			for (int i = 0; i < p.length; i++)
+			{
+				writer.write((i > 0 ? ", " : "") + p[i]);
+			}
+			writer.write("]");
+			sep = ",\n";
+		}
+
+		writer.write("\n\t}\n}\n");
+	}
+
+	/**
+	 * Formats the percentiles of the runs as a table.
+	 * @param runs metrics of the runs
+	 * @return the table, with a header line
+	 */
+	public static String formatPercentiles(Collection<RunMetrics> runs)
+	{
+		StringBuilder sb = new StringBuilder("Metric");
+		for (double p : PERCENTILES)
+		{
+			sb.append("\t").append(p == 100 ? "max" : "p" + (int) p);
+		}
+
+		percentiles(runs, PERCENTILES).forEach((name, p) ->
+		{
+			sb.append("\n").append(name);
+			for (double v : p)
+			{
+				sb.append("\t").append(v == Math.rint(v) ? String.valueOf((long) v) : String.format("%.2f", v));
+			}
+		});
+		return sb.toString();
+	}
+
+	private static String quote(String s)
+	{
+		if (s == null) return "null";
+		return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	/**
+	 * Gets the CPU time of the current thread.
+	 * @return CPU time in nanoseconds, or 0 if it is not supported
+	 */
+	static long cpuTime()
+	{
+		return THREADS.isCurrentThreadCpuTimeSupported() ? Math.max(0, THREADS.getCurrentThreadCpuTime()) : 0;
+	}
+
+	/**
+	 * Gets the bytes allocated by the current thread so far.
+	 * @return allocated bytes, or 0 if it is not supported
+	 */
+	static long allocatedBytes()
+	{
+		if (THREADS instanceof com.sun.management.ThreadMXBean)
+		{
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+			if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+			{
+				return Math.max(0, threads.getThreadAllocatedBytes(Thread.currentThread().getId()));
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Measurement of a stage on the current thread.
+	 */
+	public class Span implements AutoCloseable
+	{
+		private final String stage;
+		private final long wall;
+		private final long cpu;
+		private final long allocated;
+
+		/**
+		 * The JFR event of the stage, or null if JFR is not available.
+		 */
+		private final Object event;
+
+		private Span(String stage)
+		{
+			this.stage = stage;
+			this.event = JFR ? RunEvents.beginStage() : null;
+			this.wall = System.nanoTime();
+			this.cpu = cpuTime();
+			this.allocated = allocatedBytes();
+		}
+
+		@Override
+		public void close()
+		{
+			long wallNanos = System.nanoTime() - wall;
+			long cpuNanos = cpuTime() - cpu;
+			long allocatedBytes = allocatedBytes() - allocated;
+
+			record(stage, wallNanos, cpuNanos, allocatedBytes);
+			if (event != null) RunEvents.commitStage(event, directory, stage, cpuNanos, allocatedBytes);
+		}
+	}
+}
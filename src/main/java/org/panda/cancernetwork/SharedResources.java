@@ -0,0 +1,254 @@
+package org.panda.cancernetwork;
+
+import org.biopax.paxtools.pattern.miner.SIFEnum;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Networks, cancer gene sets and the relations found between them that are shared among the runs in the same JVM.
+ * Each network is loaded once per distinct set of relation types, and each cancer gene resource is loaded once per
+ * distinct resolved parameters. Networks of different keys are loaded concurrently, except the ones that use the
+ * same snapshot or index file, and only the most recently used ones are kept. Loading of cancer genes is serialized,
+ * because the underlying resources are lazily initialized singletons.
+ *
+ * @author Ozgun Babur
+ */
+public class SharedResources
+{
+	/**
+	 * Default number of networks and cancer gene indexes to keep.
+	 */
+	public static final int DEFAULT_NETWORK_CAPACITY = 4;
+
+	/**
+	 * Loaded networks, in the order of access. Key is the relation types with their priorities, the network file,
+	 * and the snapshot file. A network that is still being loaded is waited by the other runs that need it.
+	 */
+	private LinkedHashMap<List<Object>, CompletableFuture<IndexedNetwork>> networks;
+
+	/**
+	 * Maximum number of networks to keep. The least recently used network is dropped beyond that, and it is freed
+	 * when the runs that use it end.
+	 */
+	int networkCapacity;
+
+	/**
+	 * Locks of the snapshot and index files, so that a file is not compiled by two loads at once.
+	 */
+	private Map<String, Object> fileLocks;
+
+	/**
+	 * Loaded cancer gene sets. Key is the resolved parameters of the resource.
+	 */
+	private Map<List<String>, Set<String>> cancerGenes;
+
+	/**
+	 * Relations of the searched genes to the cancer genes. Null if they are not cached.
+	 */
+	private NeighborhoodCache neighborhoodCache;
+
+	public SharedResources()
+	{
+		this(NeighborhoodCache.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor with the capacity of the neighborhood cache.
+	 * @param neighborhoodCacheCapacity maximum number of cached relations, or 0 to not cache them
+	 */
+	public SharedResources(long neighborhoodCacheCapacity)
+	{
+		networkCapacity = DEFAULT_NETWORK_CAPACITY;
+		networks = new LinkedHashMap<>(16, 0.75f, true);
+		fileLocks = new ConcurrentHashMap<>();
+		cancerGenes = new HashMap<>();
+		if (neighborhoodCacheCapacity > 0) neighborhoodCache = new NeighborhoodCache(neighborhoodCacheCapacity);
+	}
+
+	/**
+	 * Gets the cache of the relations of the searched genes to the cancer genes.
+	 * @return the shared cache, or null if relations are not cached
+	 */
+	public NeighborhoodCache getNeighborhoodCache()
+	{
+		return neighborhoodCache;
+	}
+
+	/**
+	 * Gets the indexed network for the given relation types, loading it at the first request.
+	 * @param types types of relations and their priority
+	 * @param snapshotFile the snapshot file, or null to load the network into memory
+	 * @return the shared network, which must not be modified
+	 * @throws IOException
+	 */
+	public IndexedNetwork getNetwork(Map<SIFEnum, Integer> types, String snapshotFile) throws IOException
+	{
+		return getNetwork(types, null, snapshotFile);
+	}
+
+	/**
+	 * Gets the indexed network for the given relation types and local SIF file, loading it at the first request.
+	 * @param types types of relations and their priority
+	 * @param networkFile the local SIF file, or null to use Pathway Commons
+	 * @param snapshotFile the snapshot file, or null to load the network into memory
+	 * @return the shared network, which must not be modified
+	 * @throws IOException
+	 */
+	public IndexedNetwork getNetwork(Map<SIFEnum, Integer> types, String networkFile, String snapshotFile)
+		throws IOException
+	{
+		String sif = canonical(networkFile);
+		String snapshot = canonical(snapshotFile);
+		List<Object> key = Arrays.asList(new HashMap<>(types), sif, snapshot);
+
+		return get(key, snapshot, () -> new NetworkLoader(types, sif).loadIndexed(snapshot));
+	}
+
+	/**
+	 * Gets the index of the neighbors of the given cancer genes, loading or building it at the first request.
+	 * @param types types of relations and their priority
+	 * @param snapshotFile the snapshot file of the whole network, or null to load the network into memory
+	 * @param indexFile the index file
+	 * @param genes the cancer genes
+	 * @return the shared index
+	 * @throws IOException
+	 */
+	public IndexedNetwork getCancerGeneIndex(Map<SIFEnum, Integer> types, String snapshotFile,
+		String indexFile, Set<String> genes) throws IOException
+	{
+		return getCancerGeneIndex(types, null, snapshotFile, indexFile, genes);
+	}
+
+	/**
+	 * Gets the index of the neighbors of the given cancer genes, loading or building it at the first request.
+	 * @param types types of relations and their priority
+	 * @param networkFile the local SIF file, or null to use Pathway Commons
+	 * @param snapshotFile the snapshot file of the whole network, or null to load the network into memory
+	 * @param indexFile the index file
+	 * @param genes the cancer genes
+	 * @return the shared index
+	 * @throws IOException
+	 */
+	public IndexedNetwork getCancerGeneIndex(Map<SIFEnum, Integer> types, String networkFile, String snapshotFile,
+		String indexFile, Set<String> genes) throws IOException
+	{
+		String index = canonical(indexFile);
+		List<Object> key = Arrays.asList(new HashMap<>(types), index, NetworkSnapshot.fingerprint(genes));
+
+		// when the index is to be built, it is built from the shared network
+		return get(key, index, () -> new NetworkLoader(types).loadCancerGeneIndex(index, genes,
+			() -> getNetwork(types, networkFile, snapshotFile)));
+	}
+
+	/**
+	 * Loads a network.
+	 */
+	private interface Load
+	{
+		IndexedNetwork load() throws IOException;
+	}
+
+	/**
+	 * Gets the network of the key, loading it if it is not loaded or being loaded by another run. The load is done
+	 * out of the lock of the map, so that the other networks are served meanwhile.
+	 * @param key key of the network
+	 * @param file the snapshot or index file that the load may write, or null
+	 * @param load loads the network
+	 * @return the shared network
+	 * @throws IOException
+	 */
+	private IndexedNetwork get(List<Object> key, String file, Load load) throws IOException
+	{
+		CompletableFuture<IndexedNetwork> future;
+		boolean loading = false;
+
+		synchronized (networks)
+		{
+			future = networks.get(key);
+			if (future == null)
+			{
+				future = new CompletableFuture<>();
+				networks.put(key, future);
+				loading = true;
+
+				Iterator<CompletableFuture<IndexedNetwork>> iter = networks.values().iterator();
+				while (networks.size() > networkCapacity)
+				{
+					iter.next();
+					iter.remove();
+				}
+			}
+		}
+
+		if (loading)
+		{
+			try
+			{
+				IndexedNetwork network;
+				if (file == null) network = load.load();
+				else synchronized (fileLocks.computeIfAbsent(file, k -> new Object()))
+				{
+					network = load.load();
+				}
+				future.complete(network);
+			}
+			catch (IOException | RuntimeException | Error e)
+			{
+				// a failed load is tried again by the next run
+				synchronized (networks)
+				{
+					networks.remove(key, future);
+				}
+				future.completeExceptionally(e);
+				throw e;
+			}
+		}
+
+		try
+		{
+			return future.join();
+		}
+		catch (CompletionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw new IOException(cause.getMessage(), cause);
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets the cancer genes of the given resource, loading them at the first request.
+	 * @param paramValue the parameter value as in the parameters file
+	 * @param workingDirectory the base directory for the resource files
+	 * @return the shared set of cancer genes, which must not be modified
+	 * @throws IOException
+	 */
+	public Set<String> getCancerGenes(String paramValue, String workingDirectory) throws IOException
+	{
+		String[] param = CancerGeneResource.resolveParameters(paramValue, workingDirectory);
+		List<String> key = Arrays.asList(param);
+
+		synchronized (cancerGenes)
+		{
+			Set<String> genes = cancerGenes.get(key);
+			if (genes == null)
+			{
+				genes = Collections.unmodifiableSet(CancerGeneResource.getCancerGenes(param));
+				cancerGenes.put(key, genes);
+			}
+			return genes;
+		}
+	}
+
+	private static String canonical(String file) throws IOException
+	{
+		return file == null ? null : new File(file).getCanonicalPath();
+	}
+}
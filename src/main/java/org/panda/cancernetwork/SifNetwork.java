@@ -0,0 +1,227 @@
+package org.panda.cancernetwork;
+
+import org.biopax.paxtools.pattern.miner.SIFEnum;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * An indexed network that is loaded from a local SIF file, for running without Pathway Commons. Each line has the
+ * source gene, the relation type and the target gene, separated by tabs. When there are more columns, the last one is
+ * the mediators, so both the extended SIF of Pathway Commons and the sif output of this tool can be loaded. The file
+ * can be gzip or BGZF compressed.
+ *
+ * @author Ozgun Babur
+ */
+public class SifNetwork extends IndexedNetwork
+{
+	/**
+	 * Genes, in sorted order, indexed by their IDs.
+	 */
+	String[] genes;
+
+	Map<String, Integer> idMap;
+
+	/**
+	 * Distinct mediator strings, pointed by the mediator IDs of the adjacency entries.
+	 */
+	String[] mediators;
+
+	/**
+	 * Loads the relations of the given types from the SIF file.
+	 * @param file the SIF file
+	 * @param types types of relations and their priority
+	 * @throws IOException
+	 */
+	public SifNetwork(String file, Map<SIFEnum, Integer> types) throws IOException
+	{
+		Map<SIFEnum, EdgeList> edges = new HashMap<>();
+		types.keySet().forEach(type -> edges.put(type, new EdgeList()));
+
+		// genes get temporary IDs in the order they are seen, which are replaced with the IDs of the sorted order
+		Map<String, Integer> seen = new HashMap<>();
+		List<String> seenGenes = new ArrayList<>();
+		Map<String, Integer> mediatorIDs = new LinkedHashMap<>();
+
+		try (Stream<String> lines = CompressedInput.lines(file))
+		{
+			lines.forEach(line ->
+			{
+				String[] t = line.split("\t");
+				if (t.length < 3) return;
+
+				SIFEnum type = SIFEnum.typeOf(t[1]);
+				if (type == null || !edges.containsKey(type)) return;
+
+				String mediator = t.length > 3 ? t[t.length - 1] : "";
+				int medID = mediatorIDs.computeIfAbsent(mediator, m -> mediatorIDs.size());
+
+				int source = seen.computeIfAbsent(t[0], g -> { seenGenes.add(g); return seenGenes.size() - 1; });
+				int target = seen.computeIfAbsent(t[2], g -> { seenGenes.add(g); return seenGenes.size() - 1; });
+				edges.get(type).add(source, target, medID);
+			});
+		}
+
+		genes = seenGenes.toArray(new String[0]);
+		Arrays.sort(genes);
+		idMap = new HashMap<>(genes.length * 2);
+		for (int i = 0; i < genes.length; i++)
+		{
+			idMap.put(genes[i], i);
+		}
+		mediators = mediatorIDs.keySet().toArray(new String[0]);
+
+		int[] newIDs = new int[genes.length];
+		for (int i = 0; i < newIDs.length; i++)
+		{
+			newIDs[i] = idMap.get(seenGenes.get(i));
+		}
+		for (EdgeList list : edges.values())
+		{
+			for (int i = 0; i < list.size; i++)
+			{
+				list.source[i] = newIDs[list.source[i]];
+				list.target[i] = newIDs[list.target[i]];
+			}
+		}
+
+		// tiers are in the order of priority, and types in a tier are in the order of their declaration
+		int max = types.values().stream().max(Integer::compare).orElse(-1);
+		for (int i = 0; i <= max; i++)
+		{
+			List<Relations> tier = new ArrayList<>();
+			tiers.add(tier);
+
+			for (SIFEnum type : SIFEnum.values())
+			{
+				if (!types.containsKey(type) || types.get(type) != i) continue;
+
+				EdgeList list = edges.get(type);
+				Relations rel = new Relations();
+				rel.type = type.getTag();
+				rel.directed = type.isDirected();
+
+				if (rel.directed)
+				{
+					rel.forward = list.adjacency(genes.length, false, false);
+					rel.backward = list.adjacency(genes.length, true, false);
+				}
+				else rel.forward = list.adjacency(genes.length, false, true);
+
+				tier.add(rel);
+			}
+		}
+	}
+
+	@Override
+	public int getGeneCount()
+	{
+		return genes.length;
+	}
+
+	@Override
+	public int getGeneID(String gene)
+	{
+		Integer id = idMap.get(gene);
+		return id == null ? -1 : id;
+	}
+
+	@Override
+	public String getGene(int id)
+	{
+		return genes[id];
+	}
+
+	@Override
+	public String getMediators(Relations rel, Adjacency adj, int entry, String source, String target)
+	{
+		return mediators[adj.mediatorID(entry)];
+	}
+
+	/**
+	 * Relations of one type as parallel arrays of sources, targets and mediator IDs.
+	 */
+	static class EdgeList
+	{
+		int[] source = new int[16];
+		int[] target = new int[16];
+		int[] mediator = new int[16];
+		int size;
+
+		void add(int s, int t, int m)
+		{
+			if (size == source.length)
+			{
+				source = Arrays.copyOf(source, size * 2);
+				target = Arrays.copyOf(target, size * 2);
+				mediator = Arrays.copyOf(mediator, size * 2);
+			}
+			source[size] = s;
+			target[size] = t;
+			mediator[size] = m;
+			size++;
+		}
+
+		/**
+		 * Builds the CSR adjacency, with the neighbors of each gene sorted by ID. A relation that is repeated keeps
+		 * the mediators of its first occurrence.
+		 * @param geneCount number of genes
+		 * @param backward whether to build the upstream adjacency of directed relations
+		 * @param bothWays whether each relation is an entry of both of its genes, as in undirected relations
+		 */
+		Adjacency adjacency(int geneCount, boolean backward, boolean bothWays)
+		{
+			// entries of each gene, as packed neighbor ID and edge index, so that sorting keeps the first occurrence
+			int[] counts = new int[geneCount + 1];
+			for (int i = 0; i < size; i++)
+			{
+				int from = backward ? target[i] : source[i];
+				int to = backward ? source[i] : target[i];
+				counts[from + 1]++;
+				if (bothWays && from != to) counts[to + 1]++;
+			}
+			for (int i = 0; i < geneCount; i++) counts[i + 1] += counts[i];
+
+			long[] entries = new long[counts[geneCount]];
+			int[] fill = Arrays.copyOf(counts, geneCount);
+			for (int i = 0; i < size; i++)
+			{
+				int from = backward ? target[i] : source[i];
+				int to = backward ? source[i] : target[i];
+				entries[fill[from]++] = ((long) to << 32) | i;
+				if (bothWays && from != to) entries[fill[to]++] = ((long) from << 32) | i;
+			}
+
+			int[] offsets = new int[geneCount + 1];
+			int[] targets = new int[entries.length];
+			int[] medIDs = new int[entries.length];
+			int n = 0;
+
+			for (int g = 0; g < geneCount; g++)
+			{
+				Arrays.sort(entries, counts[g], counts[g + 1]);
+
+				long last = -1;
+				for (int k = counts[g]; k < counts[g + 1]; k++)
+				{
+					int neighbor = (int) (entries[k] >>> 32);
+					if (neighbor == last) continue;
+
+					targets[n] = neighbor;
+					medIDs[n] = mediator[(int) entries[k]];
+					n++;
+					last = neighbor;
+				}
+				offsets[g + 1] = n;
+			}
+
+			Adjacency adj = new Adjacency();
+			adj.offsets = IntBuffer.wrap(offsets);
+			adj.targets = IntBuffer.wrap(Arrays.copyOf(targets, n));
+			adj.mediatorIDs = IntBuffer.wrap(Arrays.copyOf(medIDs, n));
+			return adj;
+		}
+	}
+}
@@ -0,0 +1,385 @@
+package org.panda.cancernetwork;
+
+import org.biopax.paxtools.pattern.miner.SIFEnum;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Generates a synthetic cohort for testing the tool at scale without patient data and without the online resources.
+ * The generated directory has a {@link SyntheticNetwork} as a local SIF file with mediators, a custom cancer gene
+ * list, a tree of Mutex results, and a directory for each patient with its alteration files and parameters file.
+ * <p>
+ * Genes are named by their rank, and both the hubs of the network and the most frequently altered genes are at the
+ * top ranks, as the well studied cancer genes are in real data. Patients rotate through the supported alteration
+ * file formats, so that each loader gets its share of the load. The same seed always generates the same cohort.
+ *
+ * @author Ozgun Babur
+ */
+public class SyntheticCohort
+{
+	/**
+	 * The first argument of {@link Main} that switches to generating a synthetic cohort.
+	 */
+	public static final String GENERATE_FLAG = "--generate";
+
+	/**
+	 * Name of the generated network file.
+	 */
+	public static final String NETWORK_FILENAME = "network.sif";
+
+	/**
+	 * Name of the generated cancer gene list.
+	 */
+	public static final String CANCER_GENES_FILENAME = "cancer-genes.txt";
+
+	/**
+	 * Name of the directory of the generated Mutex results.
+	 */
+	public static final String MUTEX_DIRNAME = "mutex";
+
+	/**
+	 * Name of the directory that contains the patient directories.
+	 */
+	public static final String PATIENTS_DIRNAME = "patients";
+
+	/**
+	 * Generated relation types and their priorities.
+	 */
+	static final Map<SIFEnum, Integer> TYPES = new LinkedHashMap<>();
+
+	static
+	{
+		TYPES.put(SIFEnum.CONTROLS_STATE_CHANGE_OF, 0);
+		TYPES.put(SIFEnum.CONTROLS_EXPRESSION_OF, 1);
+		TYPES.put(SIFEnum.IN_COMPLEX_WITH, 2);
+	}
+
+	long seed = 1;
+
+	int geneCount = 20000;
+
+	/**
+	 * Average number of relations of a gene, for each relation type.
+	 */
+	int degree = 3;
+
+	int patientCount = 100;
+
+	/**
+	 * Number of rows in the mutation file of each patient.
+	 */
+	int mutationsPerPatient = 300;
+
+	/**
+	 * Number of segments in the copy number file of each patient.
+	 */
+	int segmentsPerPatient = 200;
+
+	/**
+	 * Exponent of the distribution of altered genes and of the network hubs over the gene ranks, 1 for uniform.
+	 */
+	double skew = 3;
+
+	int cancerGeneCount = 700;
+
+	/**
+	 * Number of Mutex result directories, spread over cancer type directories.
+	 */
+	int mutexDirCount = 100;
+
+	int groupsPerMutexDir = 200;
+
+	/**
+	 * Gets the name of the gene at the given rank.
+	 * @param rank rank of the gene, starting from 0
+	 * @return the gene name
+	 */
+	static String gene(int rank)
+	{
+		return "G" + rank;
+	}
+
+	/**
+	 * Draws a gene rank, where the top ranks are more likely with the higher skew.
+	 */
+	private int skewedRank(Random r)
+	{
+		return (int) (geneCount * Math.pow(r.nextDouble(), skew));
+	}
+
+	/**
+	 * Generates the cohort into the given directory.
+	 * @param root the directory to generate into
+	 * @throws IOException
+	 */
+	public void generate(File root) throws IOException
+	{
+		root = root.getAbsoluteFile();
+		root.mkdirs();
+
+		File network = new File(root, NETWORK_FILENAME);
+		File cancerGenes = new File(root, CANCER_GENES_FILENAME);
+		File mutex = new File(root, MUTEX_DIRNAME);
+
+		writeNetwork(network);
+		writeCancerGenes(cancerGenes);
+		writeMutexResults(mutex);
+
+		File patients = new File(root, PATIENTS_DIRNAME);
+		for (int i = 0; i < patientCount; i++)
+		{
+			writePatient(new File(patients, String.format("P%05d", i)), i, network, cancerGenes, mutex);
+		}
+	}
+
+	/**
+	 * Writes the network, where the top ranked genes are the hubs of each relation type. Each relation has a distinct
+	 * mediator.
+	 * @param file the SIF file to write
+	 * @throws IOException
+	 */
+	void writeNetwork(File file) throws IOException
+	{
+		List<String[]> tiers = new ArrayList<>();
+		TYPES.forEach((type, priority) ->
+		{
+			while (tiers.size() <= priority) tiers.add(new String[0]);
+			String[] tier = Arrays.copyOf(tiers.get(priority), tiers.get(priority).length + 1);
+			tier[tier.length - 1] = (type.isDirected() ? "" : SyntheticNetwork.UNDIRECTED_PREFIX) + type.getTag();
+			tiers.set(priority, tier);
+		});
+
+		new SyntheticNetwork(seed, geneCount, geneCount * degree, tiers.toArray(new String[0][]), skew).writeSif(file);
+	}
+
+	/**
+	 * Writes the custom cancer gene list, which mostly covers the top ranked genes.
+	 * @param file the gene list to write
+	 * @throws IOException
+	 */
+	void writeCancerGenes(File file) throws IOException
+	{
+		Random r = new Random(seed + 1);
+		Set<Integer> ranks = new TreeSet<>();
+		int count = Math.min(cancerGeneCount, geneCount);
+		while (ranks.size() < count) ranks.add(skewedRank(r));
+
+		try (Writer writer = new BufferedWriter(new FileWriter(file)))
+		{
+			for (Integer rank : ranks)
+			{
+				writer.write(gene(rank) + "\n");
+			}
+		}
+	}
+
+	/**
+	 * Writes a tree of Mutex results, as cancer type directories that contain run directories of ranked groups.
+	 * @param dir the root directory of the results
+	 * @throws IOException
+	 */
+	void writeMutexResults(File dir) throws IOException
+	{
+		Random r = new Random(seed + 2);
+
+		for (int i = 0; i < mutexDirCount; i++)
+		{
+			File runDir = new File(dir, "cancer" + (i % 30) + File.separator + "run" + i);
+			runDir.mkdirs();
+
+			try (Writer writer = new BufferedWriter(new FileWriter(new File(runDir, "ranked-groups.txt"))))
+			{
+				writer.write("Score\tQ-val\tMembers");
+
+				double score = 0;
+				for (int j = 0; j < groupsPerMutexDir; j++)
+				{
+					score += r.nextDouble() / groupsPerMutexDir;
+					writer.write("\n" + score + "\t" + Math.min(1, score * 2));
+
+					int size = 2 + r.nextInt(5);
+					for (int k = 0; k < size; k++)
+					{
+						writer.write("\t" + gene(skewedRank(r)));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the alteration files and the parameters file of a patient. Resource paths are absolute, so that all
+	 * patients share the same network and cancer genes in a batch.
+	 * @param dir the patient directory
+	 * @param index index of the patient, which selects the file formats
+	 * @param network the network file
+	 * @param cancerGenes the cancer gene list
+	 * @param mutex the Mutex results directory
+	 * @throws IOException
+	 */
+	void writePatient(File dir, int index, File network, File cancerGenes, File mutex) throws IOException
+	{
+		dir.mkdirs();
+		Random r = new Random(seed + 3 + index);
+
+		AlterationReader mutations = new AlterationReader[]{AlterationReader.Mutect, AlterationReader.Mutect2,
+			AlterationReader.GeneTrailsMutations}[index % 3];
+		AlterationReader cnv = index % 2 == 0 ? AlterationReader.CNVkit : AlterationReader.GeneTrailsCNV;
+
+		writeMutations(new File(dir, "mutations.txt"), mutations, r);
+		writeCopyNumbers(new File(dir, "cnv.txt"), cnv, r);
+
+		try (Writer writer = new BufferedWriter(new FileWriter(new File(dir, Main.PARAMETERS_FILENAME))))
+		{
+			for (SIFEnum type : TYPES.keySet())
+			{
+				writer.write("use-relation-type = " + type.getTag() + " " + TYPES.get(type) + "\n");
+			}
+			writer.write("network-file = " + network.getPath() + "\n");
+			writer.write("cancer-gene-resource = Custom " + cancerGenes.getPath() + "\n");
+			writer.write("cancer-gene-resource = Mutex " + mutex.getPath() + " 0.05\n");
+			writer.write("gene-alteration-set = " + mutations + " mutations.txt\n");
+			writer.write("gene-alteration-set = " + (cnv == AlterationReader.CNVkit ?
+				"CNVkit cnv.txt 0.5 2" : "GeneTrailsCNV cnv.txt 2") + "\n");
+		}
+	}
+
+	private void writeMutations(File file, AlterationReader reader, Random r) throws IOException
+	{
+		try (Writer writer = new BufferedWriter(new FileWriter(file)))
+		{
+			switch (reader)
+			{
+				case Mutect: writer.write("chr\tpos\tref\talt\tfreq\tgene\tchange"); break;
+				case Mutect2: writer.write("gene\tchr\tpos\tref\talt\tfreq\tdepth\ttype\tchange"); break;
+				default: writer.write(columns(17, "col"));
+			}
+
+			for (int i = 0; i < mutationsPerPatient; i++)
+			{
+				String gene = gene(skewedRank(r));
+				String change = r.nextInt(20) == 0 ? "Splice_Site" : "p.X" + r.nextInt(1000) + "Y";
+				writer.write("\n");
+
+				switch (reader)
+				{
+					case Mutect:
+						writer.write("chr1\t" + i + "\tA\tT\t0.2\t" + gene + "\t" + change);
+						break;
+					case Mutect2:
+						writer.write(gene + "\tchr1\t" + i + "\tA\tT\t0.2\t120\tSNV\t" + change);
+						break;
+					default:
+					{
+						String[] t = columns(17, "v").split("\t");
+						t[7] = change;
+						t[8] = gene;
+						t[16] = change.startsWith("Splice") ? "splice site variant" : "missense variant";
+						writer.write(String.join("\t", t));
+					}
+				}
+			}
+		}
+	}
+
+	private void writeCopyNumbers(File file, AlterationReader reader, Random r) throws IOException
+	{
+		try (Writer writer = new BufferedWriter(new FileWriter(file)))
+		{
+			if (reader == AlterationReader.CNVkit)
+			{
+				writer.write("chromosome\tstart\tend\tgene\tlog2\tdepth\tweight");
+				for (int i = 0; i < segmentsPerPatient; i++)
+				{
+					StringBuilder genes = new StringBuilder();
+					int count = r.nextInt(6);
+					for (int j = 0; j < count; j++)
+					{
+						if (j > 0) genes.append(",");
+						genes.append(gene(skewedRank(r)));
+					}
+
+					writer.write("\nchr1\t" + i * 1000 + "\t" + (i * 1000 + 999) + "\t" +
+						(count == 0 ? "-" : genes) + "\t" + r.nextGaussian() * 1.5 + "\t" + r.nextInt(500) + "\t" +
+						r.nextDouble());
+				}
+			}
+			else
+			{
+				writer.write(columns(8, "col"));
+				for (int i = 0; i < segmentsPerPatient; i++)
+				{
+					String[] t = columns(8, "v").split("\t");
+					t[4] = gene(skewedRank(r));
+					t[7] = String.valueOf(0.1 + r.nextDouble() * 8);
+					writer.write("\n" + String.join("\t", t));
+				}
+			}
+		}
+	}
+
+	private static String columns(int count, String prefix)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++)
+		{
+			if (i > 0) sb.append('\t');
+			sb.append(prefix).append(i);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Generates a cohort. Usage: [--seed N] [--genes N] [--degree N] [--patients N] [--mutations N] [--segments N]
+	 * [--skew X] [--cancer-genes N] [--mutex-dirs N] [--mutex-groups N] dir
+	 * @param args options, followed by the directory to generate into
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		SyntheticCohort cohort = new SyntheticCohort();
+		int i = cohort.readOptions(args);
+
+		if (i != args.length - 1)
+		{
+			System.err.println("Usage: " + GENERATE_FLAG + " [options] dir");
+			System.exit(1);
+		}
+
+		long start = System.currentTimeMillis();
+		cohort.generate(new File(args[i]));
+		System.out.println("Generated " + cohort.patientCount + " patients in " +
+			(System.currentTimeMillis() - start) / 1000 + " seconds: " + args[i]);
+	}
+
+	/**
+	 * Reads the options that are at the start of the arguments.
+	 * @param args the arguments
+	 * @return index of the first argument that is not an option
+	 */
+	int readOptions(String[] args)
+	{
+		int i = 0;
+		while (i < args.length - 1 && args[i].startsWith("--"))
+		{
+			String value = args[i + 1];
+			switch (args[i])
+			{
+				case "--seed": seed = Long.valueOf(value); break;
+				case "--genes": geneCount = Integer.valueOf(value); break;
+				case "--degree": degree = Integer.valueOf(value); break;
+				case "--patients": patientCount = Integer.valueOf(value); break;
+				case "--mutations": mutationsPerPatient = Integer.valueOf(value); break;
+				case "--segments": segmentsPerPatient = Integer.valueOf(value); break;
+				case "--skew": skew = Double.valueOf(value); break;
+				case "--cancer-genes": cancerGeneCount = Integer.valueOf(value); break;
+				case "--mutex-dirs": mutexDirCount = Integer.valueOf(value); break;
+				case "--mutex-groups": groupsPerMutexDir = Integer.valueOf(value); break;
+				default: return i;
+			}
+			i += 2;
+		}
+		return i;
+	}
+}
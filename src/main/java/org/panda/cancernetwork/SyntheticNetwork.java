@@ -0,0 +1,167 @@
+package org.panda.cancernetwork;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.IntBuffer;
+import java.util.*;
+
+/**
+ * A generated indexed network for testing and benchmarking without Pathway Commons data. Sources of relations are
+ * drawn with a skew, so that the top ranked genes become hubs, as in the real networks. Targets first cover every gene
+ * once, so that each gene is in the network. The same seed always generates the same network.
+ *
+ * @author Ozgun Babur
+ */
+public class SyntheticNetwork extends IndexedNetwork
+{
+	/**
+	 * Directed and undirected relation types in four priority tiers, similar to the Pathway Commons networks.
+	 */
+	public static final String[][] MIXED_TIERS = new String[][]{
+		{"controls-state-change-of", "controls-expression-of"},
+		{"undirected:in-complex-with", "controls-transport-of"},
+		{"undirected:interacts-with"},
+		{"controls-production-of", "controls-state-change-of-2"}};
+
+	/**
+	 * Prefix of the undirected relation types in the tiers.
+	 */
+	public static final String UNDIRECTED_PREFIX = "undirected:";
+
+	String[] genes;
+	Map<String, Integer> idMap;
+
+	/**
+	 * Generates a network.
+	 * @param seed random seed
+	 * @param geneCount number of genes, named by rank as G0, G1, ...
+	 * @param edgeCount number of relations drawn for each type, including the repeated ones that are dropped
+	 * @param tierTypes for each tier, the types in it, where an "undirected:" prefix makes a type undirected
+	 * @param skew exponent of the source distribution. 1 is uniform, and higher values concentrate the relations on
+	 * fewer genes.
+	 */
+	public SyntheticNetwork(long seed, int geneCount, int edgeCount, String[][] tierTypes, double skew)
+	{
+		Random r = new Random(seed);
+
+		genes = new String[geneCount];
+		idMap = new HashMap<>();
+		for (int i = 0; i < geneCount; i++)
+		{
+			genes[i] = "G" + i;
+			idMap.put(genes[i], i);
+		}
+
+		for (String[] types : tierTypes)
+		{
+			List<Relations> tier = new ArrayList<>();
+			tiers.add(tier);
+
+			for (String type : types)
+			{
+				Relations rel = new Relations();
+				rel.directed = !type.startsWith(UNDIRECTED_PREFIX);
+				rel.type = rel.directed ? type : type.substring(UNDIRECTED_PREFIX.length());
+
+				Map<String, Set<String>> fw = new HashMap<>();
+				Map<String, Set<String>> bw = new HashMap<>();
+				for (int i = 0; i < edgeCount; i++)
+				{
+					String g1 = genes[(int) (geneCount * Math.pow(r.nextDouble(), skew))];
+					String g2 = genes[i < geneCount ? i : r.nextInt(geneCount)];
+					if (g1.equals(g2)) continue;
+
+					fw.computeIfAbsent(g1, k -> new HashSet<>()).add(g2);
+					if (rel.directed) bw.computeIfAbsent(g2, k -> new HashSet<>()).add(g1);
+					else fw.computeIfAbsent(g2, k -> new HashSet<>()).add(g1);
+				}
+
+				rel.forward = adjacency(fw);
+				if (rel.directed) rel.backward = adjacency(bw);
+				tier.add(rel);
+			}
+		}
+	}
+
+	private Adjacency adjacency(Map<String, Set<String>> map)
+	{
+		int[][] csr = buildAdjacency(Arrays.asList(genes), idMap, map::get);
+		Adjacency adj = new Adjacency();
+		adj.offsets = IntBuffer.wrap(csr[0]);
+		adj.targets = IntBuffer.wrap(csr[1]);
+		return adj;
+	}
+
+	/**
+	 * Picks a random subset of genes. The hub genes are as likely to be picked as any other gene.
+	 * @param seed random seed
+	 * @param count number of genes
+	 * @return the genes
+	 */
+	public Set<String> randomGenes(long seed, int count)
+	{
+		Random r = new Random(seed);
+		Set<String> set = new HashSet<>();
+		while (set.size() < Math.min(count, genes.length)) set.add(genes[r.nextInt(genes.length)]);
+		return set;
+	}
+
+	/**
+	 * Writes the network as a SIF file with mediators, which {@link SifNetwork} loads back. An undirected relation is
+	 * written once.
+	 * @param file the SIF file to write
+	 * @throws IOException
+	 */
+	public void writeSif(File file) throws IOException
+	{
+		try (Writer writer = new BufferedWriter(new FileWriter(file)))
+		{
+			for (List<Relations> tier : tiers)
+			{
+				for (Relations rel : tier)
+				{
+					Adjacency adj = rel.getForward();
+					for (int source = 0; source < genes.length; source++)
+					{
+						for (int entry = adj.begin(source); entry < adj.end(source); entry++)
+						{
+							int target = adj.target(entry);
+							if (!rel.isDirected() && target < source) continue;
+
+							writer.write(genes[source] + "\t" + rel.type + "\t" + genes[target] + "\t" +
+								getMediators(rel, adj, entry, genes[source], genes[target]) + "\n");
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public int getGeneCount()
+	{
+		return genes.length;
+	}
+
+	@Override
+	public int getGeneID(String gene)
+	{
+		Integer id = idMap.get(gene);
+		return id == null ? -1 : id;
+	}
+
+	@Override
+	public String getGene(int id)
+	{
+		return genes[id];
+	}
+
+	@Override
+	public String getMediators(Relations rel, Adjacency adj, int entry, String source, String target)
+	{
+		return "http://synthetic/" + rel.type + "_" + source + "_" + target;
+	}
+}
@@ -0,0 +1,414 @@
+package org.panda.cancernetwork;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Scans tab-separated files for the alteration loaders. The file is memory-mapped and split into line-aligned chunks
+ * that are parsed in parallel. A row does not split its line into fields; it locates and decodes only the columns
+ * that the loader asks for.
+ * <p>
+ * Each chunk is loaded into its own gene alteration set, and the chunk results are merged into the target set in file
+ * order. Compressed files cannot be mapped, so they are decompressed as a stream, and each chunk is scanned while the
+ * following ones are decompressed. The number of decompressed chunks in memory is bounded, so decompression waits
+ * for the scanning when it falls behind.
+ *
+ * @author Ozgun Babur
+ */
+public class TsvScanner
+{
+	/**
+	 * Files smaller than this are not split.
+	 */
+	static final int MIN_CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * Upper limit of a chunk, which has to be mapped in one buffer.
+	 */
+	static final long MAX_CHUNK_SIZE = 1L << 30;
+
+	/**
+	 * Size of the chunks that a compressed file is split into while it is decompressed.
+	 */
+	static final int STREAM_CHUNK_SIZE = 4 << 20;
+
+	/**
+	 * Maximum number of decompressed chunks that are being scanned or are waiting to be merged.
+	 */
+	static final int MAX_STREAM_CHUNKS = 2 * ForkJoinPool.getCommonPoolParallelism();
+
+	/**
+	 * Scans the rows of a file into the given gene alteration set. The file can be gzip or BGZF compressed.
+	 * @param file the tab-separated file
+	 * @param skip number of header lines to skip
+	 * @param gas gene alteration set to load into
+	 * @param handler loads a row
+	 * @throws IOException
+	 */
+	public static void scan(String file, int skip, GeneAlterationSet gas, RowHandler handler) throws IOException
+	{
+		Path path = Paths.get(file);
+
+		if (CompressedInput.isCompressed(path))
+		{
+			scanStream(path, skip, gas, handler, STREAM_CHUNK_SIZE, MAX_STREAM_CHUNKS);
+			return;
+		}
+
+		for (GeneAlterationSet local : scanMapped(path, skip, gas, handler))
+		{
+			gas.addAll(local);
+		}
+	}
+
+	/**
+	 * Memory-maps the file and scans its chunks in parallel.
+	 * @return results of chunks in file order
+	 */
+	private static List<GeneAlterationSet> scanMapped(Path path, int skip, GeneAlterationSet gas, RowHandler handler)
+		throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			long[] bounds = findChunkBounds(channel, size);
+
+			try
+			{
+				return IntStream.range(0, bounds.length - 1).parallel().mapToObj(i ->
+				{
+					try
+					{
+						ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, bounds[i],
+							bounds[i + 1] - bounds[i]);
+						return scanChunk(buf, i == 0 ? skip : 0, gas, handler);
+					}
+					catch (IOException e)
+					{
+						throw new RuntimeException(e);
+					}
+				}).collect(Collectors.toList());
+			}
+			catch (RuntimeException e)
+			{
+				if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Decompresses the file into line-aligned chunks, and scans each chunk in parallel while the next one is being
+	 * decompressed. When the given number of chunks are in flight, the oldest one is waited for and merged into the
+	 * target set before the next chunk is decompressed.
+	 * @param chunkSize initial size of a chunk
+	 * @param maxChunks maximum number of chunks in flight
+	 */
+	static void scanStream(Path path, int skip, GeneAlterationSet gas, RowHandler handler, int chunkSize,
+		int maxChunks) throws IOException
+	{
+		Deque<ForkJoinTask<GeneAlterationSet>> tasks = new ArrayDeque<>();
+		boolean first = true;
+
+		try (InputStream in = CompressedInput.open(path))
+		{
+			byte[] buf = new byte[chunkSize];
+			int length = 0;
+			boolean eof = false;
+
+			while (!eof)
+			{
+				int r = in.read(buf, length, buf.length - length);
+				if (r < 0) eof = true;
+				else length += r;
+
+				if (length < buf.length && !eof) continue;
+
+				// the chunk ends with the last complete line, the rest moves to the next chunk
+				int end = length;
+				if (!eof)
+				{
+					while (end > 0 && buf[end - 1] != '\n') end--;
+
+					if (end == 0)
+					{
+						// a line longer than the chunk
+						buf = Arrays.copyOf(buf, buf.length * 2);
+						continue;
+					}
+				}
+
+				if (end > 0)
+				{
+					// the merged chunks are released, so that only the chunks in flight are kept in memory
+					if (tasks.size() >= maxChunks) gas.addAll(tasks.poll().join());
+
+					ByteBuffer chunk = ByteBuffer.wrap(buf, 0, end);
+					int chunkSkip = first ? skip : 0;
+					first = false;
+					tasks.add(ForkJoinPool.commonPool().submit(() -> scanChunk(chunk, chunkSkip, gas, handler)));
+				}
+
+				if (!eof)
+				{
+					byte[] next = new byte[Math.max(chunkSize, length - end)];
+					System.arraycopy(buf, end, next, 0, length - end);
+					length -= end;
+					buf = next;
+				}
+			}
+		}
+
+		while (!tasks.isEmpty())
+		{
+			gas.addAll(tasks.poll().join());
+		}
+	}
+
+	/**
+	 * Splits the file into chunks that start at the beginning of a line.
+	 * @return chunk boundaries, including the start and the end of the file
+	 */
+	private static long[] findChunkBounds(FileChannel channel, long size) throws IOException
+	{
+		int chunks = (int) Math.max(size / MAX_CHUNK_SIZE + 1,
+			Math.min(size / MIN_CHUNK_SIZE, ForkJoinPool.getCommonPoolParallelism() * 4L));
+		chunks = Math.max(chunks, 1);
+
+		List<Long> bounds = new ArrayList<>();
+		bounds.add(0L);
+
+		ByteBuffer window = ByteBuffer.allocate(8192);
+
+		for (int i = 1; i < chunks; i++)
+		{
+			long pos = Math.max(size * i / chunks, bounds.get(bounds.size() - 1));
+
+			// move to the start of the next line
+			long lineStart = -1;
+			while (lineStart < 0 && pos < size)
+			{
+				window.clear();
+				int n = channel.read(window, pos);
+				if (n <= 0) break;
+				for (int j = 0; j < n; j++)
+				{
+					if (window.get(j) == '\n')
+					{
+						lineStart = pos + j + 1;
+						break;
+					}
+				}
+				pos += n;
+			}
+
+			if (lineStart < 0 || lineStart >= size) break;
+			if (lineStart > bounds.get(bounds.size() - 1)) bounds.add(lineStart);
+		}
+		bounds.add(size);
+
+		return bounds.stream().mapToLong(Long::longValue).toArray();
+	}
+
+	/**
+	 * Scans the lines of a chunk into a new gene alteration set with the filter of the given set.
+	 */
+	private static GeneAlterationSet scanChunk(ByteBuffer buf, int skip, GeneAlterationSet gas, RowHandler handler)
+	{
+		GeneAlterationSet local = new GeneAlterationSet();
+		local.setGeneFilter(gas.geneFilter);
+
+		Row row = new Row(buf);
+		int limit = buf.limit();
+		int start = 0;
+
+		while (start < limit)
+		{
+			int end = start;
+			while (end < limit && buf.get(end) != '\n') end++;
+
+			int next = end + 1;
+			if (end > start && buf.get(end - 1) == '\r') end--;
+
+			if (skip > 0) skip--;
+			else if (end > start)
+			{
+				row.set(start, end);
+				handler.load(row, local);
+			}
+
+			start = next;
+		}
+		return local;
+	}
+
+	/**
+	 * A line of the file. Columns are located on demand, and are decoded only when asked.
+	 */
+	public static class Row
+	{
+		private ByteBuffer buf;
+		private int start;
+		private int end;
+
+		/**
+		 * Start offsets of the columns located so far.
+		 */
+		private int[] colStart = new int[32];
+
+		/**
+		 * Number of columns located so far.
+		 */
+		private int located;
+
+		/**
+		 * Range of the last located column.
+		 */
+		private int fieldStart;
+		private int fieldEnd;
+
+		private byte[] bytes = new byte[256];
+
+		Row(ByteBuffer buf)
+		{
+			this.buf = buf;
+		}
+
+		void set(int start, int end)
+		{
+			this.start = start;
+			this.end = end;
+			colStart[0] = start;
+			located = 1;
+		}
+
+		/**
+		 * Locates the start of the given column.
+		 * @return start offset, or -1 if the line has fewer columns
+		 */
+		private int locate(int col)
+		{
+			while (located <= col)
+			{
+				int p = colStart[located - 1];
+				if (p < 0) return -1;
+
+				while (p < end && buf.get(p) != '\t') p++;
+
+				if (located == colStart.length)
+				{
+					int[] grown = new int[colStart.length * 2];
+					System.arraycopy(colStart, 0, grown, 0, colStart.length);
+					colStart = grown;
+				}
+				colStart[located++] = p < end ? p + 1 : -1;
+			}
+			return colStart[col];
+		}
+
+		/**
+		 * Sets the range of the given column.
+		 */
+		private void field(int col)
+		{
+			fieldStart = locate(col);
+			if (fieldStart < 0)
+			{
+				throw new IllegalArgumentException("Line has fewer than " + (col + 1) + " columns: " + line());
+			}
+
+			fieldEnd = fieldStart;
+			while (fieldEnd < end && buf.get(fieldEnd) != '\t') fieldEnd++;
+		}
+
+		/**
+		 * Decodes the given column.
+		 * @param col zero-based column index
+		 * @return the column value
+		 */
+		public String get(int col)
+		{
+			field(col);
+			return decode(fieldStart, fieldEnd);
+		}
+
+		/**
+		 * Parses the given column as a double.
+		 * @param col zero-based column index
+		 * @return the value
+		 */
+		public double getDouble(int col)
+		{
+			return Double.parseDouble(get(col).trim());
+		}
+
+		/**
+		 * Checks if the column is equal to the given ASCII text, without decoding the column.
+		 */
+		public boolean equals(int col, String text)
+		{
+			field(col);
+			return fieldEnd - fieldStart == text.length() && regionMatches(fieldStart, text);
+		}
+
+		/**
+		 * Checks if the column starts with the given ASCII text, without decoding the column.
+		 */
+		public boolean startsWith(int col, String text)
+		{
+			field(col);
+			return fieldEnd - fieldStart >= text.length() && regionMatches(fieldStart, text);
+		}
+
+		private boolean regionMatches(int offset, String text)
+		{
+			for (int i = 0; i < text.length(); i++)
+			{
+				if (buf.get(offset + i) != (byte) text.charAt(i)) return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Gets the whole line, for error messages.
+		 */
+		public String line()
+		{
+			return decode(start, end);
+		}
+
+		private String decode(int s, int e)
+		{
+			int len = e - s;
+			if (bytes.length < len) bytes = new byte[Math.max(len, bytes.length * 2)];
+			for (int i = 0; i < len; i++)
+			{
+				bytes[i] = buf.get(s + i);
+			}
+			return new String(bytes, 0, len, StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Loads the gene alterations in a row.
+	 */
+	public interface RowHandler
+	{
+		void load(Row row, GeneAlterationSet gas);
+	}
+}
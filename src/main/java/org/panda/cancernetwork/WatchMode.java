@@ -0,0 +1,536 @@
+package org.panda.cancernetwork;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keeps the networks of patient directories up to date as their alteration files change. The loaded state of each
+ * directory is kept in memory: its parsed alteration files, the relations of each altered gene, and the rendered
+ * nodes. When an alteration file changes, only that file is parsed again, and only the relations and the nodes of
+ * the genes whose alterations changed are updated. A deleted alteration file is taken as empty. A change in the
+ * parameters file loads the directory again, and the previous state is kept if the new one fails to load. The
+ * output files are written to temporary files, then moved in place, so readers never see a partial network.
+ *
+ * @author Ozgun Babur
+ */
+public class WatchMode
+{
+	/**
+	 * The first argument of {@link Main} that switches to the watch mode.
+	 */
+	public static final String WATCH_FLAG = "--watch";
+
+	/**
+	 * Time to wait for more changes after a change, in milliseconds. A file is often written in several steps, and
+	 * several files can be updated together.
+	 */
+	static final long SETTLE_MILLIS = 200;
+
+	/**
+	 * Resources shared among the directories.
+	 */
+	SharedResources resources;
+
+	/**
+	 * States of the watched directories.
+	 */
+	Map<String, DirectoryState> states;
+
+	/**
+	 * Watched files, mapped to the states that use them.
+	 */
+	Map<Path, Set<DirectoryState>> watchedFiles;
+
+	WatchService watcher;
+
+	/**
+	 * Watched directories, mapped to their watch keys.
+	 */
+	Map<Path, WatchKey> keys;
+
+	public WatchMode() throws IOException
+	{
+		resources = new SharedResources();
+		states = new TreeMap<>();
+		watchedFiles = new HashMap<>();
+		watcher = FileSystems.getDefault().newWatchService();
+		keys = new HashMap<>();
+	}
+
+	/**
+	 * Loads the directory, writes its network, and starts watching its files.
+	 * @param dir the patient directory
+	 * @throws IOException
+	 */
+	public void add(String dir) throws IOException
+	{
+		DirectoryState state = new DirectoryState(dir, resources);
+		state.write();
+		register(state);
+	}
+
+	/**
+	 * Starts watching the files of the loaded directory.
+	 */
+	private void register(DirectoryState state) throws IOException
+	{
+		states.put(state.directory, state);
+
+		for (Path file : state.getWatchedFiles())
+		{
+			watchedFiles.computeIfAbsent(file, k -> new HashSet<>()).add(state);
+
+			Path parent = file.getParent();
+			if (!keys.containsKey(parent))
+			{
+				keys.put(parent, parent.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE));
+			}
+		}
+	}
+
+	private void remove(DirectoryState state)
+	{
+		states.remove(state.directory);
+		watchedFiles.values().forEach(set -> set.remove(state));
+	}
+
+	/**
+	 * Waits for the changes and updates the affected directories, until interrupted.
+	 * @throws InterruptedException
+	 */
+	public void watch() throws InterruptedException
+	{
+		while (true)
+		{
+			Set<Path> changed = new LinkedHashSet<>();
+			WatchKey key = watcher.take();
+			do
+			{
+				collect(key, changed);
+			}
+			while ((key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+			update(changed);
+		}
+	}
+
+	private void collect(WatchKey key, Set<Path> changed)
+	{
+		Path dir = (Path) key.watchable();
+		for (WatchEvent<?> event : key.pollEvents())
+		{
+			if (event.kind() == OVERFLOW) continue;
+			Path file = dir.resolve((Path) event.context());
+			if (watchedFiles.containsKey(file)) changed.add(file);
+		}
+		key.reset();
+	}
+
+	/**
+	 * Updates the directories that use the changed files.
+	 * @param changed the changed files
+	 */
+	void update(Set<Path> changed)
+	{
+		Map<DirectoryState, Set<Path>> affected = new LinkedHashMap<>();
+		for (Path file : changed)
+		{
+			for (DirectoryState state : watchedFiles.getOrDefault(file, Collections.emptySet()))
+			{
+				affected.computeIfAbsent(state, k -> new LinkedHashSet<>()).add(file);
+			}
+		}
+
+		affected.forEach((state, files) ->
+		{
+			long start = System.currentTimeMillis();
+			try
+			{
+				if (files.contains(state.getParametersFile()))
+				{
+					// the current state stays in use until the directory loads again
+					DirectoryState reloaded = new DirectoryState(state.directory, resources);
+					reloaded.write();
+					remove(state);
+					register(reloaded);
+					System.out.println("Reloaded " + state.directory + " in " +
+						(System.currentTimeMillis() - start) + " ms");
+				}
+				else
+				{
+					Set<String> genes = state.update(files);
+					state.write();
+					System.out.println("Updated " + state.directory + ", " + genes.size() + " genes changed in " +
+						(System.currentTimeMillis() - start) + " ms");
+				}
+			}
+			catch (Exception | AssertionError e)
+			{
+				System.err.println("Failed: " + state.directory + ": " + e);
+			}
+		});
+	}
+
+	/**
+	 * Loaded state of a patient directory.
+	 */
+	static class DirectoryState
+	{
+		String directory;
+
+		/**
+		 * The run of the directory, which keeps the parameters, the resources and the alterations.
+		 */
+		Main main;
+
+		IndexedNetwork network;
+
+		/**
+		 * Alteration files, mapped to the entries of the gene-alteration-set parameters that read them.
+		 */
+		Map<Path, List<Map.Entry<String, GeneAlterationSet>>> sourceFiles;
+
+		/**
+		 * Relations of each altered gene.
+		 */
+		Map<String, List<String>> edgesOf;
+
+		/**
+		 * Relations in the network, mapped to the number of altered genes that have them.
+		 */
+		TreeMap<String, Integer> edges;
+
+		/**
+		 * Number of relations of the altered genes that each gene is in.
+		 */
+		Map<String, Integer> edgeGenes;
+
+		/**
+		 * Genes in the network in sorted order, mapped to their rendered SIF and format content. The nodes are not
+		 * rendered, hence mapped to null, for the JSON output.
+		 */
+		TreeMap<String, String[]> nodes;
+
+		/**
+		 * Loads the directory.
+		 * @param directory the patient directory
+		 * @param resources resources shared with the other directories
+		 * @throws IOException
+		 */
+		DirectoryState(String directory, SharedResources resources) throws IOException
+		{
+			this.directory = directory;
+
+			main = new Main(directory, resources);
+			main.alterationSources = new ArrayList<>();
+			main.readParameters(directory);
+			network = main.loadNetwork();
+
+			sourceFiles = new HashMap<>();
+			for (Map.Entry<String, GeneAlterationSet> source : main.alterationSources)
+			{
+				sourceFiles.computeIfAbsent(sourceFile(source.getKey()), k -> new ArrayList<>()).add(source);
+			}
+
+			edgesOf = new HashMap<>();
+			edges = new TreeMap<>();
+			edgeGenes = new HashMap<>();
+			nodes = new TreeMap<>();
+
+			Set<String> touched = new HashSet<>(main.gas.getGenes());
+			addEdges(main.gas.getGenes(), touched);
+			updateNodes(touched);
+		}
+
+		Path getParametersFile()
+		{
+			return Paths.get(directory, Main.PARAMETERS_FILENAME).toAbsolutePath().normalize();
+		}
+
+		/**
+		 * Gets the files whose changes update this directory, which are the parameters file and the alteration files.
+		 */
+		Set<Path> getWatchedFiles()
+		{
+			Set<Path> files = new HashSet<>(sourceFiles.keySet());
+			files.add(getParametersFile());
+			return files;
+		}
+
+		/**
+		 * Resolves the data file of a gene-alteration-set parameter value, as the alteration reader does.
+		 */
+		private Path sourceFile(String value)
+		{
+			String file = value.trim().split("\\s+")[1];
+			Path path = file.startsWith("/") ? Paths.get(file) : Paths.get(directory, file);
+			return path.toAbsolutePath().normalize();
+		}
+
+		/**
+		 * Parses the changed alteration file again, and updates the relations and the nodes of the genes whose
+		 * alterations changed.
+		 * @param file the changed file
+		 * @return the genes whose alterations changed
+		 * @throws IOException
+		 * @see #update(Collection)
+		 */
+		Set<String> update(Path file) throws IOException
+		{
+			return update(Collections.singleton(file));
+		}
+
+		/**
+		 * Parses the changed alteration files again for each parameter that reads them, and updates the relations and
+		 * the nodes of the genes whose alterations changed. A deleted file has no alterations. The state is changed
+		 * only after all files are parsed, so it stays as it is if any of them fails to parse.
+		 * @param files the changed files
+		 * @return the genes whose alterations changed
+		 * @throws IOException
+		 */
+		Set<String> update(Collection<Path> files) throws IOException
+		{
+			// entries of a repeated parameter are equal, hence they are told apart by identity
+			Map<Map.Entry<String, GeneAlterationSet>, GeneAlterationSet> parsed = new IdentityHashMap<>();
+
+			for (Path file : files)
+			{
+				for (Map.Entry<String, GeneAlterationSet> entry : sourceFiles.get(file))
+				{
+					GeneAlterationSet source = new GeneAlterationSet();
+					if (main.alteredGenesInNetworkOnly && !main.sifTypes.isEmpty())
+					{
+						Predicate<String> filter = gene ->
+							main.cancerGenes.contains(gene) || network.getGeneID(gene) >= 0;
+						source.setGeneFilter(filter);
+					}
+					if (Files.exists(file))
+					{
+						AlterationReader.loadAlterations(entry.getKey(), source, directory, main.alterationCache);
+					}
+					parsed.put(entry, source);
+				}
+			}
+
+			parsed.forEach(Map.Entry::setValue);
+
+			GeneAlterationSet gas = new GeneAlterationSet();
+			main.alterationSources.forEach(entry -> gas.addAll(entry.getValue()));
+
+			Set<String> changed = main.gas.diff(gas);
+			GeneAlterationSet old = main.gas;
+			main.gas = gas;
+
+			Set<String> touched = new HashSet<>(changed);
+			Set<String> added = new HashSet<>();
+			for (String gene : changed)
+			{
+				boolean was = old.getGeneFeatures(gene) != null;
+				boolean is = gas.getGeneFeatures(gene) != null;
+				if (was && !is) removeEdges(gene, touched);
+				else if (!was && is) added.add(gene);
+			}
+			addEdges(added, touched);
+			updateNodes(touched);
+
+			return changed;
+		}
+
+		/**
+		 * Searches and adds the relations of the genes.
+		 * @param genes newly altered genes
+		 * @param touched collects the genes that enter the network
+		 */
+		private void addEdges(Collection<String> genes, Set<String> touched)
+		{
+			main.searchEdgesByGene(genes, main.cancerGenes, network).forEach((gene, list) ->
+			{
+				edgesOf.put(gene, list);
+				for (String edge : list)
+				{
+					edges.merge(edge, 1, Integer::sum);
+					for (String g : endsOf(edge))
+					{
+						if (edgeGenes.merge(g, 1, Integer::sum) == 1) touched.add(g);
+					}
+				}
+			});
+		}
+
+		/**
+		 * Removes the relations of the gene.
+		 * @param gene the gene that is no longer altered
+		 * @param touched collects the genes that leave the network
+		 */
+		private void removeEdges(String gene, Set<String> touched)
+		{
+			List<String> list = edgesOf.remove(gene);
+			if (list == null) return;
+
+			for (String edge : list)
+			{
+				edges.computeIfPresent(edge, (e, count) -> count == 1 ? null : count - 1);
+				for (String g : endsOf(edge))
+				{
+					if (edgeGenes.computeIfPresent(g, (k, count) -> count == 1 ? null : count - 1) == null)
+					{
+						touched.add(g);
+					}
+				}
+			}
+		}
+
+		private static String[] endsOf(String edge)
+		{
+			String[] t = edge.split("\t", 4);
+			return new String[]{t[0], t[2]};
+		}
+
+		/**
+		 * Renders the nodes of the given genes again, adding the ones that enter the network and removing the ones
+		 * that leave it.
+		 */
+		private void updateNodes(Set<String> genes)
+		{
+			for (String gene : genes)
+			{
+				Set<GeneFeature> features = main.gas.getGeneFeatures(gene);
+				boolean altered = features != null;
+
+				if (!altered && !edgeGenes.containsKey(gene))
+				{
+					nodes.remove(gene);
+					continue;
+				}
+
+				String[] node = null;
+				if (!main.jsonOutput)
+				{
+					try
+					{
+						node = NetworkWriter.renderNode(gene, altered, main.cancerGenes.contains(gene),
+							altered ? features : Collections.emptySet(), tooltip(gene));
+					}
+					catch (IOException e)
+					{
+						// writing to a string does not fail
+						throw new AssertionError(e);
+					}
+				}
+				nodes.put(gene, node);
+			}
+		}
+
+		private String tooltip(String gene)
+		{
+			return main.tooltips == null ? null : main.tooltips.get(gene);
+		}
+
+		/**
+		 * Writes the output files, each to a temporary file that is then moved in place.
+		 * @throws IOException
+		 */
+		void write() throws IOException
+		{
+			String fileNoExt = directory + File.separator +
+				(main.outputFile == null ? Main.DEFAULT_OUTPUT_FILENAME : main.outputFile);
+			List<String> edgeList = new ArrayList<>(edges.keySet());
+
+			if (main.jsonOutput)
+			{
+				String json = fileNoExt + JsonNetworkWriter.EXTENSION;
+				try (JsonNetworkWriter writer = new JsonNetworkWriter(openTemp(json)))
+				{
+					writer.writeEdges(edgeList);
+					for (String gene : nodes.keySet())
+					{
+						Set<GeneFeature> features = main.gas.getGeneFeatures(gene);
+						writer.writeNode(gene, features != null, main.cancerGenes.contains(gene),
+							features != null ? features : Collections.emptySet(), tooltip(gene));
+					}
+					writer.finish();
+				}
+				moveTemp(json);
+			}
+			else
+			{
+				String sif = fileNoExt + ".sif";
+				String fmt = fileNoExt + ".format";
+
+				try (NetworkWriter writer = new NetworkWriter(openTemp(sif), openTemp(fmt)))
+				{
+					writer.writeEdges(edgeList);
+					for (String[] node : nodes.values())
+					{
+						writer.writeNode(node);
+					}
+					writer.finish();
+				}
+				moveTemp(sif);
+				moveTemp(fmt);
+			}
+		}
+
+		private Writer openTemp(String file) throws IOException
+		{
+			return NetworkWriter.openFile(file + ".tmp", main.compressOutput);
+		}
+
+		private void moveTemp(String file) throws IOException
+		{
+			String ext = main.compressOutput ? NetworkWriter.COMPRESSED_EXTENSION : "";
+			Path temp = Paths.get(file + ".tmp" + ext);
+			Path target = Paths.get(file + ext);
+
+			try
+			{
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (AtomicMoveNotSupportedException e)
+			{
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+	}
+
+	/**
+	 * Runs the watch mode. Usage: (dir | glob | @dirs-file)...
+	 * @param args patient directories
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		List<String> dirs = BatchRunner.expand(Arrays.asList(args));
+		WatchMode mode = new WatchMode();
+
+		for (String dir : dirs)
+		{
+			try
+			{
+				mode.add(dir);
+			}
+			catch (Exception | AssertionError e)
+			{
+				System.err.println("Failed: " + dir + ": " + e);
+			}
+		}
+
+		System.out.println("Watching " + mode.states.size() + " directories.");
+
+		try
+		{
+			mode.watch();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package org.panda.cancernetwork;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * @author Ozgun Babur
+ */
+public class AlterationCacheTest
+{
+	@Test
+	public void testLoad() throws Exception
+	{
+		File dir = Files.createTempDirectory("alterations").toFile();
+		File data = new File(dir, "mutect.txt");
+		File cacheDir = new File(dir, "cache");
+
+		Files.write(data.toPath(), "h\th\th\th\th\th\th\th\th\n0\t1\t2\t3\t4\tTP53\tSplice_Site\t7\t8\n".getBytes());
+
+		AlterationCache cache = new AlterationCache(cacheDir.getPath());
+
+		GeneAlterationSet parsed = new GeneAlterationSet();
+		AlterationReader.loadAlterations("Mutect mutect.txt", parsed, dir.getPath(), cache);
+		Assert.assertEquals(1, cacheDir.list().length);
+
+		GeneAlterationSet cached = new GeneAlterationSet();
+		AlterationReader.loadAlterations("Mutect mutect.txt", cached, dir.getPath(), cache);
+		Assert.assertEquals(parsed.getGenes(), cached.getGenes());
+		Assert.assertEquals(parsed.getGeneFeatures("TP53").iterator().next().toString(),
+			cached.getGeneFeatures("TP53").iterator().next().toString());
+
+		// same size and modification time, but different content
+		FileTime time = Files.getLastModifiedTime(data.toPath());
+		Files.write(data.toPath(), "h\th\th\th\th\th\th\th\th\n0\t1\t2\t3\t4\tKRAS\tSplice_Site\t7\t8\n".getBytes());
+		Files.setLastModifiedTime(data.toPath(), time);
+
+		GeneAlterationSet changed = new GeneAlterationSet();
+		AlterationReader.loadAlterations("Mutect mutect.txt", changed, dir.getPath(), cache);
+		Assert.assertEquals(new HashSet<>(Arrays.asList("KRAS")), changed.getGenes());
+
+		// different loader parameters have their own cache
+		AlterationReader.loadAlterations("Mutect2 mutect.txt", new GeneAlterationSet(), dir.getPath(), cache);
+		Assert.assertEquals(2, cacheDir.list().length);
+
+		for (File file : cacheDir.listFiles()) file.delete();
+		cacheDir.delete();
+		data.delete();
+		dir.delete();
+	}
+}
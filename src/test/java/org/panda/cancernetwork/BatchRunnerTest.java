@@ -0,0 +1,46 @@
+package org.panda.cancernetwork;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Ozgun Babur
+ */
+public class BatchRunnerTest
+{
+	@Test
+	public void testExpand() throws Exception
+	{
+		File root = Files.createTempDirectory("batch").toFile();
+		File withParameters = new File(root, "P1");
+		File without = new File(root, "P2");
+		withParameters.mkdir();
+		without.mkdir();
+		Files.write(new File(withParameters, Main.PARAMETERS_FILENAME).toPath(), Collections.singletonList(""));
+
+		File list = new File(root, "dirs.txt");
+		Files.write(list.toPath(), Collections.singletonList(without.getPath()));
+
+		// a glob keeps only the patient directories, explicit directories are all kept
+		Assert.assertEquals(Collections.singletonList(withParameters.getPath()),
+			BatchRunner.expand(Collections.singletonList(root.getPath() + File.separator + "P*")));
+		Assert.assertEquals(Collections.singletonList(without.getPath()),
+			BatchRunner.expand(Collections.singletonList(without.getPath())));
+		Assert.assertEquals(Arrays.asList(withParameters.getPath(), without.getPath()),
+			BatchRunner.expand(Arrays.asList(withParameters.getPath(), "@" + list.getPath())));
+
+		// the directory without parameters is a failure
+		List<String> dirs = Collections.singletonList(without.getPath());
+		Map<String, Throwable> failures = new BatchRunner(1).run(dirs);
+		Assert.assertEquals(dirs, Arrays.asList(failures.keySet().toArray()));
+		Assert.assertTrue(failures.get(without.getPath()) instanceof FileNotFoundException);
+	}
+}
@@ -0,0 +1,35 @@
+package org.panda.cancernetwork;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.panda.utility.ValToColor;
+
+import java.awt.*;
+
+/**
+ * @author Ozgun Babur
+ */
+public class ColorTableTest
+{
+	@Test
+	public void testGetColorInString() throws Exception
+	{
+		double saturation = 1.5;
+		ValToColor vtc = new ValToColor(new double[]{-saturation, 0, saturation},
+			new Color[]{new Color(100, 100, 255), Color.WHITE, new Color(255, 100, 100)});
+
+		ColorTable table = ColorTable.get(saturation);
+		Assert.assertSame(table, ColorTable.get(saturation));
+
+		for (double v = -3; v <= 3; v += 0.001)
+		{
+			String[] exact = vtc.getColorInString(v).split(" ");
+			String[] quantized = table.getColorInString(v).split(" ");
+
+			for (int i = 0; i < 3; i++)
+			{
+				Assert.assertTrue(Math.abs(Integer.valueOf(exact[i]) - Integer.valueOf(quantized[i])) <= 1);
+			}
+		}
+	}
+}
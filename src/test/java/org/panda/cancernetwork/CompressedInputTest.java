@@ -0,0 +1,119 @@
+package org.panda.cancernetwork;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author Ozgun Babur
+ */
+public class CompressedInputTest
+{
+	@Test
+	public void testLines() throws Exception
+	{
+		StringBuilder sb = new StringBuilder("Gene\tChange\n");
+		Random r = new Random(3);
+		for (int i = 0; i < 400000; i++)
+		{
+			sb.append("G").append(r.nextInt(1000)).append("\tp.X").append(i).append("\n");
+		}
+		byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+		Assert.assertTrue(content.length > TsvScanner.STREAM_CHUNK_SIZE);
+
+		File plain = File.createTempFile("plain", ".txt");
+		File gzip = File.createTempFile("gzip", ".gz");
+		File bgzf = File.createTempFile("bgzf", ".gz");
+		plain.deleteOnExit();
+		gzip.deleteOnExit();
+		bgzf.deleteOnExit();
+
+		Files.write(plain.toPath(), content);
+		try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzip)))
+		{
+			out.write(content);
+		}
+		writeBgzf(content, bgzf);
+
+		Assert.assertEquals(CompressedInput.Format.PLAIN, CompressedInput.detect(plain.toPath()));
+		Assert.assertEquals(CompressedInput.Format.GZIP, CompressedInput.detect(gzip.toPath()));
+		Assert.assertEquals(CompressedInput.Format.BGZF, CompressedInput.detect(bgzf.toPath()));
+
+		List<String> expected = readLines(plain);
+		Assert.assertEquals(expected, readLines(gzip));
+		Assert.assertEquals(expected, readLines(bgzf));
+
+		// compressed files are scanned while they are decompressed
+		for (File file : new File[]{gzip, bgzf})
+		{
+			GeneAlterationSet gas = new GeneAlterationSet();
+			TsvScanner.scan(file.getPath(), 1, gas, (row, set) ->
+				set.addGeneAlteration(row.get(0), "m", row.get(1), null, null));
+
+			Assert.assertEquals(expected.stream().skip(1).map(l -> l.split("\t")[0]).collect(Collectors.toSet()),
+				gas.getGenes());
+			Assert.assertEquals(expected.size() - 1,
+				gas.getGenes().stream().mapToInt(g -> gas.getGeneFeatures(g).size()).sum());
+		}
+	}
+
+	private List<String> readLines(File file) throws IOException
+	{
+		try (Stream<String> lines = CompressedInput.lines(file.getPath()))
+		{
+			return lines.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Writes the content in BGZF blocks of at most 64 KB, followed by the empty end-of-file block.
+	 */
+	static void writeBgzf(byte[] content, File file) throws IOException
+	{
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file)))
+		{
+			int blockSize = 0xff00;
+			for (int pos = 0; pos <= content.length; pos += blockSize)
+			{
+				int len = Math.min(blockSize, content.length - pos);
+
+				Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+				deflater.setInput(content, pos, len);
+				deflater.finish();
+				byte[] buf = new byte[len + 1024];
+				int clen = deflater.deflate(buf);
+				deflater.end();
+
+				CRC32 crc = new CRC32();
+				crc.update(content, pos, len);
+
+				int total = 18 + clen + 8;
+				out.write(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+					(byte) (total - 1), (byte) ((total - 1) >> 8)});
+				out.write(buf, 0, clen);
+				writeInt((int) crc.getValue(), out);
+				writeInt(len, out);
+
+				if (len == 0) break;
+			}
+		}
+	}
+
+	private static void writeInt(int v, OutputStream out) throws IOException
+	{
+		for (int i = 0; i < 4; i++)
+		{
+			out.write(v >> (8 * i));
+		}
+	}
+}
@@ -22,4 +22,29 @@ public class GeneFeatureTest
 
 		Assert.assertEquals(true, gf.toString().equals(tooltip + "|" + letter + "|" + bgColor + "|" + borderColor));
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testEqualsAndPool() throws Exception
+	{
+		GeneFeature gf1 = new GeneFeature("m", "V600E", null, null);
+		GeneFeature gf2 = new GeneFeature("m", "V600E", "255 255 255", "0 0 0");
+
+		Assert.assertEquals(gf1, gf2);
+		Assert.assertEquals(gf1.hashCode(), gf2.hashCode());
+		Assert.assertFalse(gf1.equals(new GeneFeature("m", "V600K", null, null)));
+
+		GeneFeature shared = GeneFeature.get("m", "V600E", null, null);
+		Assert.assertSame(shared, GeneFeature.get("m", new String("V600E"), null, null));
+
+		GeneAlterationSet gas = new GeneAlterationSet();
+		gas.addGeneAlteration("BRAF", gf1);
+		gas.addGeneAlteration("BRAF", gf2);
+		Assert.assertEquals(1, gas.getGeneFeatures("BRAF").size());
+
+		// a feature without a letter can be pooled
+		GeneFeature noLetter = GeneFeature.get(null, "V600E", null, null);
+		Assert.assertSame(noLetter, GeneFeature.get(null, "V600E", null, null));
+		Assert.assertFalse(noLetter.equals(gf1));
+		Assert.assertFalse(gf1.equals(noLetter));
+	}
+}
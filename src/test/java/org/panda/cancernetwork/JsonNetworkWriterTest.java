@@ -0,0 +1,47 @@
+package org.panda.cancernetwork;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * @author Ozgun Babur
+ */
+public class JsonNetworkWriterTest
+{
+	@Test
+	public void testWrite() throws IOException
+	{
+		StringWriter sw = new StringWriter();
+		JsonNetworkWriter writer = new JsonNetworkWriter(sw);
+
+		writer.writeEdges(new ArrayList<>(Arrays.asList(
+			"MDM2\tcontrols-state-change-of\tTP53\tm1 m2",
+			"CDKN2A\tin-complex-with\tMDM2\t",
+			"MDM2\tcontrols-state-change-of\tTP53\tm1 m2")));
+		writer.writeNode("CDKN2A", false, false, Collections.emptySet(), null);
+		writer.writeNode("MDM2", false, true, Collections.emptySet(), "say \"hi\"\t\\");
+		writer.writeNode("TP53", true, true, Collections.singleton(GeneFeature.get("m", "p.R175H", "255 0 0", null)),
+			null);
+		writer.finish();
+
+		Assert.assertEquals("{\"elements\":{\n\"edges\":[\n" +
+			"{\"data\":{\"id\":\"e0\",\"source\":\"CDKN2A\",\"target\":\"MDM2\",\"type\":\"in-complex-with\"," +
+			"\"mediators\":[]}},\n" +
+			"{\"data\":{\"id\":\"e1\",\"source\":\"MDM2\",\"target\":\"TP53\",\"type\":\"controls-state-change-of\"," +
+			"\"mediators\":[\"m1\",\"m2\"]}}\n" +
+			"],\n\"nodes\":[\n" +
+			"{\"data\":{\"id\":\"CDKN2A\",\"altered\":false,\"cancerGene\":false}},\n" +
+			"{\"data\":{\"id\":\"MDM2\",\"altered\":false,\"cancerGene\":true,\"color\":\"rgb(200,255,180)\"," +
+			"\"tooltip\":\"say \\\"hi\\\"\\t\\\\\"}},\n" +
+			"{\"data\":{\"id\":\"TP53\",\"altered\":true,\"cancerGene\":true,\"color\":\"rgb(200,255,180)\"," +
+			"\"borderColor\":\"rgb(0,0,0)\",\"borderWidth\":2,\"infoBoxes\":[{\"letter\":\"m\",\"tooltip\":\"p.R175H\"," +
+			"\"backgroundColor\":\"rgb(255,0,0)\",\"borderColor\":\"rgb(0,0,0)\"}]}}\n" +
+			"]}}\n", sw.toString());
+	}
+}
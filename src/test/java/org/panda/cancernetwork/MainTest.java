@@ -0,0 +1,176 @@
+package org.panda.cancernetwork;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * @author Ozgun Babur
+ */
+public class MainTest
+{
+	static final String[][] TIERS = SyntheticNetwork.MIXED_TIERS;
+
+	@Test
+	public void testFindEdgesMatchesStringKeys() throws Exception
+	{
+		RandomNetwork network = new RandomNetwork(1, 2000, 10000, TIERS);
+
+		for (int seed = 0; seed < 5; seed++)
+		{
+			Set<String> set1 = network.randomGenes(seed, 800);
+			Set<String> set2 = network.randomGenes(seed + 100, 300);
+
+			Set<String> expGenes = new HashSet<>();
+			Set<String> expEdges = new HashSet<>();
+			findEdgesWithStringKeys(set1, set2, network, expGenes, expEdges);
+
+			Set<String> genes = new HashSet<>();
+			Set<String> edges = new HashSet<>();
+			new Main(".").findEdges(set1, set2, network, genes, edges);
+
+			Assert.assertEquals(true, !expEdges.isEmpty());
+			Assert.assertEquals(expEdges, edges);
+			Assert.assertEquals(expGenes, genes);
+		}
+	}
+
+	@Test
+	public void testReadParametersLoadsConcurrently() throws Exception
+	{
+		File dir = Files.createTempDirectory("params").toFile();
+		dir.deleteOnExit();
+
+		for (int i = 0; i < 3; i++)
+		{
+			File file = new File(dir, "mutect" + i + ".txt");
+			file.deleteOnExit();
+			Files.write(file.toPath(), ("h\th\th\th\th\th\th\n0\t1\t2\t3\t4\tG" + i + "\tp.X" + i + "\n").getBytes());
+		}
+
+		Main main = new Main(dir.getPath());
+		main.readParameters(Stream.of("# alterations", "gene-alteration-set = Mutect mutect0.txt",
+			"gene-alteration-set = Mutect mutect1.txt", "threads = 2", "gene-alteration-set = Mutect mutect2.txt"));
+
+		Assert.assertEquals(new HashSet<>(Arrays.asList("G0", "G1", "G2")), main.gas.getGenes());
+		Assert.assertEquals(2, main.threads);
+
+		try
+		{
+			new Main(dir.getPath()).readParameters(Stream.of("gene-alteration-set = Mutect mutect0.txt", "",
+				"gene-alteration-set = Mutect missing.txt"));
+			Assert.fail("Missing file is not reported.");
+		}
+		catch (Main.ParameterException e)
+		{
+			Assert.assertEquals(3, e.getLineNumber());
+		}
+	}
+
+	@Test
+	public void testParallelFindEdgesIsDeterministic() throws Exception
+	{
+		RandomNetwork network = new RandomNetwork(2, 5000, 40000, TIERS);
+		Set<String> set1 = network.randomGenes(1, 3000);
+		Set<String> set2 = network.randomGenes(2, 800);
+
+		Set<String> seqGenes = new LinkedHashSet<>();
+		Set<String> seqEdges = new LinkedHashSet<>();
+		new Main(".").findEdges(set1, set2, network, seqGenes, seqEdges);
+
+		Main main = new Main(".");
+		main.threads = 8;
+		Set<String> parGenes = new LinkedHashSet<>();
+		Set<String> parEdges = new LinkedHashSet<>();
+		main.findEdges(set1, set2, network, parGenes, parEdges);
+
+		// insertion order is compared too, so that hash sets downstream iterate the same way
+		Assert.assertEquals(new ArrayList<>(seqEdges), new ArrayList<>(parEdges));
+		Assert.assertEquals(new ArrayList<>(seqGenes), new ArrayList<>(parGenes));
+	}
+
+	/**
+	 * The previous implementation of the search, with "gene1 gene2" string keys for avoided pairs.
+	 */
+	static void findEdgesWithStringKeys(Set<String> set1, Set<String> set2, IndexedNetwork network,
+		Set<String> genesInGraph, Set<String> edges)
+	{
+		Set<String> avoid = new HashSet<>();
+
+		for (int i = 0; i < network.getTierCount(); i++)
+		{
+			Set<String> newAvoids = new HashSet<>();
+
+			for (String gene1 : set1)
+			{
+				int id1 = network.getGeneID(gene1);
+
+				for (IndexedNetwork.Relations rel : network.getTier(i))
+				{
+					IndexedNetwork.Adjacency fw = rel.getForward();
+
+					for (int k = fw.begin(id1); k < fw.end(id1); k++)
+					{
+						String gene2 = network.getGene(fw.target(k));
+						if (!set2.contains(gene2)) continue;
+
+						if (rel.isDirected())
+						{
+							String key = gene1 + " " + gene2;
+							if (!avoid.contains(key))
+							{
+								edges.add(gene1 + "\t" + rel.getType() + "\t" + gene2 + "\t" +
+									network.getMediators(rel, fw, k, gene1, gene2));
+								genesInGraph.add(gene1);
+								genesInGraph.add(gene2);
+								newAvoids.add(key);
+							}
+						}
+						else
+						{
+							String key1 = gene1 + " " + gene2;
+							String key2 = gene2 + " " + gene1;
+							if (!avoid.contains(key1) && !avoid.contains(key2))
+							{
+								String g1 = gene2.compareTo(gene1) < 0 ? gene2 : gene1;
+								String g2 = gene2.compareTo(gene1) < 0 ? gene1 : gene2;
+								edges.add(g1 + "\t" + rel.getType() + "\t" + g2 + "\t" +
+									network.getMediators(rel, fw, k, g1, g2));
+								genesInGraph.add(gene1);
+								genesInGraph.add(gene2);
+								newAvoids.add(key1);
+								newAvoids.add(key2);
+							}
+						}
+					}
+
+					if (rel.isDirected())
+					{
+						IndexedNetwork.Adjacency bw = rel.getBackward();
+
+						for (int k = bw.begin(id1); k < bw.end(id1); k++)
+						{
+							String gene2 = network.getGene(bw.target(k));
+							if (!set2.contains(gene2)) continue;
+
+							String key = gene2 + " " + gene1;
+							if (!avoid.contains(key))
+							{
+								edges.add(gene2 + "\t" + rel.getType() + "\t" + gene1 + "\t" +
+									network.getMediators(rel, bw, k, gene2, gene1));
+								genesInGraph.add(gene1);
+								genesInGraph.add(gene2);
+								newAvoids.add(key);
+							}
+						}
+					}
+				}
+			}
+			avoid.addAll(newAvoids);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package org.panda.cancernetwork;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * @author Ozgun Babur
+ */
+public class MutexIndexTest
+{
+	@Test
+	public void testIncrementalUpdate() throws Exception
+	{
+		File root = Files.createTempDirectory("mutex").toFile();
+		File indexFile = new File(root, "best-scores.idx");
+
+		for (int i = 0; i < 10; i++)
+		{
+			writeResults(new File(root, "cancer" + (i % 3) + "/run" + i), i, 0);
+		}
+
+		MutexIndex index = MutexIndex.load(root.getPath(), indexFile.getPath());
+		Assert.assertEquals(10, index.getReadCount());
+		assertSameScores(root, index);
+
+		// nothing changed
+		index = MutexIndex.load(root.getPath(), indexFile.getPath());
+		Assert.assertEquals(0, index.getReadCount());
+		assertSameScores(root, index);
+
+		// one result changes, and one is added
+		File changed = new File(root, "cancer1/run4");
+		writeResults(changed, 4, 0.5);
+		new File(changed, "ranked-groups.txt").setLastModified(System.currentTimeMillis() + 10000);
+		writeResults(new File(root, "cancer2/run10"), 10, 0);
+
+		index = MutexIndex.load(root.getPath(), indexFile.getPath());
+		Assert.assertEquals(2, index.getReadCount());
+		assertSameScores(root, index);
+
+		// one result is removed
+		new File(changed, "ranked-groups.txt").delete();
+		index = MutexIndex.load(root.getPath(), indexFile.getPath());
+		Assert.assertEquals(0, index.getReadCount());
+		assertSameScores(root, index);
+
+		double thr = 0.05;
+		Map<String, Double> scores = MutexReader.readBestScoresRecursive(root.getPath());
+		Assert.assertEquals(scores.keySet().stream().filter(g -> scores.get(g) <= thr).collect(Collectors.toSet()),
+			MutexIndex.load(root.getPath(), indexFile.getPath()).getGenes(thr));
+
+		deleteRecursive(root);
+	}
+
+	private void writeResults(File dir, int i, double shift) throws Exception
+	{
+		dir.mkdirs();
+		StringBuilder sb = new StringBuilder("Score\tQ-val\tMembers\n");
+		for (int j = 0; j < 5; j++)
+		{
+			sb.append((i + j) / 100D + shift).append("\t0.5\tG").append(i).append("\tG").append(i + j + 1)
+				.append("\tG").append(i * j).append("\n");
+		}
+		Files.write(new File(dir, "ranked-groups.txt").toPath(), sb.toString().getBytes());
+	}
+
+	private void assertSameScores(File root, MutexIndex index)
+	{
+		Assert.assertEquals(MutexReader.readBestScoresRecursive(root.getPath()), index.getGeneBestScores());
+		Assert.assertEquals(MutexReader.convertGroupsToPairBestScores(
+			MutexReader.readMutexResultsRecursive(root.getPath(), new HashSet<>())), index.getPairBestScores());
+	}
+
+	private void deleteRecursive(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null) for (File child : children) deleteRecursive(child);
+		file.delete();
+	}
+}
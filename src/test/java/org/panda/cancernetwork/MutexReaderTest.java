@@ -0,0 +1,138 @@
+package org.panda.cancernetwork;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author Ozgun Babur
+ */
+public class MutexReaderTest
+{
+	@Test
+	public void testReadMutexResultsRecursive() throws Exception
+	{
+		File root = Files.createTempDirectory("mutex").toFile();
+
+		// a tree of result directories, some with q-values, one compressed
+		for (int i = 0; i < 20; i++)
+		{
+			File dir = new File(root, "cancer" + (i % 4) + "/run" + i);
+			dir.mkdirs();
+
+			String header = i % 2 == 0 ? "Score\tQ-val\tMembers\n" : "Score\tMembers\n";
+			String content = header;
+			for (int j = 0; j < 5; j++)
+			{
+				content += (i + j) / 100D + (i % 2 == 0 ? "\t0.5" : "") + "\tG" + i + "\tG" + (i + j + 1) + "\n";
+			}
+
+			if (i == 7)
+			{
+				try (OutputStream out = new GZIPOutputStream(
+					Files.newOutputStream(new File(dir, "ranked-groups.txt.gz").toPath())))
+				{
+					out.write(content.getBytes());
+				}
+			}
+			else Files.write(new File(dir, "ranked-groups.txt").toPath(), content.getBytes());
+		}
+
+		Set<MutexReader.Group> groups = MutexReader.readMutexResultsRecursive(root.getPath(), new HashSet<>());
+		Assert.assertEquals(100, groups.size());
+
+		Map<String, Double> scores = MutexReader.readBestScoresRecursive(root.getPath());
+		Assert.assertEquals(0.06, scores.get("G7"));
+		Assert.assertEquals(0D, scores.get("G0"));
+
+		// thresholded reading gives the same best scores for the genes that pass
+		double thr = 0.1;
+		Map<String, Double> passed = MutexReader.readBestScoresRecursive(root.getPath(), thr);
+		Assert.assertEquals(scores.keySet().stream().filter(g -> scores.get(g) <= thr).collect(Collectors.toSet()),
+			passed.keySet());
+		passed.keySet().forEach(g -> Assert.assertEquals(scores.get(g), passed.get(g)));
+
+		// the filter keeps working on the parallel walk
+		Set<String> visited = new HashSet<>();
+		groups = MutexReader.readMutexResultsRecursive(root.getPath(), new HashSet<>(), f ->
+		{
+			visited.add(f.getName());
+			return !f.getName().equals("cancer1");
+		});
+		Assert.assertEquals(75, groups.size());
+		Assert.assertTrue(visited.contains("cancer1"));
+		Assert.assertFalse(visited.contains("run1"));
+
+		deleteRecursive(root);
+	}
+
+	@Test
+	public void testPairScores()
+	{
+		MutexReader.Group g1 = new MutexReader.Group(Arrays.asList("TP53", "MDM2", "CDKN2A"), "d", 0.01);
+		MutexReader.Group g2 = new MutexReader.Group(Arrays.asList("CDKN2A", "TP53", "MDM2", "TP53"), "d", 0.01);
+		Assert.assertEquals(g1, g2);
+		Assert.assertEquals(g1.hashCode(), g2.hashCode());
+		Assert.assertFalse(g1.equals(new MutexReader.Group(Arrays.asList("TP53", "MDM2"), "d", 0.01)));
+
+		// genes are kept in the order of the result file
+		Assert.assertEquals(Arrays.asList("CDKN2A", "TP53", "MDM2", "TP53"), g2.genes);
+		Assert.assertEquals("0.01\tTP53 MDM2 CDKN2A\td", g1.toString());
+
+		Random r = new Random(5);
+		Set<MutexReader.Group> groups = new HashSet<>();
+		for (int i = 0; i < 5000; i++)
+		{
+			List<String> genes = new ArrayList<>();
+			int size = 2 + r.nextInt(4);
+			for (int j = 0; j < size; j++)
+			{
+				genes.add("P" + r.nextInt(300));
+			}
+			groups.add(new MutexReader.Group(genes, "dir" + (i % 7), r.nextInt(100000) / 100000D));
+		}
+
+		// best scores from the string keys of each group
+		Map<String, Double> expected = new HashMap<>();
+		for (MutexReader.Group group : groups)
+		{
+			for (String a : group.getGenes())
+			{
+				for (String b : group.getGenes())
+				{
+					if (a.compareTo(b) < 0) expected.merge(a + " " + b, group.score, Math::min);
+				}
+			}
+		}
+		Assert.assertEquals(expected, MutexReader.convertGroupsToPairBestScores(groups));
+
+		PairScoreMap scores = MutexReader.getPairBestScores(groups);
+		Assert.assertEquals(expected.size(), scores.size());
+
+		int k = 50;
+		List<Double> best = expected.values().stream().sorted().limit(k).collect(Collectors.toList());
+
+		for (List<PairScoreMap.Pair> top : Arrays.asList(MutexReader.getTopPairs(groups, k), scores.top(k)))
+		{
+			Assert.assertEquals(best, top.stream().map(p -> p.score).collect(Collectors.toList()));
+			for (PairScoreMap.Pair pair : top)
+			{
+				Assert.assertEquals(expected.get(pair.toGeneKey(GeneDictionary.SHARED)), pair.score);
+				Assert.assertEquals(pair.score, scores.get(pair.id2, pair.id1));
+			}
+		}
+	}
+
+	private void deleteRecursive(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null) for (File child : children) deleteRecursive(child);
+		file.delete();
+	}
+}
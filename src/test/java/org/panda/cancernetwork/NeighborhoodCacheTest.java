@@ -0,0 +1,58 @@
+package org.panda.cancernetwork;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * @author Ozgun Babur
+ */
+public class NeighborhoodCacheTest
+{
+	@Test
+	public void testSearchMatchesUncached() throws Exception
+	{
+		RandomNetwork network = new RandomNetwork(4, 3000, 20000, MainTest.TIERS);
+		Set<String> cancerGenes = network.randomGenes(1, 500);
+
+		// a small capacity makes the cache evict while the patients are searched
+		for (long capacity : new long[]{NeighborhoodCache.DEFAULT_CAPACITY, 2000})
+		{
+			SharedResources resources = new SharedResources(capacity);
+
+			for (int patient = 0; patient < 5; patient++)
+			{
+				Set<String> altered = network.randomGenes(10 + patient, 600);
+
+				Main plain = new Main(".");
+				Main.EdgeBuffer expected = plain.searchEdges(altered, cancerGenes, network);
+
+				Main cached = new Main(".", resources);
+				cached.threads = patient % 2 == 0 ? 1 : 4;
+				Main.EdgeBuffer found = cached.searchEdges(altered, cancerGenes, network);
+
+				Assert.assertEquals(expected.edges, found.edges);
+				Assert.assertEquals(expected.genes, found.genes);
+				Assert.assertTrue(Arrays.equals(expected.avoided, found.avoided));
+				Assert.assertEquals(altered.size(), found.cacheHits + found.cacheMisses);
+			}
+
+			// the gene resolved last in its segment is kept, so a patient that follows with the same gene hits
+			Set<String> repeated = network.randomGenes(99, 1);
+			for (int i = 0; i < 2; i++)
+			{
+				Main main = new Main(".", resources);
+				main.threads = 1;
+				Main.EdgeBuffer found = main.searchEdges(repeated, cancerGenes, network);
+				if (i == 1) Assert.assertEquals(1, found.cacheHits);
+			}
+
+			NeighborhoodCache cache = resources.getNeighborhoodCache();
+			Assert.assertTrue(cache.getHitRate() > 0);
+			Assert.assertEquals(capacity == 2000, cache.getEvictions() > 0);
+			Assert.assertTrue(cache.getSize() <= capacity + 1000);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package org.panda.cancernetwork;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * @author Ozgun Babur
+ */
+public class NetworkServerTest
+{
+	@Test
+	public void testCheckParameters() throws Exception
+	{
+		File base = Files.createTempDirectory("server").toFile();
+		File patient = new File(base, "patient");
+		patient.mkdir();
+
+		NetworkServer server = new NetworkServer(base.getPath());
+		String dir = server.resolve(base.getPath(), "patient");
+
+		server.checkParameters(Arrays.asList(
+			"use-relation-type = controls-state-change-of 0",
+			"cancer-gene-resource = Custom genes.txt",
+			"cancer-gene-resource = OncoKB",
+			"gene-alteration-set = Mutect mutations.txt",
+			"# network-snapshot = /tmp/x"), base.getPath());
+		server.checkParameters(Collections.singletonList("tooltips = tips.txt"), dir);
+
+		for (String line : new String[]{
+			"network-snapshot = net.snapshot",
+			"cancer-gene-index = index",
+			"alteration-cache = cache",
+			"output-file = out",
+			"run-report = true",
+			"threads = all",
+			"cancer-gene-resource = Mutex mutex 0.05 mutex.index",
+			"gene-alteration-set = Mutect /etc/passwd",
+			"gene-alteration-set = Mutect ../../mutations.txt",
+			"network-file = ../network.sif"})
+		{
+			try
+			{
+				server.checkParameters(Collections.singletonList(line), dir);
+				Assert.fail(line);
+			}
+			catch (IllegalArgumentException e)
+			{
+				// expected
+			}
+		}
+
+		for (String path : new String[]{"/tmp", "..", "patient/../.."})
+		{
+			try
+			{
+				server.resolve(base.getPath(), path);
+				Assert.fail(path);
+			}
+			catch (IllegalArgumentException e)
+			{
+				// expected
+			}
+		}
+	}
+}
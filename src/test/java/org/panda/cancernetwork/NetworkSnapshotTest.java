@@ -0,0 +1,79 @@
+package org.panda.cancernetwork;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @author Ozgun Babur
+ */
+public class NetworkSnapshotTest
+{
+	@Test
+	public void testCancerGeneIndex() throws Exception
+	{
+		RandomNetwork network = new RandomNetwork(3, 2000, 10000, MainTest.TIERS);
+		Set<String> altered = network.randomGenes(1, 700);
+		Set<String> cancerGenes = network.randomGenes(2, 200);
+
+		Set<String> expected = new HashSet<>();
+		new Main(".").findEdges(altered, cancerGenes, network, new HashSet<>(), expected);
+
+		File file = File.createTempFile("cancer-gene-index", ".bin");
+		file.deleteOnExit();
+		long fingerprint = NetworkSnapshot.fingerprint(cancerGenes);
+		NetworkSnapshot.write(network, network.toBitSet(cancerGenes), fingerprint, file);
+
+		NetworkSnapshot index = NetworkSnapshot.map(file);
+		Assert.assertEquals(fingerprint, index.getFingerprint());
+		Assert.assertEquals(true, index.getGeneCount() < network.getGeneCount());
+
+		Set<String> edges = new HashSet<>();
+		new Main(".").findEdges(altered, cancerGenes, index, new HashSet<>(), edges);
+
+		Assert.assertEquals(expected, edges);
+	}
+
+	@Test
+	public void testRecompileChangedNetwork() throws Exception
+	{
+		File dir = Files.createTempDirectory("snapshot").toFile();
+		File sif = new File(dir, "network.sif");
+		File snapshot = new File(dir, "network.snapshot");
+		File index = new File(dir, "cancer-gene.index");
+
+		SyntheticCohort cohort = new SyntheticCohort();
+		cohort.geneCount = 1000;
+		cohort.writeNetwork(sif);
+
+		NetworkLoader loader = new NetworkLoader(SyntheticCohort.TYPES, sif.getPath());
+		Set<String> cancerGenes = new HashSet<>(Arrays.asList("G0", "G1", "G2", "G3", "G4"));
+
+		Assert.assertEquals(1000, loader.loadSnapshot(snapshot.getPath()).getGeneCount());
+		Assert.assertEquals(loader.getSourceStamp(), NetworkSnapshot.map(snapshot).getSource());
+		loader.loadCancerGeneIndex(index.getPath(), cancerGenes, snapshot.getPath());
+
+		// the files of an unchanged network are reused
+		snapshot.setLastModified(0);
+		index.setLastModified(0);
+		loader.loadSnapshot(snapshot.getPath());
+		loader.loadCancerGeneIndex(index.getPath(), cancerGenes, snapshot.getPath());
+		Assert.assertEquals(0, snapshot.lastModified());
+		Assert.assertEquals(0, index.lastModified());
+
+		// a changed network file is compiled again
+		cohort.geneCount = 1500;
+		cohort.writeNetwork(sif);
+		Assert.assertEquals(1500, loader.loadSnapshot(snapshot.getPath()).getGeneCount());
+		loader.loadCancerGeneIndex(index.getPath(), cancerGenes, snapshot.getPath());
+		Assert.assertTrue(index.lastModified() != 0);
+
+		// no temporary files are left behind
+		Assert.assertEquals(3, dir.list().length);
+	}
+}
@@ -0,0 +1,87 @@
+package org.panda.cancernetwork;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * @author Ozgun Babur
+ */
+public class NetworkWriterTest
+{
+	@Test
+	public void testSortedOutput() throws IOException
+	{
+		List<String> edges = new ArrayList<>();
+		Random r = new Random(11);
+		for (int i = 0; i < 100000; i++)
+		{
+			edges.add("G" + r.nextInt(500) + "\tcontrols-state-change-of\tG" + r.nextInt(500) + "\t");
+		}
+		List<String> expected = new ArrayList<>(new TreeSet<>(edges));
+
+		StringWriter sif = new StringWriter();
+		StringWriter fmt = new StringWriter();
+		NetworkWriter writer = new NetworkWriter(sif, fmt);
+
+		// same edges in another order give the same output
+		List<String> shuffled = new ArrayList<>(edges);
+		Collections.shuffle(shuffled, r);
+		writer.writeEdges(shuffled);
+		writer.writeNode("G1", false, true, Collections.emptySet(), null);
+		writer.writeNode("TP53", true, true, Collections.singleton(GeneFeature.get("m", "p.R175H", null, null)),
+			"tumor suppressor");
+		writer.finish();
+
+		expected.add("TP53");
+		Assert.assertEquals(expected, Arrays.asList(sif.toString().split("\n")));
+		Assert.assertEquals(Arrays.asList(
+			"node\tall-nodes\tcolor\t255 255 255",
+			"node\tall-nodes\tbordercolor\t0 0 0",
+			"node\tG1\tcolor\t200 255 180",
+			"node\tTP53\tbordercolor\t0 0 0",
+			"node\tTP53\tborderwidth\t2",
+			"node\tTP53\trppasite\tp.R175H|m|255 255 255|0 0 0",
+			"node\tTP53\tcolor\t200 255 180",
+			"node\tTP53\ttooltip\ttumor suppressor"), Arrays.asList(fmt.toString().split("\n")));
+	}
+
+	@Test
+	public void testCompressedFiles() throws IOException
+	{
+		File dir = Files.createTempDirectory("network").toFile();
+		String fileNoExt = dir.getPath() + File.separator + "network";
+
+		try (NetworkWriter writer = NetworkWriter.open(fileNoExt, true))
+		{
+			writer.writeEdges(new ArrayList<>(Arrays.asList("B\tin-complex-with\tC\t", "A\tin-complex-with\tB\t")));
+			writer.writeNode("A", false, true, Collections.emptySet(), null);
+		}
+
+		File sif = new File(fileNoExt + ".sif" + NetworkWriter.COMPRESSED_EXTENSION);
+		File fmt = new File(fileNoExt + ".format" + NetworkWriter.COMPRESSED_EXTENSION);
+		Assert.assertEquals(CompressedInput.Format.GZIP, CompressedInput.detect(sif.toPath()));
+
+		Assert.assertEquals(Arrays.asList("A\tin-complex-with\tB\t", "B\tin-complex-with\tC\t"), readLines(sif));
+		Assert.assertEquals("node\tA\tcolor\t200 255 180", readLines(fmt).get(2));
+
+		sif.delete();
+		fmt.delete();
+		dir.delete();
+	}
+
+	private List<String> readLines(File file) throws IOException
+	{
+		try (Stream<String> lines = CompressedInput.lines(file.getPath()))
+		{
+			return lines.collect(Collectors.toList());
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package org.panda.cancernetwork;
+
+/**
+ * A randomly generated indexed network for testing the edge search without Pathway Commons data.
+ *
+ * @author Ozgun Babur
+ */
+public class RandomNetwork extends SyntheticNetwork
+{
+	/**
+	 * Generates a random network, where a skewed source distribution creates some hubs.
+	 * @param seed random seed
+	 * @param geneCount number of genes, named as G0, G1, ...
+	 * @param edgeCount number of random relations per type
+	 * @param tierTypes for each tier, the types in it, where an "undirected:" prefix makes a type undirected
+	 */
+	public RandomNetwork(long seed, int geneCount, int edgeCount, String[][] tierTypes)
+	{
+		super(seed, geneCount, edgeCount, tierTypes, 3);
+	}
+}
@@ -0,0 +1,79 @@
+package org.panda.cancernetwork;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Ozgun Babur
+ */
+public class RunMetricsTest
+{
+	@Test
+	public void testPercentiles() throws Exception
+	{
+		List<RunMetrics> runs = new ArrayList<>();
+		for (int i = 1; i <= 100; i++)
+		{
+			RunMetrics metrics = new RunMetrics("P" + i);
+			metrics.count("edges", i);
+			if (i % 2 == 0) metrics.count("nodes", i);
+			runs.add(metrics);
+		}
+
+		Map<String, double[]> p = RunMetrics.percentiles(runs, 50, 90, 100);
+		Assert.assertEquals(50D, p.get("edges")[0]);
+		Assert.assertEquals(90D, p.get("edges")[1]);
+		Assert.assertEquals(100D, p.get("edges")[2]);
+
+		// missing values are not counted
+		Assert.assertEquals(50D, p.get("nodes")[0]);
+		Assert.assertEquals(100D, p.get("nodes")[2]);
+	}
+
+	@Test
+	public void testReport() throws Exception
+	{
+		File root = Files.createTempDirectory("cohort").toFile();
+
+		SyntheticCohort cohort = new SyntheticCohort();
+		cohort.geneCount = 2000;
+		cohort.patientCount = 1;
+		cohort.mutexDirCount = 5;
+		cohort.generate(root);
+
+		File patient = new File(root, SyntheticCohort.PATIENTS_DIRNAME + File.separator + "P00000");
+		try (FileWriter writer = new FileWriter(new File(patient, Main.PARAMETERS_FILENAME), true))
+		{
+			writer.write("run-report = true\n");
+			writer.write("threads = 2\n");
+		}
+
+		Main main = new Main(patient.getPath());
+		main.generateNetwork();
+
+		Map<String, Double> values = main.metrics.toValues();
+		for (String stage : new String[]{"total", "parameters", "network", "gene-alteration-set",
+			"cancer-gene-resource", "search", "write"})
+		{
+			Assert.assertTrue(values.containsKey(stage + ".wall-ms"));
+		}
+		Assert.assertTrue(values.get("search.cpu-ms") > 0);
+		Assert.assertTrue(values.containsKey("avoided-pairs.tier-2"));
+
+		// edges are counted before the repeated ones are dropped
+		long edges = Files.readAllLines(new File(patient, "network.sif").toPath()).stream()
+			.filter(l -> l.split("\t").length > 2).count();
+		Assert.assertTrue(edges <= main.metrics.getCount("edges"));
+
+		String report = new String(Files.readAllBytes(new File(patient, "network.report.json").toPath()));
+		Assert.assertTrue(report.contains("\"search\": {\"calls\": 1"));
+		Assert.assertTrue(report.contains("\"nodes\": " + main.metrics.getCount("nodes")));
+	}
+}
@@ -0,0 +1,132 @@
+package org.panda.cancernetwork;
+
+import junit.framework.Assert;
+import org.biopax.paxtools.pattern.miner.SIFEnum;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * @author Ozgun Babur
+ */
+public class SifNetworkTest
+{
+	@Test
+	public void testLoad() throws Exception
+	{
+		File file = File.createTempFile("network", ".sif");
+		file.deleteOnExit();
+		try (FileWriter writer = new FileWriter(file))
+		{
+			writer.write("B\tcontrols-state-change-of\tA\tm1\n");
+			writer.write("B\tcontrols-state-change-of\tA\tm2\n");
+			writer.write("C\tin-complex-with\tA\n");
+			writer.write("C\tinteracts-with\tD\tm3\n");
+			writer.write("malformed line\n");
+		}
+
+		Map<SIFEnum, Integer> types = new HashMap<>();
+		types.put(SIFEnum.CONTROLS_STATE_CHANGE_OF, 0);
+		types.put(SIFEnum.IN_COMPLEX_WITH, 1);
+
+		SifNetwork network = new SifNetwork(file.getPath(), types);
+
+		// genes of the ignored types are not in the network
+		Assert.assertEquals(3, network.getGeneCount());
+		Assert.assertEquals("A", network.getGene(0));
+		Assert.assertEquals(-1, network.getGeneID("D"));
+		Assert.assertEquals(2, network.getTierCount());
+
+		// repeated relation keeps its first mediators
+		IndexedNetwork.Relations rel = network.getTier(0).get(0);
+		IndexedNetwork.Adjacency adj = rel.getForward();
+		int b = network.getGeneID("B");
+		Assert.assertEquals(1, adj.end(b) - adj.begin(b));
+		Assert.assertEquals(0, adj.target(adj.begin(b)));
+		Assert.assertEquals("m1", network.getMediators(rel, adj, adj.begin(b), "B", "A"));
+		Assert.assertEquals(b, rel.getBackward().target(rel.getBackward().begin(0)));
+
+		// undirected relation is in the adjacency of both genes
+		IndexedNetwork.Relations complex = network.getTier(1).get(0);
+		Assert.assertEquals(false, complex.isDirected());
+		Assert.assertEquals(1, complex.getForward().end(0) - complex.getForward().begin(0));
+		Assert.assertEquals(1, complex.getForward().end(2) - complex.getForward().begin(2));
+	}
+
+	@Test
+	public void testSharedNetworks() throws Exception
+	{
+		File file = File.createTempFile("network", ".sif");
+		file.deleteOnExit();
+		try (FileWriter writer = new FileWriter(file))
+		{
+			writer.write("B\tcontrols-state-change-of\tA\n");
+		}
+
+		Map<SIFEnum, Integer> types1 = Collections.singletonMap(SIFEnum.CONTROLS_STATE_CHANGE_OF, 0);
+		Map<SIFEnum, Integer> types2 = Collections.singletonMap(SIFEnum.CONTROLS_STATE_CHANGE_OF, 1);
+
+		SharedResources resources = new SharedResources();
+		resources.networkCapacity = 1;
+
+		IndexedNetwork network = resources.getNetwork(types1, file.getPath(), null);
+		Assert.assertTrue(network == resources.getNetwork(types1, file.getPath(), null));
+
+		// the least recently used network is dropped beyond the capacity
+		resources.getNetwork(types2, file.getPath(), null);
+		Assert.assertTrue(network != resources.getNetwork(types1, file.getPath(), null));
+
+		// a failed load is reported to the run that needs it
+		try
+		{
+			resources.getNetwork(types1, file.getPath() + ".missing", null);
+			Assert.fail();
+		}
+		catch (IOException e)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void testSyntheticCohort() throws Exception
+	{
+		File root = Files.createTempDirectory("cohort").toFile();
+
+		SyntheticCohort cohort = new SyntheticCohort();
+		cohort.geneCount = 2000;
+		cohort.patientCount = 3;
+		cohort.mutexDirCount = 5;
+		cohort.generate(root);
+
+		IndexedNetwork network = new NetworkLoader(SyntheticCohort.TYPES,
+			new File(root, SyntheticCohort.NETWORK_FILENAME).getPath()).loadIndexed();
+		Assert.assertEquals(cohort.geneCount, network.getGeneCount());
+
+		File patient = new File(root, SyntheticCohort.PATIENTS_DIRNAME + File.separator + "P00000");
+		new Main(patient.getPath()).generateNetwork();
+
+		// every found relation is in the generated network
+		List<String> edges = Files.readAllLines(new File(patient, "network.sif").toPath()).stream()
+			.filter(l -> l.split("\t").length > 2).collect(Collectors.toList());
+		Assert.assertEquals(false, edges.isEmpty());
+
+		Set<String> generated = new HashSet<>(Files.readAllLines(
+			new File(root, SyntheticCohort.NETWORK_FILENAME).toPath()));
+		for (String edge : edges)
+		{
+			Assert.assertTrue(generated.contains(edge) || generated.contains(reverse(edge)));
+		}
+	}
+
+	private String reverse(String edge)
+	{
+		String[] t = edge.split("\t");
+		return t[2] + "\t" + t[1] + "\t" + t[0] + "\t" + t[3];
+	}
+}
@@ -0,0 +1,164 @@
+package org.panda.cancernetwork;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author Ozgun Babur
+ */
+public class TsvScannerTest
+{
+	@Test
+	public void testScanMatchesLineSplitting() throws Exception
+	{
+		File file = File.createTempFile("scanner", ".txt");
+		file.deleteOnExit();
+
+		// large enough to be split into several chunks
+		Random r = new Random(1);
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(file)))
+		{
+			writer.write("Gene\tChange\tScore\n");
+			for (int i = 0; i < 300000; i++)
+			{
+				writer.write("G" + r.nextInt(500) + "\tp.X" + i + (r.nextBoolean() ? "\r\n" : "\n"));
+				if (r.nextInt(1000) == 0) writer.write("\n");
+			}
+		}
+		Assert.assertTrue(file.length() > 2 * TsvScanner.MIN_CHUNK_SIZE);
+
+		GeneAlterationSet expected = new GeneAlterationSet();
+		Files.lines(file.toPath()).skip(1).filter(l -> !l.isEmpty()).map(l -> l.trim().split("\t"))
+			.forEach(t -> expected.addGeneAlteration(t[0], "m", t[1], null, null));
+
+		GeneAlterationSet scanned = new GeneAlterationSet();
+		TsvScanner.scan(file.getPath(), 1, scanned, (row, set) ->
+			set.addGeneAlteration(row.get(0), "m", row.get(1), null, null));
+
+		Assert.assertEquals(expected.getGenes(), scanned.getGenes());
+		for (String gene : expected.getGenes())
+		{
+			Assert.assertEquals(toStrings(expected.getGeneFeatures(gene)), toStrings(scanned.getGeneFeatures(gene)));
+		}
+
+		// the filter of the target set applies to all chunks
+		GeneAlterationSet filtered = new GeneAlterationSet();
+		filtered.setGeneFilter(gene -> gene.endsWith("7"));
+		TsvScanner.scan(file.getPath(), 1, filtered, (row, set) ->
+			set.addGeneAlteration(row.get(0), "m", row.get(1), null, null));
+
+		Assert.assertEquals(expected.getGenes().stream().filter(g -> g.endsWith("7")).collect(Collectors.toSet()),
+			filtered.getGenes());
+	}
+
+	@Test
+	public void testStreamBoundsChunksInFlight() throws Exception
+	{
+		File plain = File.createTempFile("scanner", ".txt");
+		File gzip = File.createTempFile("scanner", ".gz");
+		plain.deleteOnExit();
+		gzip.deleteOnExit();
+
+		Random r = new Random(5);
+		StringBuilder sb = new StringBuilder("Gene\tChange\n");
+		for (int i = 0; i < 100000; i++)
+		{
+			sb.append("G").append(r.nextInt(500)).append("\tp.X").append(i).append("\n");
+		}
+		Files.write(plain.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+		try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzip)))
+		{
+			out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+		}
+
+		int chunkSize = 4096;
+		int maxChunks = 3;
+		Assert.assertTrue(plain.length() > 100 * chunkSize * maxChunks);
+
+		// chunks are scanned into their own sets, which are merged into the target set in file order
+		Set<GeneAlterationSet> started = Collections.newSetFromMap(new IdentityHashMap<>());
+		int[] merged = new int[1];
+		int[] lastRow = {-1};
+		GeneAlterationSet streamed = new GeneAlterationSet()
+		{
+			@Override
+			public synchronized void addAll(GeneAlterationSet other)
+			{
+				synchronized (started)
+				{
+					Assert.assertTrue(started.size() <= merged[0] + maxChunks);
+				}
+				merged[0]++;
+
+				int[] rows = other.altered.values().stream().flatMap(Set::stream)
+					.mapToInt(f -> Integer.parseInt(f.tooltip.substring(3))).sorted().toArray();
+				Assert.assertEquals(lastRow[0] + 1, rows[0]);
+				Assert.assertEquals(rows[0] + rows.length - 1, rows[rows.length - 1]);
+				lastRow[0] = rows[rows.length - 1];
+
+				super.addAll(other);
+			}
+		};
+
+		TsvScanner.scanStream(gzip.toPath(), 1, streamed, (row, set) ->
+		{
+			synchronized (started)
+			{
+				started.add(set);
+			}
+			set.addGeneAlteration(row.get(0), "m", row.get(1), null, null);
+		}, chunkSize, maxChunks);
+
+		Assert.assertEquals(99999, lastRow[0]);
+		Assert.assertTrue(merged[0] > 100);
+
+		GeneAlterationSet mapped = new GeneAlterationSet();
+		TsvScanner.scan(plain.getPath(), 1, mapped, (row, set) ->
+			set.addGeneAlteration(row.get(0), "m", row.get(1), null, null));
+
+		Assert.assertEquals(mapped.getGenes(), streamed.getGenes());
+		for (String gene : mapped.getGenes())
+		{
+			Assert.assertEquals(mapped.getGeneFeatures(gene), streamed.getGeneFeatures(gene));
+		}
+	}
+
+	@Test
+	public void testRow() throws Exception
+	{
+		File file = File.createTempFile("scanner", ".txt");
+		file.deleteOnExit();
+		Files.write(file.toPath(), "A\t-\t 1.5\tSplice_Site\n".getBytes());
+
+		TsvScanner.scan(file.getPath(), 0, new GeneAlterationSet(), (row, set) ->
+		{
+			Assert.assertTrue(row.equals(1, "-"));
+			Assert.assertFalse(row.equals(0, "AB"));
+			Assert.assertEquals(1.5, row.getDouble(2), 0);
+			Assert.assertTrue(row.startsWith(3, "Splice"));
+			Assert.assertEquals("A", row.get(0));
+
+			try
+			{
+				row.get(4);
+				Assert.fail();
+			}
+			catch (IllegalArgumentException e)
+			{
+				// expected
+			}
+		});
+	}
+
+	private Set<String> toStrings(Set<GeneFeature> features)
+	{
+		return features.stream().map(GeneFeature::toString).collect(Collectors.toSet());
+	}
+}
@@ -0,0 +1,179 @@
+package org.panda.cancernetwork;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * @author Ozgun Babur
+ */
+public class WatchModeTest
+{
+	@Test
+	public void testUpdateMatchesFullRun() throws Exception
+	{
+		for (boolean json : new boolean[]{false, true})
+		{
+			File root = Files.createTempDirectory("cohort").toFile();
+
+			SyntheticCohort cohort = new SyntheticCohort();
+			cohort.geneCount = 2000;
+			cohort.patientCount = 1;
+			cohort.mutexDirCount = 5;
+			cohort.generate(root);
+
+			File patient = new File(root, SyntheticCohort.PATIENTS_DIRNAME + File.separator + "P00000");
+			if (json)
+			{
+				try (FileWriter writer = new FileWriter(new File(patient, Main.PARAMETERS_FILENAME), true))
+				{
+					writer.write("output-format = json\n");
+				}
+			}
+
+			WatchMode.DirectoryState state = new WatchMode.DirectoryState(patient.getPath(), new SharedResources());
+			state.write();
+			assertSameAsFullRun(patient, json);
+
+			// drop some mutations, change one, and add a new one
+			Path mutations = patient.toPath().resolve("mutations.txt").toAbsolutePath().normalize();
+			List<String> lines = new ArrayList<>(Files.readAllLines(mutations));
+			lines.remove(1);
+			lines.remove(1);
+			lines.set(1, lines.get(1).replace("\t0.2\t", "\t0.9\t"));
+			lines.add("chr9\t99\tA\tT\t0.3\tG7\tp.X1Y");
+			Files.write(mutations, lines);
+
+			Assert.assertFalse(state.update(mutations).isEmpty());
+			state.write();
+			assertSameAsFullRun(patient, json);
+
+			// restore the file, which removes the added relations
+			lines.remove(lines.size() - 1);
+			Files.write(mutations, lines.subList(0, 1));
+			state.update(mutations);
+			state.write();
+			assertSameAsFullRun(patient, json);
+		}
+	}
+
+	@Test
+	public void testReloadAndDeletion() throws Exception
+	{
+		File root = Files.createTempDirectory("cohort").toFile();
+
+		SyntheticCohort cohort = new SyntheticCohort();
+		cohort.geneCount = 2000;
+		cohort.patientCount = 1;
+		cohort.mutexDirCount = 5;
+		cohort.generate(root);
+
+		File patient = new File(root, SyntheticCohort.PATIENTS_DIRNAME + File.separator + "P00000");
+		Path parameters = patient.toPath().resolve(Main.PARAMETERS_FILENAME).toAbsolutePath().normalize();
+		Path mutations = patient.toPath().resolve("mutations.txt").toAbsolutePath().normalize();
+		List<String> header = Files.readAllLines(mutations).subList(0, 1);
+
+		WatchMode mode = new WatchMode();
+		mode.add(patient.getPath());
+
+		// the same file read by two parameters is updated for both
+		List<String> lines = new ArrayList<>(Files.readAllLines(parameters));
+		lines.add("gene-alteration-set = Mutect mutations.txt");
+		Files.write(parameters, lines);
+		mode.update(Collections.singleton(parameters));
+
+		WatchMode.DirectoryState state = mode.states.get(patient.getPath());
+		Assert.assertEquals(2, state.sourceFiles.get(mutations).size());
+		assertSameAsFullRun(patient, false);
+
+		// a parameters file that fails to load keeps the current state
+		Files.write(parameters, Collections.singletonList("gene-alteration-set ="), StandardOpenOption.APPEND);
+		mode.update(Collections.singleton(parameters));
+		Assert.assertTrue(mode.states.get(patient.getPath()) == state);
+		Assert.assertTrue(mode.watchedFiles.get(parameters).contains(state));
+		Files.write(parameters, lines);
+
+		// a deleted file has no alterations, the same as a file with only the header
+		Files.delete(mutations);
+		mode.update(Collections.singleton(mutations));
+		Files.write(mutations, header);
+		assertSameAsFullRun(patient, false);
+	}
+
+	@Test
+	public void testFailedUpdateKeepsState() throws Exception
+	{
+		File root = Files.createTempDirectory("cohort").toFile();
+
+		SyntheticCohort cohort = new SyntheticCohort();
+		cohort.geneCount = 2000;
+		cohort.patientCount = 1;
+		cohort.mutexDirCount = 5;
+		cohort.generate(root);
+
+		File patient = new File(root, SyntheticCohort.PATIENTS_DIRNAME + File.separator + "P00000");
+		Path mutations = patient.toPath().resolve("mutations.txt").toAbsolutePath().normalize();
+		Path cnv = patient.toPath().resolve("cnv.txt").toAbsolutePath().normalize();
+		Path sif = patient.toPath().resolve("network.sif");
+
+		WatchMode mode = new WatchMode();
+		mode.add(patient.getPath());
+		WatchMode.DirectoryState state = mode.states.get(patient.getPath());
+		GeneAlterationSet gas = state.main.gas;
+		List<GeneAlterationSet> sources = new ArrayList<>();
+		state.main.alterationSources.forEach(entry -> sources.add(entry.getValue()));
+		byte[] output = Files.readAllBytes(sif);
+
+		// the first file is valid, but the second one is malformed
+		List<String> mutationLines = Files.readAllLines(mutations);
+		Files.write(mutations, mutationLines.subList(0, mutationLines.size() / 2));
+		List<String> cnvLines = Files.readAllLines(cnv);
+		List<String> malformed = new ArrayList<>(cnvLines);
+		malformed.add("malformed");
+		Files.write(cnv, malformed);
+
+		mode.update(new LinkedHashSet<>(Arrays.asList(mutations, cnv)));
+		Assert.assertTrue(state.main.gas == gas);
+		for (int i = 0; i < sources.size(); i++)
+		{
+			Assert.assertTrue(state.main.alterationSources.get(i).getValue() == sources.get(i));
+		}
+		Assert.assertEquals(new String(output), new String(Files.readAllBytes(sif)));
+
+		// both files are applied once the second one is fixed
+		Files.write(cnv, cnvLines);
+		mode.update(new LinkedHashSet<>(Arrays.asList(mutations, cnv)));
+		Assert.assertFalse(state.main.gas == gas);
+		assertSameAsFullRun(patient, false);
+	}
+
+	/**
+	 * Checks that the output of the directory is the same after generating it again from scratch.
+	 */
+	private void assertSameAsFullRun(File patient, boolean json) throws Exception
+	{
+		String[] files = json ? new String[]{"network" + JsonNetworkWriter.EXTENSION} :
+			new String[]{"network.sif", "network.format"};
+
+		List<byte[]> incremental = new ArrayList<>();
+		for (String file : files)
+		{
+			incremental.add(Files.readAllBytes(new File(patient, file).toPath()));
+		}
+
+		new Main(patient.getPath()).generateNetwork();
+
+		for (int i = 0; i < files.length; i++)
+		{
+			Assert.assertEquals(new String(Files.readAllBytes(new File(patient, files[i]).toPath())),
+				new String(incremental.get(i)));
+		}
+		Assert.assertFalse(new File(patient, files[0] + ".tmp").exists());
+	}
+}